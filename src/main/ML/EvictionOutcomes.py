@@ -0,0 +1,43 @@
+import struct
+
+import pandas as pd
+
+MAGIC = 0x4D434345  # "MCCE"
+FORMAT = 1
+
+
+# Reads the files of the proxy's EvictionOutcomeLog. Returns the raw features
+# of the evicted items, in the columns extract_features takes, and the label
+# to train on: an item is obsolete if it was not requested again within the
+# horizon.
+def load_eviction_outcomes(paths):
+    reads, writes, steps_to_request = [], [], []
+    for path in paths:
+        with open(path, 'rb') as f:
+            data = f.read()
+        magic, file_format, _ = struct.unpack_from('>iii', data, 0)
+        if magic != MAGIC or file_format != FORMAT:
+            raise ValueError(f'Not an eviction outcome log: {path}')
+        offset = 12
+        # the last record of a file still being written may be cut short
+        while offset + 8 <= len(data):
+            steps, read_count = struct.unpack_from('>ii', data, offset)
+            end = offset + 8 + 8 * read_count + 4
+            if end > len(data):
+                break
+            read_words = list(struct.unpack_from(f'>{read_count}q', data,
+                                                 offset + 8))
+            (write_count,) = struct.unpack_from('>i', data, end - 4)
+            if end + 8 * write_count > len(data):
+                break
+            write_words = list(struct.unpack_from(f'>{write_count}q', data,
+                                                  end))
+            offset = end + 8 * write_count
+            reads.append(read_words)
+            writes.append(write_words)
+            steps_to_request.append(steps)
+    raw_features = pd.DataFrame({'read_accesses': reads,
+                                 'write_accesses': writes})
+    is_obsolete = pd.Series([steps < 0 for steps in steps_to_request],
+                            name='is_obsolete')
+    return raw_features, is_obsolete
@@ -1,5 +1,12 @@
 import pandas as pd
 
+# the columns of extract_features, in the order the proxy sends them as an
+# ExtractedFeature
+FEATURE_NAMES = [f'{kind}_{name}' for kind in ['read', 'write'] for name in
+                 [f'arrive_times_p{k}' for k in [30, 50, 100, 200]] +
+                 [f'p_delta{i}' for i in range(6)] +
+                 [f'p_delta{i}_delta{i + 1}' for i in range(5)]]
+
 
 def extract_features(raw_features: pd.DataFrame) -> pd.DataFrame:
     extracted_features = pd.DataFrame()
@@ -87,3 +94,8 @@ def get_num_steps_between_accesses(access_array, k):
 
 def trailing_zeros(x):
     return (x & -x).bit_length() - 1
+
+
+def to_data_frame(extracted_features) -> pd.DataFrame:
+    return pd.DataFrame([list(feature.values) for feature in extracted_features],
+                        columns=FEATURE_NAMES)
@@ -4,22 +4,33 @@ import pandas as pd
 
 import MLService_pb2 as MLService
 import MLService_pb2_grpc as MLService_grpc
-from FeatureExtractor import extract_features
+from FeatureExtractor import extract_features, to_data_frame
 
 class MLServiceImpl(MLService_grpc.MLServiceServicer):
     def Predict(self, request, context):
-        # Extract features from the request
-        features = request.features
-        # convert features to pandas dataframe
-        # read accesses is the first colomn
-        # write accesses is the second column
-        raw_features = pd.DataFrame(features)
-        extracted_features = extract_features(raw_features)
+        if request.extracted_features:
+            # the proxy extracted the features already
+            extracted_features = to_data_frame(request.extracted_features)
+        else:
+            # Extract features from the request
+            features = request.features
+            # convert features to pandas dataframe
+            # read accesses is the first colomn
+            # write accesses is the second column
+            raw_features = pd.DataFrame(features)
+            extracted_features = extract_features(raw_features)
         # Process each feature and determine if it's obsolete
         is_obsolete_list = []
         # Return a PredictResponse with the is_obsolete list
         return MLService.PredictResponse(is_obsolete=is_obsolete_list)
 
+    def PredictStream(self, request_iterator, context):
+        # one response per request, tagged with its request_id
+        for request in request_iterator:
+            response = self.Predict(request, context)
+            response.request_id = request.request_id
+            yield response
+
     def is_feature_obsolete(self, new_feature):
         # Determine if the new feature is obsolete
         return new_feature > 0.5
@@ -14,7 +14,7 @@ _sym_db = _symbol_database.Default()
 
 
 
-DESCRIPTOR = _descriptor_pool.Default().AddSerializedFile(b'\n\x0fMLService.proto\x12\x08mccproxy\"8\n\x0ePredictRequest\x12&\n\x08\x66\x65\x61tures\x18\x01 \x03(\x0b\x32\x14.mccproxy.RawFeature\"&\n\x0fPredictResponse\x12\x13\n\x0bis_obsolete\x18\x01 \x03(\x08\";\n\nRawFeature\x12\x15\n\rread_accesses\x18\x01 \x03(\x03\x12\x16\n\x0ewrite_accesses\x18\x02 \x03(\x03\x32M\n\tMLService\x12@\n\x07Predict\x12\x18.mccproxy.PredictRequest\x1a\x19.mccproxy.PredictResponse\"\x00\x42#\n\x0forg.mccproxy.mlB\x0eMLServiceProtoP\x01\x62\x06proto3')
+DESCRIPTOR = _descriptor_pool.Default().AddSerializedFile(b'\n\x0fMLService.proto\x12\x08mccproxy\"\x84\x01\n\x0ePredictRequest\x12&\n\x08\x66\x65\x61tures\x18\x01 \x03(\x0b\x32\x14.mccproxy.RawFeature\x12\x36\n\x12\x65xtracted_features\x18\x02 \x03(\x0b\x32\x1a.mccproxy.ExtractedFeature\x12\x12\n\nrequest_id\x18\x03 \x01(\x03\":\n\x0fPredictResponse\x12\x13\n\x0bis_obsolete\x18\x01 \x03(\x08\x12\x12\n\nrequest_id\x18\x02 \x01(\x03\";\n\nRawFeature\x12\x15\n\rread_accesses\x18\x01 \x03(\x03\x12\x16\n\x0ewrite_accesses\x18\x02 \x03(\x03\"\"\n\x10\x45xtractedFeature\x12\x0e\n\x06values\x18\x01 \x03(\x02\x32\x99\x01\n\tMLService\x12@\n\x07Predict\x12\x18.mccproxy.PredictRequest\x1a\x19.mccproxy.PredictResponse\"\x00\x12J\n\rPredictStream\x12\x18.mccproxy.PredictRequest\x1a\x19.mccproxy.PredictResponse\"\x00(\x01\x30\x01\x42#\n\x0forg.mccproxy.mlB\x0eMLServiceProtoP\x01\x62\x06proto3')
 
 _globals = globals()
 _builder.BuildMessageAndEnumDescriptors(DESCRIPTOR, _globals)
@@ -22,12 +22,14 @@ _builder.BuildTopDescriptorsAndMessages(DESCRIPTOR, 'MLService_pb2', _globals)
 if not _descriptor._USE_C_DESCRIPTORS:
   _globals['DESCRIPTOR']._loaded_options = None
   _globals['DESCRIPTOR']._serialized_options = b'\n\017org.mccproxy.mlB\016MLServiceProtoP\001'
-  _globals['_PREDICTREQUEST']._serialized_start=29
-  _globals['_PREDICTREQUEST']._serialized_end=85
-  _globals['_PREDICTRESPONSE']._serialized_start=87
-  _globals['_PREDICTRESPONSE']._serialized_end=125
-  _globals['_RAWFEATURE']._serialized_start=127
-  _globals['_RAWFEATURE']._serialized_end=186
-  _globals['_MLSERVICE']._serialized_start=188
-  _globals['_MLSERVICE']._serialized_end=265
+  _globals['_PREDICTREQUEST']._serialized_start=30
+  _globals['_PREDICTREQUEST']._serialized_end=162
+  _globals['_PREDICTRESPONSE']._serialized_start=164
+  _globals['_PREDICTRESPONSE']._serialized_end=222
+  _globals['_RAWFEATURE']._serialized_start=224
+  _globals['_RAWFEATURE']._serialized_end=283
+  _globals['_EXTRACTEDFEATURE']._serialized_start=285
+  _globals['_EXTRACTEDFEATURE']._serialized_end=319
+  _globals['_MLSERVICE']._serialized_start=322
+  _globals['_MLSERVICE']._serialized_end=475
 # @@protoc_insertion_point(module_scope)
@@ -44,6 +44,11 @@ class MLServiceStub(object):
                 request_serializer=MLService__pb2.PredictRequest.SerializeToString,
                 response_deserializer=MLService__pb2.PredictResponse.FromString,
                 _registered_method=True)
+        self.PredictStream = channel.stream_stream(
+                '/mccproxy.MLService/PredictStream',
+                request_serializer=MLService__pb2.PredictRequest.SerializeToString,
+                response_deserializer=MLService__pb2.PredictResponse.FromString,
+                _registered_method=True)
 
 
 class MLServiceServicer(object):
@@ -55,6 +60,12 @@ class MLServiceServicer(object):
         context.set_details('Method not implemented!')
         raise NotImplementedError('Method not implemented!')
 
+    def PredictStream(self, request_iterator, context):
+        """Missing associated documentation comment in .proto file."""
+        context.set_code(grpc.StatusCode.UNIMPLEMENTED)
+        context.set_details('Method not implemented!')
+        raise NotImplementedError('Method not implemented!')
+
 
 def add_MLServiceServicer_to_server(servicer, server):
     rpc_method_handlers = {
@@ -63,6 +74,11 @@ def add_MLServiceServicer_to_server(servicer, server):
                     request_deserializer=MLService__pb2.PredictRequest.FromString,
                     response_serializer=MLService__pb2.PredictResponse.SerializeToString,
             ),
+            'PredictStream': grpc.stream_stream_rpc_method_handler(
+                    servicer.PredictStream,
+                    request_deserializer=MLService__pb2.PredictRequest.FromString,
+                    response_serializer=MLService__pb2.PredictResponse.SerializeToString,
+            ),
     }
     generic_handler = grpc.method_handlers_generic_handler(
             'mccproxy.MLService', rpc_method_handlers)
@@ -100,3 +116,30 @@ class MLService(object):
             timeout,
             metadata,
             _registered_method=True)
+
+    @staticmethod
+    def PredictStream(request_iterator,
+            target,
+            options=(),
+            channel_credentials=None,
+            call_credentials=None,
+            insecure=False,
+            compression=None,
+            wait_for_ready=None,
+            timeout=None,
+            metadata=None):
+        return grpc.experimental.stream_stream(
+            request_iterator,
+            target,
+            '/mccproxy.MLService/PredictStream',
+            MLService__pb2.PredictRequest.SerializeToString,
+            MLService__pb2.PredictResponse.FromString,
+            options,
+            channel_credentials,
+            insecure,
+            call_credentials,
+            compression,
+            wait_for_ready,
+            timeout,
+            metadata,
+            _registered_method=True)
@@ -0,0 +1,42 @@
+import json
+
+import numpy as np
+
+from FeatureExtractor import FEATURE_NAMES
+
+
+# Writes a trained binary classifier in the JSON format that the proxy's
+# LocalObsoleteItemsPredictor loads. The model must have been fit on
+# extract_features columns, features names the columns in the order of fit.
+def export_model(model, path, features=FEATURE_NAMES, threshold=0.5):
+    kind = type(model).__name__
+    if kind == 'LogisticRegression':
+        exported = {
+            'type': 'logistic_regression',
+            'intercept': float(model.intercept_[0]),
+            'coefficients': [float(c) for c in model.coef_[0]],
+        }
+    elif kind == 'GradientBoostingClassifier':
+        prior = model.init_.class_prior_[1]
+        exported = {
+            'type': 'gradient_boosted_trees',
+            'base_score': float(np.log(prior / (1 - prior))),
+            'trees': [export_tree(estimator[0].tree_, model.learning_rate)
+                      for estimator in model.estimators_],
+        }
+    else:
+        raise ValueError(f'Unsupported model: {kind}')
+    exported['features'] = list(features)
+    exported['threshold'] = threshold
+    with open(path, 'w') as f:
+        json.dump(exported, f)
+
+
+def export_tree(tree, learning_rate):
+    return {
+        'feature': [int(f) for f in tree.feature],
+        'threshold': [float(t) for t in tree.threshold],
+        'left': [int(c) for c in tree.children_left],
+        'right': [int(c) for c in tree.children_right],
+        'value': [float(v) * learning_rate for v in tree.value[:, 0, 0]],
+    }
@@ -0,0 +1,296 @@
+package org.mccproxy.cache;
+
+import org.mccproxy.ml.RawFeature;
+
+import java.util.Arrays;
+import java.util.function.LongFunction;
+
+/**
+ * Tracks a rarely accessed item by the time steps of its last few reads and
+ * writes, kept as varint-encoded deltas in one small byte array. Once more
+ * reads or more writes fall into the window than the sparse form keeps, the
+ * item is hot and the tracker moves its accesses to a dense tracker from the
+ * factory and delegates to it from then on.
+ * <p>
+ * Both forms produce the same features: the sparse form sets the bit of
+ * every access still in the window, which is rounded up to whole words as in
+ * {@link RingBufferAccessTracker}, and reads as of the factory's clock.
+ */
+public class AdaptiveAccessTracker<T extends AccessTracker>
+        implements AccessTracker {
+
+    /**
+     * Creates the trackers of one cache and holds the settings they share.
+     */
+    public static class Factory<T extends AccessTracker> {
+        private final int bits;
+        private final int maxSparseAccesses;
+        private final LogicalClock clock;
+        private final LongFunction<T> denseTrackers;
+
+        /**
+         * @param maxSparseAccesses the reads, and separately the writes, that
+         *                          the sparse form keeps
+         * @param denseTrackers     creates a dense tracker synced to the
+         *                          given time step
+         */
+        public Factory(int windowSize, int maxSparseAccesses,
+                       LogicalClock clock, LongFunction<T> denseTrackers) {
+            if (maxSparseAccesses < 1 || maxSparseAccesses > Byte.MAX_VALUE) {
+                throw new IllegalArgumentException(
+                        "maxSparseAccesses must be in [1, 127]: " +
+                                maxSparseAccesses);
+            }
+            this.bits = Math.max((windowSize + 63) / 64, 1) * 64;
+            this.maxSparseAccesses = maxSparseAccesses;
+            this.clock = clock;
+            this.denseTrackers = denseTrackers;
+        }
+
+        public AdaptiveAccessTracker<T> create(long timeStep) {
+            return new AdaptiveAccessTracker<>(this, timeStep);
+        }
+    }
+
+    private static final long[] NO_ACCESSES = new long[0];
+
+    private final Factory<T> factory;
+    // the reads and then the writes, each newest first: the distance of the
+    // newest one to the last update, then the distances between neighbours
+    private byte[] encoded;
+    private byte readCount;
+    private byte writeCount;
+    private long lastUpdateTimeStep;
+    // null while the tracker is sparse
+    private T dense;
+
+    private AdaptiveAccessTracker(Factory<T> factory, long timeStep) {
+        this.factory = factory;
+        this.lastUpdateTimeStep = timeStep;
+    }
+
+    public boolean isDense() {
+        return dense != null;
+    }
+
+    /**
+     * @return the dense tracker, null while the tracker is sparse
+     */
+    public T getDenseTracker() {
+        return dense;
+    }
+
+    @Override
+    public void recordRead(long timeStep) {
+        if (dense != null) {
+            dense.recordRead(timeStep);
+        } else {
+            record(true, timeStep);
+        }
+    }
+
+    @Override
+    public void recordWrite(long timeStep) {
+        if (dense != null) {
+            dense.recordWrite(timeStep);
+        } else {
+            record(false, timeStep);
+        }
+    }
+
+    @Override
+    public void syncTimeStep(long timeStep) {
+        if (dense != null) {
+            dense.syncTimeStep(timeStep);
+        } else if (timeStep > lastUpdateTimeStep) {
+            long[] reads = decodeReads();
+            long[] writes = decodeWrites();
+            lastUpdateTimeStep = timeStep;
+            encode(reads, writes);
+        }
+    }
+
+    private void record(boolean isRead, long timeStep) {
+        long[] reads = decodeReads();
+        long[] writes = decodeWrites();
+        lastUpdateTimeStep = Math.max(lastUpdateTimeStep, timeStep);
+        if (lastUpdateTimeStep - timeStep < factory.bits) {
+            if (isRead) {
+                reads = insert(reads, timeStep);
+            } else {
+                writes = insert(writes, timeStep);
+            }
+        }
+        reads = dropExpired(reads);
+        writes = dropExpired(writes);
+        if (reads.length > factory.maxSparseAccesses ||
+                writes.length > factory.maxSparseAccesses) {
+            becomeDense(reads, writes);
+        } else {
+            encode(reads, writes);
+        }
+    }
+
+    private void becomeDense(long[] reads, long[] writes) {
+        dense = factory.denseTrackers.apply(lastUpdateTimeStep);
+        for (long timeStep : reads) {
+            dense.recordRead(timeStep);
+        }
+        for (long timeStep : writes) {
+            dense.recordWrite(timeStep);
+        }
+        encoded = null;
+        readCount = 0;
+        writeCount = 0;
+    }
+
+    // inserts the time step into the newest first array, unless present
+    private static long[] insert(long[] timeSteps, long timeStep) {
+        int index = 0;
+        while (index < timeSteps.length && timeSteps[index] > timeStep) {
+            index++;
+        }
+        if (index < timeSteps.length && timeSteps[index] == timeStep) {
+            return timeSteps;
+        }
+        long[] result = new long[timeSteps.length + 1];
+        System.arraycopy(timeSteps, 0, result, 0, index);
+        result[index] = timeStep;
+        System.arraycopy(timeSteps, index, result, index + 1,
+                         timeSteps.length - index);
+        return result;
+    }
+
+    // the time steps that are still in the window of the last update
+    private long[] dropExpired(long[] timeSteps) {
+        int length = timeSteps.length;
+        while (length > 0 &&
+                lastUpdateTimeStep - timeSteps[length - 1] >= factory.bits) {
+            length--;
+        }
+        if (length == timeSteps.length) {
+            return timeSteps;
+        }
+        return length == 0 ? NO_ACCESSES : Arrays.copyOf(timeSteps, length);
+    }
+
+    @Override
+    public RawFeature toRawFeature() {
+        if (dense != null) {
+            return dense.toRawFeature();
+        }
+        long now = Math.max(lastUpdateTimeStep, factory.clock.now());
+        int words = factory.bits / 64;
+        long[] readWords = toWords(decodeReads(), now, words);
+        long[] writeWords = toWords(decodeWrites(), now, words);
+        RawFeature.Builder builder = RawFeature.newBuilder();
+        for (long word : readWords) {
+            builder.addReadAccesses(word);
+        }
+        for (long word : writeWords) {
+            builder.addWriteAccesses(word);
+        }
+        return builder.build();
+    }
+
+    private long[] toWords(long[] timeSteps, long now, int words) {
+        long[] result = new long[words];
+        for (long timeStep : timeSteps) {
+            long age = now - timeStep;
+            if (age < factory.bits) {
+                result[(int) (age >>> 6)] |= 1L << age;
+            }
+        }
+        return result;
+    }
+
+    // ---- varint encoding ----
+
+    private long[] decodeReads() {
+        return decode(0, readCount);
+    }
+
+    private long[] decodeWrites() {
+        if (writeCount == 0) {
+            return NO_ACCESSES;
+        }
+        // skip the reads, every varint ends with a byte below 0x80
+        int offset = 0;
+        for (int varints = 0; varints < readCount; offset++) {
+            if (encoded[offset] >= 0) {
+                varints++;
+            }
+        }
+        return decode(offset, writeCount);
+    }
+
+    private long[] decode(int offset, int count) {
+        if (count == 0) {
+            return NO_ACCESSES;
+        }
+        long[] timeSteps = new long[count];
+        long timeStep = lastUpdateTimeStep;
+        for (int i = 0; i < count; i++) {
+            long delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = encoded[offset++];
+                delta |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            timeStep -= delta;
+            timeSteps[i] = timeStep;
+        }
+        return timeSteps;
+    }
+
+    private void encode(long[] reads, long[] writes) {
+        if (reads.length == 0 && writes.length == 0) {
+            encoded = null;
+            readCount = 0;
+            writeCount = 0;
+            return;
+        }
+        int size = encodedSize(reads) + encodedSize(writes);
+        byte[] result = new byte[size];
+        int offset = encode(reads, result, 0);
+        encode(writes, result, offset);
+        encoded = result;
+        readCount = (byte) reads.length;
+        writeCount = (byte) writes.length;
+    }
+
+    private int encodedSize(long[] timeSteps) {
+        int size = 0;
+        long previous = lastUpdateTimeStep;
+        for (long timeStep : timeSteps) {
+            size += varintSize(previous - timeStep);
+            previous = timeStep;
+        }
+        return size;
+    }
+
+    private int encode(long[] timeSteps, byte[] result, int offset) {
+        long previous = lastUpdateTimeStep;
+        for (long timeStep : timeSteps) {
+            long delta = previous - timeStep;
+            while ((delta & ~0x7FL) != 0) {
+                result[offset++] = (byte) (delta & 0x7F | 0x80);
+                delta >>>= 7;
+            }
+            result[offset++] = (byte) delta;
+            previous = timeStep;
+        }
+        return offset;
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+}
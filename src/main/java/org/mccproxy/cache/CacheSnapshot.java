@@ -0,0 +1,251 @@
+package org.mccproxy.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The binary layout of a cache metadata snapshot, written and read through
+ * memory-mapped files. A snapshot starts with a header
+ * <pre>
+ *   int magic, int format, long maxInvalidationTimestamp, long timeStep,
+ *   int itemCount
+ * </pre>
+ * followed by one entry per item, least recently used first:
+ * <pre>
+ *   int keyLength, byte[keyLength] key (UTF-8),
+ *   long version, long validUntil, int dataSize, long lastAccessTimeStep,
+ *   int olderCount, olderCount x (long version, long validUntil, int dataSize),
+ *   int readWords, long[readWords], int writeWords, long[writeWords]
+ * </pre>
+ * The access words are the tracker bitmaps as of the snapshot's time step,
+ * bit i of word j standing for the step j * 64 + i steps back. A snapshot is
+ * encoded in memory while the cache is locked, then written to a temporary
+ * file that replaces the previous snapshot only once it is complete.
+ */
+public class CacheSnapshot {
+    static final int MAGIC = 0x4D434353; // "MCCS"
+    static final int FORMAT = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+    private static final int INITIAL_BUFFER_SIZE = 1 << 20;
+
+    public record Header(long maxInvalidationTimestamp, long timeStep,
+                         int itemCount) {
+    }
+
+    /**
+     * Encodes a snapshot on the heap, so the cache is only held while its
+     * metadata is copied; the bytes are written to disk by {@link #write}.
+     */
+    static class Writer {
+        private ByteBuffer buffer;
+        private int itemCount;
+
+        Writer(long maxInvalidationTimestamp, long timeStep) {
+            buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+            buffer.putInt(MAGIC);
+            buffer.putInt(FORMAT);
+            buffer.putLong(maxInvalidationTimestamp);
+            buffer.putLong(timeStep);
+            buffer.putInt(0); // item count, written by finish()
+        }
+
+        void writeItem(String key, long version, long validUntil,
+                       int dataSize, long lastAccessTimeStep,
+                       int olderCount, long[] olderVersions,
+                       long[] olderValidUntils, int[] olderDataSizes,
+                       long[] readWords, long[] writeWords) {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            ensureRemaining(4 + keyBytes.length + 8 + 8 + 4 + 8 + 4 +
+                                    olderCount * 20 + 4 + readWords.length * 8 +
+                                    4 + writeWords.length * 8);
+            buffer.putInt(keyBytes.length);
+            buffer.put(keyBytes);
+            buffer.putLong(version);
+            buffer.putLong(validUntil);
+            buffer.putInt(dataSize);
+            buffer.putLong(lastAccessTimeStep);
+            buffer.putInt(olderCount);
+            for (int i = 0; i < olderCount; i++) {
+                buffer.putLong(olderVersions[i]);
+                buffer.putLong(olderValidUntils[i]);
+                buffer.putInt(olderDataSizes[i]);
+            }
+            putWords(readWords);
+            putWords(writeWords);
+            itemCount++;
+        }
+
+        private void putWords(long[] words) {
+            buffer.putInt(words.length);
+            for (long word : words) {
+                buffer.putLong(word);
+            }
+        }
+
+        // grows the buffer to twice its size, or more for a large item
+        private void ensureRemaining(int size) {
+            if (buffer.remaining() >= size) {
+                return;
+            }
+            long capacity = Math.max(2L * buffer.capacity(),
+                                     (long) buffer.position() + size);
+            if (capacity > Integer.MAX_VALUE) {
+                throw new IllegalStateException(
+                        "Cache snapshot larger than 2 GB");
+            }
+            ByteBuffer grown = ByteBuffer.allocate((int) capacity);
+            grown.put(buffer.flip());
+            buffer = grown;
+        }
+
+        /**
+         * @return the encoded snapshot, ready to be passed to {@link #write}
+         */
+        ByteBuffer finish() {
+            buffer.putInt(HEADER_SIZE - 4, itemCount);
+            return buffer.flip();
+        }
+    }
+
+    /**
+     * Writes an encoded snapshot through a mapped temporary file, forces it
+     * to disk and moves it over the previous snapshot.
+     */
+    public static void write(Path path, ByteBuffer snapshot)
+            throws IOException {
+        Path tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(
+                    tmpPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(
+                        FileChannel.MapMode.READ_WRITE, 0,
+                        snapshot.remaining());
+                buffer.put(snapshot.duplicate());
+                buffer.force();
+            }
+            Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmpPath);
+        }
+    }
+
+    static class Reader implements Closeable {
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final Header header;
+        private int itemsRead;
+
+        // the fields of the current item, valid after next() returned true
+        String key;
+        long version;
+        long validUntil;
+        int dataSize;
+        long lastAccessTimeStep;
+        int olderCount;
+        long[] olderVersions = new long[0];
+        long[] olderValidUntils = new long[0];
+        int[] olderDataSizes = new int[0];
+        long[] readWords = new long[0];
+        long[] writeWords = new long[0];
+
+        Reader(Path path) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                 channel.size());
+            if (buffer.remaining() < HEADER_SIZE ||
+                    buffer.getInt() != MAGIC) {
+                channel.close();
+                throw new IOException("Not a cache snapshot: " + path);
+            }
+            int format = buffer.getInt();
+            if (format != FORMAT) {
+                channel.close();
+                throw new IOException(
+                        "Unsupported cache snapshot format: " + format);
+            }
+            header = new Header(buffer.getLong(), buffer.getLong(),
+                                buffer.getInt());
+        }
+
+        Header getHeader() {
+            return header;
+        }
+
+        boolean next() {
+            if (itemsRead == header.itemCount()) {
+                return false;
+            }
+            byte[] keyBytes = new byte[buffer.getInt()];
+            buffer.get(keyBytes);
+            key = new String(keyBytes, StandardCharsets.UTF_8);
+            version = buffer.getLong();
+            validUntil = buffer.getLong();
+            dataSize = buffer.getInt();
+            lastAccessTimeStep = buffer.getLong();
+            olderCount = buffer.getInt();
+            if (olderVersions.length < olderCount) {
+                olderVersions = new long[olderCount];
+                olderValidUntils = new long[olderCount];
+                olderDataSizes = new int[olderCount];
+            }
+            for (int i = 0; i < olderCount; i++) {
+                olderVersions[i] = buffer.getLong();
+                olderValidUntils[i] = buffer.getLong();
+                olderDataSizes[i] = buffer.getInt();
+            }
+            readWords = getWords();
+            writeWords = getWords();
+            itemsRead++;
+            return true;
+        }
+
+        private long[] getWords() {
+            long[] words = new long[buffer.getInt()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = buffer.getLong();
+            }
+            return words;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Replays the accesses recorded in the snapshot's bitmaps, oldest first,
+     * into a tracker that was last synced before the oldest of them.
+     */
+    static void replayAccesses(AccessTracker tracker, long[] readWords,
+                               long[] writeWords, long timeStep) {
+        int bits = 64 * Math.max(readWords.length, writeWords.length);
+        for (int age = bits - 1; age >= 0; age--) {
+            if (timeStep - age < 0) {
+                continue;
+            }
+            if (isSet(readWords, age)) {
+                tracker.recordRead(timeStep - age);
+            }
+            if (isSet(writeWords, age)) {
+                tracker.recordWrite(timeStep - age);
+            }
+        }
+        tracker.syncTimeStep(timeStep);
+    }
+
+    private static boolean isSet(long[] words, int bit) {
+        return bit / 64 < words.length && (words[bit / 64] >>> bit & 1) != 0;
+    }
+}
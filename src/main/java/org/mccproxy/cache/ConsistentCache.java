@@ -2,25 +2,94 @@ package org.mccproxy.cache;
 
 import com.google.common.annotations.VisibleForTesting;
 import org.mccproxy.ml.ObsoleteItemsPredictor;
+import org.mccproxy.ml.RawFeature;
 import org.mccproxy.ml.SimpleObsoleteItemsPredictor;
 import org.mccproxy.proxy.ItemRecord;
+import org.mccproxy.utils.CountingBloomFilter;
+import org.mccproxy.utils.IntHashSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import static java.lang.Long.min;
 import static org.apache.commons.lang3.ObjectUtils.max;
 
-public class ConsistentCache {
+public class ConsistentCache implements SnapshottableCache {
     private static Logger logger =
             LoggerFactory.getLogger(ConsistentCache.class.getName());
-    private HashMap<String, ItemNode> cachedItems;
+    private static final int TRACKER_WINDOW_SIZE = 256;
+    // an item with more reads or more writes in a window than this is hot
+    private static final int SPARSE_TRACKER_ACCESSES = 8;
+    private static final int PREDICTION_BATCH_SIZE = 100;
+    private static final int PREDICTIONS_IN_FLIGHT = 8;
+    // an async predictor starts scoring the candidates once this share of
+    // the items is marked, so the verdicts are ready when the phase ends
+    private static final double PRECOMPUTE_MARKED_SHARE = 0.9;
+    // ItemNode 96, sparse access tracker 40 and its encoded accesses 24,
+    // item table slot 4, key dictionary entry 68, eviction policy 16,
+    // membership filter 4, key string 72; a hot item adds a tracker arena
+    // slot of 64 off-heap, 8 for its time step and 16 for its view
+    static final int ENTRY_OVERHEAD = 324;
+    private final KeyDictionary keyDictionary;
+    // indexed by key id, null if the key is not cached
+    private ItemNode[] cachedItems;
     private ItemNode dummyHead, dummyTail;
+    // Obsolete candidates are maintained as the cache changes, so a phase end
+    // only looks at them instead of at every cached item. The invalidated
+    // list holds the items whose cached version has been superseded, in
+    // invalidation order; idle items are found at the tail of the LRU list.
+    private ItemNode invalidatedHead, invalidatedTail;
+    // chooses the victims of getLruItems()
+    private final EvictionPolicy evictionPolicy;
+    // keys of the cached items, so that invalidations of keys that were
+    // never cached are rejected without looking them up
+    private CountingBloomFilter cachedKeys = new CountingBloomFilter(1024);
     private int currentSize;
     private int maxSize;
     private int itemCount;
     private ObsoleteItemsPredictor obsoleteItemsPredictor;
+    // items read more recently are not obsolete candidates
+    private int obsoleteIdleTimeSteps;
+    // Verdicts scored before the phase end, by key id. They are used for
+    // the candidates whose trackers did not change since; their features
+    // are as of the time step the precomputation started.
+    private boolean precomputing;
+    // the batches of the precomputation that may still be in flight
+    private PredictionBatcher precomputation;
+    private final IntHashSet precomputedObsolete = new IntHashSet();
+    private final IntHashSet precomputedKept = new IntHashSet();
+    private final IntHashSet changedSincePrecomputation = new IntHashSet();
+    // samples evicted items for the training data, null if disabled
+    private EvictionOutcomeRecorder evictionOutcomeRecorder;
+    // the access trackers are read as of this clock, so idle items are not
+    // synced when a phase ends
+    private final LogicalClock clock = new LogicalClock();
+    // the access bitmaps of the hot items, off the heap
+    private final TrackerArena trackerArena =
+            new TrackerArena(TRACKER_WINDOW_SIZE, clock);
+    private final AdaptiveAccessTracker.Factory<TrackerArena.Slot>
+            trackerFactory = new AdaptiveAccessTracker.Factory<>(
+            TRACKER_WINDOW_SIZE, SPARSE_TRACKER_ACCESSES, clock,
+            trackerArena::allocate);
+
+    // Every item keeps up to maxVersionsPerKey - 1 replaced versions with
+    // their closed lifetimes, so a read set can still be served at an
+    // earlier snapshot after some of its items were refreshed.
+    private int maxVersionsPerKey = 1;
+    // versioned keys of replaced versions that are no longer kept
+    private final List<String> droppedVersions = new ArrayList<>();
+    // scratch space of the snapshot search, see lookupOlderVersions()
+    private ItemNode[] lookupNodes = new ItemNode[16];
+    private long[] snapshotStarts = new long[16];
+    private long[] snapshotEnds = new long[16];
+    private long[] nextSnapshotStarts = new long[16];
+    private long[] nextSnapshotEnds = new long[16];
 
     // to divide the run into phases
     //    An item in C is marked at the time when it is brought into C, or
@@ -33,48 +102,85 @@ public class ConsistentCache {
     private int markedItemCount;
 
     // tracking the maximum timestamp that has been seen in the invalidation message
-    private long maxInvalidationTimestamp = 0;
+    private final AtomicLong maxInvalidationTimestamp;
 
     public ConsistentCache(int maxSize) {
-        cachedItems = new HashMap<>();
+        this(maxSize, new KeyDictionary());
+    }
+
+    public ConsistentCache(int maxSize, KeyDictionary keyDictionary) {
+        this(maxSize, keyDictionary, new SizeClassLruIndex());
+    }
+
+    public ConsistentCache(int maxSize, KeyDictionary keyDictionary,
+                           EvictionPolicy evictionPolicy) {
+        this(maxSize, keyDictionary, new AtomicLong(0), evictionPolicy);
+    }
+
+    // used by ShardedConsistentCache, whose segments share one watermark
+    ConsistentCache(int maxSize, KeyDictionary keyDictionary,
+                    AtomicLong maxInvalidationTimestamp,
+                    EvictionPolicy evictionPolicy) {
+        this.keyDictionary = keyDictionary;
+        cachedItems = new ItemNode[1024];
         dummyHead = new ItemNode();
         dummyTail = new ItemNode();
         dummyHead.next = dummyTail;
         dummyTail.prev = dummyHead;
+        invalidatedHead = new ItemNode();
+        invalidatedTail = new ItemNode();
+        invalidatedHead.invalidatedNext = invalidatedTail;
+        invalidatedTail.invalidatedPrev = invalidatedHead;
+
+        this.evictionPolicy = evictionPolicy;
 
         this.maxSize = maxSize;
+        this.maxInvalidationTimestamp = maxInvalidationTimestamp;
         obsoleteItemsPredictor = new SimpleObsoleteItemsPredictor();
 
         logger.info("ConsistentCache initialized with maxSize={}", maxSize);
     }
 
+    @Override
     public int getCacheSize() {
         return currentSize;
     }
 
+    @Override
     public int getCacheSizeLimit() {
         return maxSize;
     }
 
+    @Override
+    public KeyDictionary getKeyDictionary() {
+        return keyDictionary;
+    }
+
+    @Override
     public long getItemVersion(String key) {
-        if (cachedItems.containsKey(key)) {
-            return cachedItems.get(key).version;
+        ItemNode node = getNode(key);
+        if (node != null) {
+            return node.version;
         }
         return -1;
     }
 
+    @Override
     public long getItemValidUntil(String key) {
-        if (cachedItems.containsKey(key)) {
-            return cachedItems.get(key).validUntil;
+        ItemNode node = getNode(key);
+        if (node != null) {
+            return node.validUntil;
         }
         return -1;
     }
 
+    @Override
     public int getDataSize(List<String> keys) {
         int totalSize = 0;
         for (String key : keys) {
-            if (cachedItems.containsKey(key)) {
-                totalSize += cachedItems.get(key).dataSize;
+            ItemNode node = getNode(key);
+            if (node != null) {
+                totalSize += node.getRetainedSize();
             }
         }
         return totalSize;
@@ -84,82 +190,180 @@ public class ConsistentCache {
         invalidate(key, newVersion, 0);
     }
 
+    @Override
     public void invalidate(String key, long newVersion, long timeStep) {
-        logger.info(
+        logger.debug(
                 "ConsistentCache::invalidate - Invalidating item with key={} newVersion={}",
                 key, newVersion);
 
         // update the maximum invalidation timestamp before updating the cache to handle race conditions
-        assert newVersion >= maxInvalidationTimestamp;
-        maxInvalidationTimestamp = newVersion;
+        assert newVersion >= maxInvalidationTimestamp.get();
+        // never lowered, lookups must not be served against a stale watermark
+        maxInvalidationTimestamp.accumulateAndGet(newVersion, Math::max);
 
-        if (cachedItems.containsKey(key)) {
-            ItemNode node = cachedItems.get(key);
+        // most invalidations are for keys that were never cached
+        if (!cachedKeys.mightContain(key)) {
+            return;
+        }
+        applyInvalidation(key, newVersion, timeStep);
+
+        logger.debug("ConsistentCache::invalidate - Current cache info: {}",
+                     this);
+    }
+
+    // updates the item's lifetime without touching the watermark, so that a
+    // caller owning a shared watermark can publish it after the whole batch
+    void applyInvalidation(String key, long newVersion, long timeStep) {
+        ItemNode node = getNode(key);
+        if (node != null) {
 
             // access write for ML feature
-            node.accessTracker.recordWrite(timeStep);
+            recordWrite(node, timeStep);
 
-            if (node.validUntil == Long.MAX_VALUE &&
-                    node.version < newVersion) {
-                node.validUntil = newVersion;
-            }
-            logger.info(
+            closeLifetime(node, newVersion);
+            logger.debug(
                     "ConsistentCache::invalidate - Invalidated item with key={}: newVersion={} validUntil={}",
                     key, newVersion, node.validUntil);
         } else {
-            logger.info(
+            logger.debug(
                     "ConsistentCache::invalidate - Item with key={} not found in cache",
                     key);
         }
+    }
 
-        logger.debug("ConsistentCache::invalidate - Current cache info: {}",
-                     this);
+    @Override
+    public void closeLifetime(String key, long newVersion) {
+        ItemNode node = getNode(key);
+        if (node != null) {
+            closeLifetime(node, newVersion);
+        }
     }
 
-    public List<String> getObsoleteItems(Set<String> itemsToKeep,
+    private void closeLifetime(ItemNode node, long newVersion) {
+        if (node.validUntil == Long.MAX_VALUE && node.version < newVersion) {
+            node.validUntil = newVersion;
+            addInvalidatedNode(node);
+        }
+    }
+
+    @Override
+    public List<String> getObsoleteItems(IntHashSet itemsToKeep,
                                          long timeStep) {
         List<String> obsoleteItems = new ArrayList<>();
+        clock.advanceTo(timeStep);
+        if (precomputation != null) {
+            precomputation.finish();
+            precomputation = null;
+        }
 
-        int batchSize = 100;
-        List<ItemNode> nodeBatch = new ArrayList<>(batchSize);
-        for (Map.Entry<String, ItemNode> entry : cachedItems.entrySet()) {
-            String key = entry.getKey();
-            ItemNode node = entry.getValue();
-            if (!itemsToKeep.contains(key)) {
-                node.accessTracker.syncTimeStep(timeStep);
-
-                nodeBatch.add(node);
-                if (nodeBatch.size() > batchSize) {
-                    List<Boolean> isObsolete =
-                            obsoleteItemsPredictor.predictObsoleteItems(
-                                    nodeBatch.stream().map(n -> n.accessTracker)
-                                            .toList());
-                    for (int i = 0; i < nodeBatch.size(); i++) {
-                        if (isObsolete.get(i)) {
-                            obsoleteItems.add(nodeBatch.get(i).key);
-                        }
-                    }
-                    nodeBatch.clear();
+        PredictionBatcher batcher =
+                new PredictionBatcher(obsoleteItemsPredictor,
+                                      PREDICTION_BATCH_SIZE,
+                                      PREDICTIONS_IN_FLIGHT,
+                                      (keyId, isObsolete) -> {
+                                          if (isObsolete) {
+                                              obsoleteItems.add(
+                                                      cachedItems[keyId].key);
+                                          }
+                                      });
+        forEachObsoleteCandidate(timeStep, node -> {
+            if (itemsToKeep.contains(node.keyId)) {
+                return;
+            }
+            if (precomputing &&
+                    !changedSincePrecomputation.contains(node.keyId)) {
+                if (precomputedObsolete.contains(node.keyId)) {
+                    obsoleteItems.add(node.key);
+                    return;
+                }
+                if (precomputedKept.contains(node.keyId)) {
+                    return;
                 }
             }
-        }
+            batcher.add(node.keyId, node.accessTracker);
+        });
+        batcher.finish();
+
+        precomputing = false;
+        precomputedObsolete.clear();
+        precomputedKept.clear();
+        changedSincePrecomputation.clear();
 
         logger.info("ConsistentCache::getObsoleteItems - Obsolete items: {}",
                     obsoleteItems);
         return obsoleteItems;
     }
 
-    public List<String> getLruItems(Set<String> itemsToKeep, int neededSize) {
-        List<String> lruItems = new ArrayList<>();
-        ItemNode current = dummyTail.prev;
-        int evictedSize = 0;
-        while (evictedSize < neededSize && current != dummyHead) {
-            if (!itemsToKeep.contains(current.key)) {
-                lruItems.add(current.key);
-                evictedSize += current.dataSize;
+    private void forEachObsoleteCandidate(long timeStep,
+                                          Consumer<ItemNode> action) {
+        // superseded versions
+        for (ItemNode node = invalidatedHead.invalidatedNext;
+             node != invalidatedTail; node = node.invalidatedNext) {
+            action.accept(node);
+        }
+
+        // idle items, the walk stops at the first item that was read more
+        // recently
+        for (ItemNode node = dummyTail.prev; node != dummyHead &&
+                node.lastAccessTimeStep + obsoleteIdleTimeSteps <=
+                        timeStep; node = node.prev) {
+            if (!node.isInvalidated()) {
+                action.accept(node);
             }
-            current = current.prev;
         }
+    }
+
+    // starts scoring the candidates in the background once most items are
+    // marked, as of the latest time step seen
+    private void maybePrecomputeObsoleteItems() {
+        if (precomputing || !obsoleteItemsPredictor.isAsync() ||
+                itemCount < PREDICTION_BATCH_SIZE || isAllMarked() ||
+                markedItemCount < PRECOMPUTE_MARKED_SHARE * itemCount) {
+            return;
+        }
+        precomputing = true;
+        precomputation = new PredictionBatcher(obsoleteItemsPredictor,
+                                               PREDICTION_BATCH_SIZE,
+                                               PREDICTIONS_IN_FLIGHT,
+                                               (keyId, isObsolete) -> {
+                                                   if (isObsolete) {
+                                                       precomputedObsolete.add(
+                                                               keyId);
+                                                   } else {
+                                                       precomputedKept.add(
+                                                               keyId);
+                                                   }
+                                               });
+        forEachObsoleteCandidate(clock.now(),
+                                 node -> precomputation.add(node.keyId,
+                                                            node.accessTracker));
+        precomputation.flush();
+        logger.info(
+                "ConsistentCache::maybePrecomputeObsoleteItems - Started at markedItemCount={} itemCount={}",
+                markedItemCount, itemCount);
+    }
+
+    private void recordRead(ItemNode node, long timeStep) {
+        clock.advanceTo(timeStep);
+        node.accessTracker.recordRead(timeStep);
+        if (precomputing) {
+            changedSincePrecomputation.add(node.keyId);
+        }
+    }
+
+    private void recordWrite(ItemNode node, long timeStep) {
+        node.accessTracker.recordWrite(timeStep);
+        if (precomputing) {
+            changedSincePrecomputation.add(node.keyId);
+        }
+    }
+
+    @Override
+    public List<String> getLruItems(IntHashSet itemsToKeep, int neededSize) {
+        List<String> lruItems = new ArrayList<>();
+        long evictedSize = evictionPolicy.selectVictims(
+                itemsToKeep, neededSize,
+                keyId -> lruItems.add(cachedItems[keyId].key));
         if (evictedSize < neededSize) {
             logger.warn(
                     "ConsistentCache::getLruItems - Not enough items to evict: neededSize={} evictedSize={}",
@@ -169,20 +373,25 @@ public class ConsistentCache {
         return lruItems;
     }
 
+    @Override
     public boolean isMCCHit(List<String> keys) {
+        if (maxVersionsPerKey > 1) {
+            MCCLookupResult result = new MCCLookupResult();
+            lookup(keys, result);
+            return result.isMCCHit();
+        }
         long lifeStartMax = Long.MIN_VALUE;
         long lifeEndMin = Long.MAX_VALUE;
 
         for (String item_key : keys) {
+            ItemNode node = getNode(item_key);
             // not cached
-            if (!cachedItems.containsKey(item_key)) {
+            if (node == null) {
                 return false;
             }
 
-            ItemNode node = cachedItems.get(item_key);
-
             // invalidation outdated, there can be updates after the invalidation
-            if (node.version > maxInvalidationTimestamp) {
+            if (node.version > maxInvalidationTimestamp.get()) {
                 return false;
             }
 
@@ -201,16 +410,135 @@ public class ConsistentCache {
         return true;
     }
 
+    @Override
+    public void lookup(List<String> keys, MCCLookupResult result) {
+        result.reset(keys.size(), maxInvalidationTimestamp.get());
+        ensureLookupCapacity(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            ItemNode node = getNode(keys.get(i));
+            lookupNodes[i] = node;
+            if (node == null) {
+                result.setMissing(i);
+            } else {
+                result.setCached(i, node.version, node.validUntil);
+            }
+        }
+        lookupOlderVersions(keys.size(), result);
+
+        logger.debug("ConsistentCache::lookup - MCCLookupResult: {}", result);
+    }
+
+    @Override
+    public void lookup(int[] keyIds, MCCLookupResult result) {
+        result.reset(keyIds.length, maxInvalidationTimestamp.get());
+        ensureLookupCapacity(keyIds.length);
+        for (int i = 0; i < keyIds.length; i++) {
+            ItemNode node = getNode(keyIds[i]);
+            lookupNodes[i] = node;
+            if (node == null) {
+                result.setMissing(i);
+            } else {
+                result.setCached(i, node.version, node.validUntil);
+            }
+        }
+        lookupOlderVersions(keyIds.length, result);
+
+        logger.debug("ConsistentCache::lookup - MCCLookupResult: {}", result);
+    }
+
+    private void ensureLookupCapacity(int numKeys) {
+        if (lookupNodes.length < numKeys) {
+            lookupNodes = new ItemNode[Math.max(numKeys,
+                                                lookupNodes.length * 2)];
+        }
+    }
+
+    // When the current versions do not make an MCC hit, looks for the newest
+    // snapshot at which some kept version of every key is valid. The snapshot
+    // has to be covered by the invalidation stream, and must not be older than
+    // the floor of the result so the reads stay monotonic. The candidate
+    // snapshots are kept as sorted disjoint intervals and intersected with
+    // the lifetimes of one item after the other.
+    private void lookupOlderVersions(int numKeys, MCCLookupResult result) {
+        if (maxVersionsPerKey == 1 || result.isMCCHit() ||
+                result.getMissingCount() > 0) {
+            Arrays.fill(lookupNodes, 0, numKeys, null);
+            return;
+        }
+        long watermark = result.getMaxInvalidationTimestamp();
+        long floor = result.getSnapshotFloor();
+        int count = 0;
+        if (floor <= watermark) {
+            snapshotStarts[0] = floor;
+            snapshotEnds[0] = watermark + 1;
+            count = 1;
+        }
+        for (int i = 0; i < numKeys && count > 0; i++) {
+            count = intersectLifetimes(count, lookupNodes[i]);
+        }
+
+        if (count > 0) {
+            long snapshot = snapshotEnds[count - 1] - 1;
+            for (int i = 0; i < numKeys; i++) {
+                result.setVersion(i, lookupNodes[i].getVersionAt(snapshot));
+            }
+            result.setSnapshotHit(snapshot);
+            logger.debug(
+                    "ConsistentCache::lookup - MCC hit on older versions at snapshot={}",
+                    snapshot);
+        }
+        Arrays.fill(lookupNodes, 0, numKeys, null);
+    }
+
+    private int intersectLifetimes(int count, ItemNode node) {
+        int lifetimes = node.olderCount + 1;
+        if (nextSnapshotStarts.length < count + lifetimes) {
+            int capacity = Math.max(count + lifetimes,
+                                    nextSnapshotStarts.length * 2);
+            nextSnapshotStarts = new long[capacity];
+            nextSnapshotEnds = new long[capacity];
+        }
+
+        int nextCount = 0;
+        int a = 0;
+        int b = 0;
+        while (a < count && b < lifetimes) {
+            long lifeStart = node.getLifeStart(b);
+            long lifeEnd = node.getLifeEnd(b);
+            long start = Math.max(snapshotStarts[a], lifeStart);
+            long end = Math.min(snapshotEnds[a], lifeEnd);
+            if (start < end) {
+                nextSnapshotStarts[nextCount] = start;
+                nextSnapshotEnds[nextCount] = end;
+                nextCount++;
+            }
+            if (snapshotEnds[a] < lifeEnd) {
+                a++;
+            } else {
+                b++;
+            }
+        }
+
+        long[] starts = snapshotStarts;
+        long[] ends = snapshotEnds;
+        snapshotStarts = nextSnapshotStarts;
+        snapshotEnds = nextSnapshotEnds;
+        nextSnapshotStarts = starts;
+        nextSnapshotEnds = ends;
+        return nextCount;
+    }
+
+    @Override
     public MCCHitResult makeMCCHit(List<String> keys) {
         List<String> missingItems = new ArrayList<>();
         List<String> outdatedItems = new ArrayList<>();
         List<String> hitItems = new ArrayList<>();
 
         for (String key : keys) {
-            ItemNode node = cachedItems.getOrDefault(key, null);
+            ItemNode node = getNode(key);
             if (node == null) {
                 missingItems.add(key);
-            } else if (node.version > maxInvalidationTimestamp ||
+            } else if (node.version > maxInvalidationTimestamp.get() ||
                     node.validUntil != Long.MAX_VALUE) {
                 outdatedItems.add(key);
             } else {
@@ -228,9 +556,12 @@ public class ConsistentCache {
         return result;
     }
 
+    @Override
     public void postCacheUpdate(List<String> hitItems,
                                 List<String> evictedItems,
                                 List<ItemRecord> newItems, long timeStep) {
+        // the evicted items are sampled as of this step
+        clock.advanceTo(timeStep);
         for (String key : hitItems) {
             access(key, timeStep);
         }
@@ -252,24 +583,180 @@ public class ConsistentCache {
                 this);
     }
 
+    @Override
+    public void collectVersionedKeys(String key, List<String> out) {
+        ItemNode node = getNode(key);
+        if (node == null) {
+            return;
+        }
+        for (int i = 0; i < node.olderCount; i++) {
+            out.add(ItemRecord.versionedKey(key, node.olderVersions[i]));
+        }
+        out.add(ItemRecord.versionedKey(key, node.version));
+    }
+
+    @Override
+    public void drainDroppedVersions(List<String> out) {
+        out.addAll(droppedVersions);
+        droppedVersions.clear();
+    }
+
+    @Override
+    public void setObsoleteIdleTimeSteps(int idleTimeSteps) {
+        if (idleTimeSteps < 0) {
+            throw new IllegalArgumentException(
+                    "idleTimeSteps must not be negative: " + idleTimeSteps);
+        }
+        this.obsoleteIdleTimeSteps = idleTimeSteps;
+    }
+
+    /**
+     * @param maxVersionsPerKey how many versions of a key are kept, 1 keeps
+     *                          the current version only
+     */
+    public void setMaxVersionsPerKey(int maxVersionsPerKey) {
+        if (maxVersionsPerKey < 1) {
+            throw new IllegalArgumentException(
+                    "maxVersionsPerKey must be positive: " +
+                            maxVersionsPerKey);
+        }
+        this.maxVersionsPerKey = maxVersionsPerKey;
+    }
+
+    public void setEvictionOutcomeRecorder(
+            EvictionOutcomeRecorder evictionOutcomeRecorder) {
+        this.evictionOutcomeRecorder = evictionOutcomeRecorder;
+    }
+
+    @Override
+    public ByteBuffer captureSnapshot(long timeStep) {
+        CacheSnapshot.Writer writer = new CacheSnapshot.Writer(
+                maxInvalidationTimestamp.get(), timeStep);
+        clock.advanceTo(timeStep);
+        // least recently used first, so loading restores the LRU order
+        for (ItemNode node = dummyTail.prev; node != dummyHead;
+             node = node.prev) {
+            RawFeature feature = node.accessTracker.toRawFeature();
+            writer.writeItem(node.key, node.version, node.validUntil,
+                             node.dataSize, node.lastAccessTimeStep,
+                             node.olderCount, node.olderVersions,
+                             node.olderValidUntils, node.olderDataSizes,
+                             toWords(feature.getReadAccessesList()),
+                             toWords(feature.getWriteAccessesList()));
+        }
+        ByteBuffer snapshot = writer.finish();
+        logger.info(
+                "ConsistentCache::captureSnapshot - Captured itemCount={} bytes={}",
+                itemCount, snapshot.remaining());
+        return snapshot;
+    }
+
+    /**
+     * Loads a snapshot into this cache, which must be empty. Unless the
+     * invalidation stream is replayed from the snapshot's watermark, the
+     * items may have been overwritten while the snapshot was not kept up to
+     * date, so their open lifetimes are closed right after the watermark.
+     * Together they still serve MCC hits at the snapshot's watermark.
+     */
+    @Override
+    public CacheSnapshot.Header loadSnapshot(Path path,
+                                             boolean invalidationsReplayed)
+            throws IOException {
+        if (itemCount > 0) {
+            throw new IllegalStateException(
+                    "Snapshots can only be loaded into an empty cache");
+        }
+        CacheSnapshot.Header header;
+        try (CacheSnapshot.Reader reader = new CacheSnapshot.Reader(path)) {
+            header = reader.getHeader();
+            long watermark = header.maxInvalidationTimestamp();
+            clock.advanceTo(header.timeStep());
+            while (reader.next()) {
+                int keyId = keyDictionary.intern(reader.key);
+                ItemNode node = new ItemNode(reader.key, keyId, reader.version,
+                                             reader.validUntil,
+                                             reader.dataSize,
+                                             currentPhaseMark, 0,
+                                             trackerFactory);
+                CacheSnapshot.replayAccesses(node.accessTracker,
+                                             reader.readWords,
+                                             reader.writeWords,
+                                             header.timeStep());
+                node.lastAccessTimeStep = reader.lastAccessTimeStep;
+                for (int i = 0; i < reader.olderCount; i++) {
+                    if (maxVersionsPerKey > 1) {
+                        retainVersion(node, reader.olderVersions[i],
+                                      reader.olderValidUntils[i],
+                                      reader.olderDataSizes[i]);
+                    } else {
+                        droppedVersions.add(ItemRecord.versionedKey(
+                                reader.key, reader.olderVersions[i]));
+                    }
+                }
+                if (!invalidationsReplayed &&
+                        node.validUntil == Long.MAX_VALUE) {
+                    node.validUntil = Math.max(watermark + 1, node.version + 1);
+                }
+                if (node.validUntil != Long.MAX_VALUE) {
+                    addInvalidatedNode(node);
+                }
+
+                currentSize += node.dataSize;
+                addNode(node);
+                if (keyId >= cachedItems.length) {
+                    cachedItems = Arrays.copyOf(cachedItems,
+                                                Math.max(keyId + 1,
+                                                         cachedItems.length *
+                                                                 2));
+                }
+                cachedItems[keyId] = node;
+                evictionPolicy.onPut(keyId, node.getRetainedSize());
+                cachedKeys.add(node.key);
+                itemCount++;
+                markedItemCount++;
+            }
+            if (cachedKeys.needsRebuild(itemCount)) {
+                rebuildCachedKeys();
+            }
+            maxInvalidationTimestamp.accumulateAndGet(watermark, Math::max);
+        }
+        logger.info(
+                "ConsistentCache::loadSnapshot - Loaded itemCount={} maxInvalidationTimestamp={} from path={}",
+                itemCount, maxInvalidationTimestamp.get(), path);
+        return header;
+    }
+
+    private static long[] toWords(List<Long> words) {
+        long[] array = new long[words.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = words.get(i);
+        }
+        return array;
+    }
+
+    @Override
     public long getMaxInvalidationTimestamp() {
-        return maxInvalidationTimestamp;
+        return maxInvalidationTimestamp.get();
     }
 
+    @Override
     public void markItems(List<String> keys) {
         for (String key : keys) {
-            ItemNode node = cachedItems.getOrDefault(key, null);
+            ItemNode node = getNode(key);
             if (node != null && !node.isMarked(currentPhaseMark)) {
                 node.mark(currentPhaseMark);
                 markedItemCount++;
             }
         }
+        maybePrecomputeObsoleteItems();
     }
 
+    @Override
     public boolean isAllMarked() {
         return markedItemCount == itemCount;
     }
 
+    @Override
     public void startNewPhase() {
         currentPhaseMark = !currentPhaseMark;
         markedItemCount = 0;
@@ -278,8 +765,8 @@ public class ConsistentCache {
     @Override
     public String toString() {
         return "ConsistentCache{currentSize=%d, maxSize=%d, itemCount=%d, maxInvalidationTimestamp=%d, cachedItems=%s}".formatted(
-                currentSize, maxSize, itemCount, maxInvalidationTimestamp,
-                cachedItems);
+                currentSize, maxSize, itemCount,
+                maxInvalidationTimestamp.get(), getNodesInLruOrder());
     }
 
     @VisibleForTesting
@@ -289,21 +776,40 @@ public class ConsistentCache {
 
     @VisibleForTesting
     void put(String key, long version, int dataSize, long timeStep) {
-        if (cachedItems.containsKey(key)) {
-            ItemNode node = cachedItems.get(key);
+        int keyId = keyDictionary.getId(key);
+        ItemNode node = getNode(keyId);
+        if (node != null) {
             long oldVersion = node.version;
             long oldValidUntil = node.validUntil;
             long oldDataSize = node.dataSize;
 
+            if (version > node.version && maxVersionsPerKey > 1) {
+                // An open lifetime is only known to last past the watermark,
+                // an invalidation between it and the new version may still
+                // be on its way and would not find the replaced version.
+                long validUntil = Math.max(
+                        min(version, maxInvalidationTimestamp.get() + 1),
+                        node.version + 1);
+                retainVersion(node, node.version,
+                              min(node.validUntil, validUntil),
+                              node.dataSize);
+            } else if (version != node.version) {
+                droppedVersions.add(
+                        ItemRecord.versionedKey(key, node.version));
+            }
+
             node.version = version;
             node.validUntil = Long.MAX_VALUE;
-            node.accessTracker.recordRead(timeStep);
+            node.lastAccessTimeStep = timeStep;
+            recordRead(node, timeStep);
+            removeInvalidatedNode(node);
 
             currentSize += dataSize - node.dataSize;
             node.dataSize = dataSize;
 
             removeNode(node);
             addNode(node);
+            evictionPolicy.onPut(keyId, node.getRetainedSize());
 
             logger.info(
                     "ConsistentCache::put - Updated item with key={}: oldVersion={} newVersion={} " +
@@ -311,16 +817,33 @@ public class ConsistentCache {
                     node.key, oldVersion, node.version, oldValidUntil,
                     node.validUntil, oldDataSize, node.dataSize);
         } else {
-            ItemNode node = new ItemNode(key, version, Long.MAX_VALUE, dataSize,
-                                         currentPhaseMark, timeStep);
+            // the cache holds the id until the item is evicted
+            keyId = keyDictionary.intern(key);
+            node = new ItemNode(key, keyId, version, Long.MAX_VALUE, dataSize,
+                                currentPhaseMark, timeStep, trackerFactory);
             currentSize += dataSize;
             addNode(node);
-            cachedItems.put(key, node);
+            if (keyId >= cachedItems.length) {
+                cachedItems = Arrays.copyOf(cachedItems,
+                                            Math.max(keyId + 1,
+                                                     cachedItems.length * 2));
+            }
+            cachedItems[keyId] = node;
+            evictionPolicy.onPut(keyId, dataSize);
+            if (evictionOutcomeRecorder != null) {
+                evictionOutcomeRecorder.onRequest(key, timeStep);
+            }
 
-            node.accessTracker.recordRead(timeStep);
+            recordRead(node, timeStep);
 
             itemCount++;
             markedItemCount++;
+            maybePrecomputeObsoleteItems();
+
+            cachedKeys.add(key);
+            if (cachedKeys.needsRebuild(itemCount)) {
+                rebuildCachedKeys();
+            }
 
             logger.info(
                     "ConsistentCache::put - Added item with key={}: version={} validUntil={} dataSize={}",
@@ -332,12 +855,27 @@ public class ConsistentCache {
 
     @VisibleForTesting
     void evict(String key) {
-        if (cachedItems.containsKey(key)) {
-            ItemNode node = cachedItems.get(key);
-            currentSize -= node.dataSize;
+        ItemNode node = getNode(key);
+        if (node != null) {
+            currentSize -= node.getRetainedSize();
             removeNode(node);
-            cachedItems.remove(key);
+            removeInvalidatedNode(node);
+            evictionPolicy.onRemove(node.keyId);
+            if (evictionOutcomeRecorder != null) {
+                evictionOutcomeRecorder.onEvict(node.key, node.accessTracker,
+                                                clock.now());
+            }
+            if (node.accessTracker.isDense()) {
+                trackerArena.free(node.accessTracker.getDenseTracker());
+            }
+            cachedItems[node.keyId] = null;
+            keyDictionary.release(node.keyId);
             itemCount--;
+            cachedKeys.remove(key);
+            // an evicted item no longer takes part in the phase
+            if (node.isMarked(currentPhaseMark)) {
+                markedItemCount--;
+            }
 
             logger.info("ConsistentCache::evict - Evicted item with key={}",
                         key);
@@ -357,11 +895,13 @@ public class ConsistentCache {
 
     @VisibleForTesting
     void access(String key, long timeStep) {
-        if (cachedItems.containsKey(key)) {
-            ItemNode node = cachedItems.get(key);
+        ItemNode node = getNode(key);
+        if (node != null) {
             removeNode(node);
             addNode(node);
-            node.accessTracker.recordRead(timeStep);
+            evictionPolicy.onAccess(node.keyId);
+            node.lastAccessTimeStep = timeStep;
+            recordRead(node, timeStep);
 
             logger.info("ConsistentCache::access - Accessed item with key={}",
                         key);
@@ -373,11 +913,41 @@ public class ConsistentCache {
         logger.debug("ConsistentCache::access - Current cache info: {}", this);
     }
 
-    @VisibleForTesting
-    int getItemCount() {
+    @Override
+    public int getItemCount() {
         return itemCount;
     }
 
+    @Override
+    public int getEntryOverhead() {
+        return ENTRY_OVERHEAD;
+    }
+
+    int getMarkedItemCount() {
+        return markedItemCount;
+    }
+
+    ItemNode getNode(String key) {
+        return getNode(keyDictionary.getId(key));
+    }
+
+    ItemNode getNode(int keyId) {
+        if (keyId < 0 || keyId >= cachedItems.length) {
+            return null;
+        }
+        return cachedItems[keyId];
+    }
+
+    @VisibleForTesting
+    List<ItemNode> getNodesInLruOrder() {
+        List<ItemNode> nodes = new ArrayList<>(itemCount);
+        for (ItemNode node = dummyHead.next; node != dummyTail;
+             node = node.next) {
+            nodes.add(node);
+        }
+        return nodes;
+    }
+
     @VisibleForTesting
     ItemNode getDummyHead() {
         return dummyHead;
@@ -404,33 +974,124 @@ public class ConsistentCache {
         dummyHead.next = node;
     }
 
+    // sized for twice the current items, so it is not rebuilt again soon
+    private void rebuildCachedKeys() {
+        cachedKeys = new CountingBloomFilter(
+                Math.max(cachedKeys.capacity(), 2 * itemCount));
+        for (ItemNode node = dummyHead.next; node != dummyTail;
+             node = node.next) {
+            cachedKeys.add(node.key);
+        }
+        logger.debug(
+                "ConsistentCache::rebuildCachedKeys - Rebuilt filter for itemCount={} capacity={}",
+                itemCount, cachedKeys.capacity());
+    }
+
+    private void retainVersion(ItemNode node, long version, long validUntil,
+                               int dataSize) {
+        if (node.olderVersions == null) {
+            node.olderVersions = new long[maxVersionsPerKey - 1];
+            node.olderValidUntils = new long[maxVersionsPerKey - 1];
+            node.olderDataSizes = new int[maxVersionsPerKey - 1];
+        }
+        if (node.olderCount == node.olderVersions.length) {
+            // the oldest version makes room
+            droppedVersions.add(
+                    ItemRecord.versionedKey(node.key, node.olderVersions[0]));
+            currentSize -= node.olderDataSizes[0];
+            node.olderSize -= node.olderDataSizes[0];
+            node.olderCount--;
+            System.arraycopy(node.olderVersions, 1, node.olderVersions, 0,
+                             node.olderCount);
+            System.arraycopy(node.olderValidUntils, 1, node.olderValidUntils,
+                             0, node.olderCount);
+            System.arraycopy(node.olderDataSizes, 1, node.olderDataSizes, 0,
+                             node.olderCount);
+        }
+        node.olderVersions[node.olderCount] = version;
+        node.olderValidUntils[node.olderCount] = validUntil;
+        node.olderDataSizes[node.olderCount] = dataSize;
+        node.olderCount++;
+        node.olderSize += dataSize;
+        currentSize += dataSize;
+    }
+
+    private void addInvalidatedNode(ItemNode node) {
+        if (node.isInvalidated()) {
+            return;
+        }
+        node.invalidatedPrev = invalidatedTail.invalidatedPrev;
+        node.invalidatedNext = invalidatedTail;
+        invalidatedTail.invalidatedPrev.invalidatedNext = node;
+        invalidatedTail.invalidatedPrev = node;
+    }
+
+    private void removeInvalidatedNode(ItemNode node) {
+        if (!node.isInvalidated()) {
+            return;
+        }
+        node.invalidatedPrev.invalidatedNext = node.invalidatedNext;
+        node.invalidatedNext.invalidatedPrev = node.invalidatedPrev;
+        node.invalidatedPrev = null;
+        node.invalidatedNext = null;
+    }
+
+    @Override
+    public void setObsoleteItemsPredictor(
+            ObsoleteItemsPredictor obsoleteItemsPredictor) {
+        this.obsoleteItemsPredictor = obsoleteItemsPredictor;
+    }
+
+    @VisibleForTesting
+    List<String> getInvalidatedItems() {
+        List<String> keys = new ArrayList<>();
+        for (ItemNode node = invalidatedHead.invalidatedNext;
+             node != invalidatedTail; node = node.invalidatedNext) {
+            keys.add(node.key);
+        }
+        return keys;
+    }
+
     @VisibleForTesting
     static class ItemNode {
         @VisibleForTesting
         ItemNode next;
         @VisibleForTesting
         ItemNode prev;
+        private ItemNode invalidatedNext;
+        private ItemNode invalidatedPrev;
+        private long lastAccessTimeStep;
         private long validUntil = Long.MAX_VALUE;
         private String key;
+        private int keyId;
         private long version;
         private int dataSize;
         private boolean mark; // to divide the run into phases
+        // replaced versions, oldest first, with their closed lifetimes
+        private long[] olderVersions;
+        private long[] olderValidUntils;
+        private int[] olderDataSizes;
+        private int olderCount;
+        private int olderSize;
 
-        private AccessTracker accessTracker;
+        private AdaptiveAccessTracker<TrackerArena.Slot> accessTracker;
 
         public ItemNode() {
         }
 
-        public ItemNode(String key, long version, long validUntil, int dataSize,
-                        boolean mark, long timeStep) {
+        public ItemNode(String key, int keyId, long version, long validUntil,
+                        int dataSize, boolean mark, long timeStep,
+                        AdaptiveAccessTracker.Factory<TrackerArena.Slot>
+                                trackerFactory) {
             this.key = key;
+            this.keyId = keyId;
             this.version = version;
             this.validUntil = validUntil;
             this.dataSize = dataSize;
             this.mark = mark;
+            this.lastAccessTimeStep = timeStep;
 
-            accessTracker = new VariableSizeAccessTracker(256);
-            accessTracker.syncTimeStep(timeStep);
+            accessTracker = trackerFactory.create(timeStep);
         }
 
         @Override
@@ -486,6 +1147,36 @@ public class ConsistentCache {
             this.dataSize = dataSize;
         }
 
+        int getRetainedSize() {
+            return dataSize + olderSize;
+        }
+
+        // lifetimes in version order, the current version is the last one
+        long getLifeStart(int index) {
+            return index < olderCount ? olderVersions[index] : version;
+        }
+
+        long getLifeEnd(int index) {
+            return index < olderCount ? olderValidUntils[index] : validUntil;
+        }
+
+        long getVersionAt(long snapshot) {
+            for (int i = olderCount; i >= 0; i--) {
+                if (getLifeStart(i) <= snapshot && snapshot < getLifeEnd(i)) {
+                    return getLifeStart(i);
+                }
+            }
+            return -1;
+        }
+
+        AccessTracker getAccessTracker() {
+            return accessTracker;
+        }
+
+        boolean isInvalidated() {
+            return invalidatedPrev != null;
+        }
+
         public void mark(boolean refMark) {
             this.mark = refMark;
         }
@@ -0,0 +1,213 @@
+package org.mccproxy.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Appends labelled eviction samples to rotating binary files on a writer
+ * thread. Every file starts with a header
+ * <pre>
+ *   int magic, int format, int horizonSteps
+ * </pre>
+ * followed by one record per sample:
+ * <pre>
+ *   int stepsToRequest, int readWords, long[readWords],
+ *   int writeWords, long[writeWords]
+ * </pre>
+ * stepsToRequest is the number of steps from the eviction to the next
+ * request of the key, -1 if it was not requested within the horizon. The
+ * access words are the tracker bitmaps at eviction, laid out as in
+ * {@link CacheSnapshot}. A file is closed once it reaches maxFileBytes, and
+ * only the newest maxFiles files are kept.
+ * <p>
+ * Samples are dropped rather than waited for when the writer falls behind.
+ */
+public class EvictionOutcomeLog implements Closeable {
+    private static final Logger logger =
+            LoggerFactory.getLogger(EvictionOutcomeLog.class.getName());
+    static final int MAGIC = 0x4D434345; // "MCCE"
+    static final int FORMAT = 1;
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final String SUFFIX = ".bin";
+
+    record Sample(int stepsToRequest, long[] readWords, long[] writeWords) {
+    }
+
+    private final Path directory;
+    private final String prefix;
+    private final int horizonSteps;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final BlockingQueue<Sample> queue =
+            new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean isRunning = true;
+
+    // writer thread only
+    private final ArrayDeque<Path> files = new ArrayDeque<>();
+    private long nextFileIndex;
+    private DataOutputStream out;
+    private long fileBytes;
+
+    public EvictionOutcomeLog(Path directory, String prefix, int horizonSteps,
+                              long maxFileBytes, int maxFiles)
+            throws IOException {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.horizonSteps = horizonSteps;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+        Files.createDirectories(directory);
+        // continue after the files of an earlier run
+        for (Path file : existingFiles()) {
+            files.add(file);
+            nextFileIndex = Math.max(nextFileIndex, indexOf(file) + 1);
+        }
+        this.writer = new Thread(this::run, "eviction-outcome-log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues a sample without waiting, it is dropped if the queue is full.
+     */
+    void append(Sample sample) {
+        if (!queue.offer(sample)) {
+            droppedCount.incrementAndGet();
+        }
+    }
+
+    int getHorizonSteps() {
+        return horizonSteps;
+    }
+
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Writes the queued samples and closes the current file.
+     */
+    @Override
+    public void close() {
+        isRunning = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<Sample> batch = new ArrayList<>();
+        try {
+            while (isRunning || !queue.isEmpty()) {
+                Sample sample = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (sample == null) {
+                    continue;
+                }
+                batch.add(sample);
+                queue.drainTo(batch);
+                for (Sample s : batch) {
+                    write(s);
+                }
+                batch.clear();
+                out.flush();
+            }
+        } catch (IOException e) {
+            logger.error(
+                    "EvictionOutcomeLog::run - Failed to write to {}, no more samples are logged",
+                    directory, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeFile();
+        }
+        logger.info("EvictionOutcomeLog::run - Stopped with {} dropped samples",
+                    droppedCount.get());
+    }
+
+    private void write(Sample sample) throws IOException {
+        if (out == null || fileBytes >= maxFileBytes) {
+            rotate();
+        }
+        out.writeInt(sample.stepsToRequest());
+        out.writeInt(sample.readWords().length);
+        for (long word : sample.readWords()) {
+            out.writeLong(word);
+        }
+        out.writeInt(sample.writeWords().length);
+        for (long word : sample.writeWords()) {
+            out.writeLong(word);
+        }
+        fileBytes += 12 + 8L * (sample.readWords().length +
+                sample.writeWords().length);
+    }
+
+    private void rotate() throws IOException {
+        closeFile();
+        Path file = directory.resolve(
+                prefix + "-" + nextFileIndex++ + SUFFIX);
+        out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file)));
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT);
+        out.writeInt(horizonSteps);
+        fileBytes = 12;
+        files.add(file);
+        while (files.size() > maxFiles) {
+            Files.deleteIfExists(files.poll());
+        }
+    }
+
+    private void closeFile() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            logger.warn("EvictionOutcomeLog::closeFile - Failed to close {}",
+                        files.peekLast(), e);
+        }
+        out = null;
+    }
+
+    private List<Path> existingFiles() throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.filter(path -> indexOf(path) >= 0).sorted(
+                    (a, b) -> Long.compare(indexOf(a), indexOf(b))).toList();
+        }
+    }
+
+    // the index in a file name of this log, -1 for other files
+    private long indexOf(Path path) {
+        String name = path.getFileName().toString();
+        if (!name.startsWith(prefix + "-") || !name.endsWith(SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(prefix.length() + 1,
+                                                 name.length() -
+                                                         SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
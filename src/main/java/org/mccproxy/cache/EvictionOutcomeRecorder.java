@@ -0,0 +1,98 @@
+package org.mccproxy.cache;
+
+import org.mccproxy.ml.RawFeature;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Samples one in sampleEvery evictions and labels each sample by whether its
+ * key is requested again within the log's horizon, which makes the training
+ * data of the obsolete item model. The access bitmaps are taken at eviction;
+ * a sample is handed to the {@link EvictionOutcomeLog} once its key is
+ * requested or its horizon has passed. Not thread-safe, it is driven by the
+ * cache that owns it.
+ */
+public class EvictionOutcomeRecorder {
+    private static class PendingSample {
+        final String key;
+        final long evictedTimeStep;
+        final long[] readWords;
+        final long[] writeWords;
+        boolean requested;
+
+        PendingSample(String key, long evictedTimeStep, RawFeature rawFeature) {
+            this.key = key;
+            this.evictedTimeStep = evictedTimeStep;
+            this.readWords = new long[rawFeature.getReadAccessesCount()];
+            for (int i = 0; i < readWords.length; i++) {
+                readWords[i] = rawFeature.getReadAccesses(i);
+            }
+            this.writeWords = new long[rawFeature.getWriteAccessesCount()];
+            for (int i = 0; i < writeWords.length; i++) {
+                writeWords[i] = rawFeature.getWriteAccesses(i);
+            }
+        }
+    }
+
+    private final EvictionOutcomeLog log;
+    private final int sampleEvery;
+    private final int horizonSteps;
+    private int evictionsToNextSample;
+    // in eviction order, requested samples stay until they reach the head
+    private final ArrayDeque<PendingSample> pending = new ArrayDeque<>();
+    private final Map<String, PendingSample> pendingByKey = new HashMap<>();
+
+    public EvictionOutcomeRecorder(EvictionOutcomeLog log, int sampleEvery) {
+        this.log = log;
+        this.sampleEvery = sampleEvery;
+        this.horizonSteps = log.getHorizonSteps();
+        this.evictionsToNextSample = sampleEvery;
+    }
+
+    void onEvict(String key, AccessTracker accessTracker, long timeStep) {
+        expire(timeStep);
+        if (--evictionsToNextSample > 0) {
+            return;
+        }
+        evictionsToNextSample = sampleEvery;
+        PendingSample sample = new PendingSample(key, timeStep,
+                                                 accessTracker.toRawFeature());
+        pending.add(sample);
+        pendingByKey.put(key, sample);
+    }
+
+    void onRequest(String key, long timeStep) {
+        if (pendingByKey.isEmpty()) {
+            return;
+        }
+        expire(timeStep);
+        PendingSample sample = pendingByKey.remove(key);
+        if (sample != null) {
+            sample.requested = true;
+            log.append(new EvictionOutcomeLog.Sample(
+                    (int) (timeStep - sample.evictedTimeStep),
+                    sample.readWords, sample.writeWords));
+        }
+    }
+
+    int getPendingCount() {
+        return pendingByKey.size();
+    }
+
+    // labels the samples whose horizon has passed as not requested
+    private void expire(long timeStep) {
+        while (!pending.isEmpty() &&
+                (pending.peek().requested ||
+                        pending.peek().evictedTimeStep + horizonSteps <
+                                timeStep)) {
+            PendingSample sample = pending.poll();
+            if (!sample.requested) {
+                pendingByKey.remove(sample.key);
+                log.append(new EvictionOutcomeLog.Sample(
+                        -1, sample.readWords, sample.writeWords));
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.mccproxy.cache;
+
+import org.mccproxy.utils.IntHashSet;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Decides which cached items {@link MCCCache#getLruItems} gives up when the
+ * obsolete items do not free enough space. The cache reports every change of
+ * its content by key id, and evicts the selected victims itself afterward.
+ * <p>
+ * Implementations are not thread-safe; each cache, or cache segment, owns
+ * its own instance and calls it under its own synchronization.
+ */
+public interface EvictionPolicy {
+
+    /**
+     * Creates a policy for key ids that are never released.
+     *
+     * @param name one of LRU, W_TINYLFU or S3_FIFO
+     */
+    static EvictionPolicy create(String name) {
+        return create(name, null);
+    }
+
+    /**
+     * @param name          one of LRU, W_TINYLFU or S3_FIFO
+     * @param keyDictionary the dictionary of the cache's key ids, a policy
+     *                      that remembers evicted keys holds their ids in it
+     *                      or counts them by key
+     */
+    static EvictionPolicy create(String name, KeyDictionary keyDictionary) {
+        return switch (name) {
+            case "LRU" -> new SizeClassLruIndex();
+            case "W_TINYLFU" -> new WTinyLfuPolicy(keyDictionary);
+            case "S3_FIFO" -> new S3FifoPolicy(keyDictionary);
+            default -> throw new IllegalArgumentException(
+                    "Unsupported eviction policy: " + name);
+        };
+    }
+
+    /**
+     * Called when an item is inserted into the cache or replaced by a newer
+     * version, possibly with a different size.
+     */
+    void onPut(int keyId, int dataSize);
+
+    /**
+     * Called when a cached item is read.
+     */
+    void onAccess(int keyId);
+
+    /**
+     * Called when an item leaves the cache.
+     */
+    void onRemove(int keyId);
+
+    /**
+     * Passes victims outside {@code itemsToKeep} to {@code victims} until
+     * their sizes add up to {@code neededSize} or no item is left. A policy
+     * may reorder its own bookkeeping while choosing, but the victims stay
+     * tracked until {@link #onRemove} is called for them.
+     *
+     * @return the total size of the victims
+     */
+    long selectVictims(IntHashSet itemsToKeep, int neededSize,
+                       IntConsumer victims);
+}
@@ -0,0 +1,89 @@
+package org.mccproxy.cache;
+
+/**
+ * A count-min sketch of 4-bit counters estimating how often each key hash has
+ * been seen recently. Every long holds 16 counters, and each hash has one
+ * counter in each of four rows. When the number of recorded events reaches
+ * ten times the capacity, all counters are halved so old popularity fades.
+ * Used by {@link WTinyLfuPolicy} to compare admission candidates. Not
+ * thread-safe.
+ */
+class FrequencySketch {
+    private static final int DEPTH = 4;
+    private static final long RESET_MASK = 0x7777_7777_7777_7777L;
+    private static final int[] SEEDS =
+            {0x97CB3127, 0xB3D9A3D1, 0x8E5F0C0B, 0xC2B2AE35};
+
+    private long[] table;
+    private int rowMask; // counters per row - 1
+    private int sampleSize;
+    private int additions;
+
+    FrequencySketch(int expectedItems) {
+        ensureCapacity(expectedItems);
+    }
+
+    /**
+     * Grows the sketch for the given number of items. Growing drops the
+     * collected counts, so it is only done when the count doubled.
+     */
+    void ensureCapacity(int expectedItems) {
+        int counters = Integer.highestOneBit(Math.max(expectedItems, 64) - 1)
+                << 1;
+        if (table != null && counters <= rowMask + 1) {
+            return;
+        }
+        // a row of counters takes counters / 16 longs
+        table = new long[Math.max(DEPTH * counters / 16, DEPTH)];
+        rowMask = counters - 1;
+        sampleSize = 10 * counters;
+        additions = 0;
+    }
+
+    int frequency(int hash) {
+        int frequency = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int counter = indexOf(hash, row);
+            frequency = Math.min(frequency, (int) (
+                    (table[wordOf(row, counter)] >>> shiftOf(counter)) & 0xF));
+        }
+        return frequency;
+    }
+
+    void increment(int hash) {
+        boolean incremented = false;
+        for (int row = 0; row < DEPTH; row++) {
+            int counter = indexOf(hash, row);
+            int word = wordOf(row, counter);
+            int shift = shiftOf(counter);
+            if (((table[word] >>> shift) & 0xF) != 0xF) {
+                table[word] += 1L << shift;
+                incremented = true;
+            }
+        }
+        if (incremented && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+
+    private int indexOf(int hash, int row) {
+        int h = hash * SEEDS[row];
+        h ^= h >>> 16;
+        return h & rowMask;
+    }
+
+    private int wordOf(int row, int counter) {
+        return row * ((rowMask + 1) >>> 4) + (counter >>> 4);
+    }
+
+    private static int shiftOf(int counter) {
+        return (counter & 15) << 2;
+    }
+}
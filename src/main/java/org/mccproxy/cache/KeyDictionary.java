@@ -0,0 +1,130 @@
+package org.mccproxy.cache;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns item keys into dense int ids. The proxy interns the keys of a
+ * request once, when it arrives, and from there on cache metadata, eviction
+ * sets and consistency checks work on the ids; the strings are only needed
+ * again to talk to Redis and Postgres.
+ * <p>
+ * Every {@link #intern} takes a reference on the id that is given back with
+ * {@link #release}: a request holds its keys until it is answered and a
+ * cache holds the keys of its items until they are evicted. When the last
+ * reference goes, the key is dropped and its id is handed out again, so the
+ * dictionary is bounded by the keys in the cache and in flight rather than
+ * by every key ever requested. Interning is thread-safe.
+ */
+public class KeyDictionary {
+    public static final int UNKNOWN_ID = -1;
+
+    private static class Entry {
+        final int id;
+        // only changed inside a compute on the entry's key
+        int refs;
+
+        Entry(int id) {
+            this.id = id;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> ids =
+            new ConcurrentHashMap<>();
+    // written under the lock, the reference is republished when it grows
+    private volatile String[] keys = new String[1024];
+    private int size;
+    // released ids, taken again before the array grows
+    private int[] freeIds = new int[64];
+    private int freeCount;
+
+    public int intern(String key) {
+        return ids.compute(key, (k, entry) -> {
+            if (entry == null) {
+                entry = new Entry(allocateId(k));
+            }
+            entry.refs++;
+            return entry;
+        }).id;
+    }
+
+    public int[] intern(List<String> keys) {
+        int[] keyIds = new int[keys.size()];
+        for (int i = 0; i < keyIds.length; i++) {
+            keyIds[i] = intern(keys.get(i));
+        }
+        return keyIds;
+    }
+
+    /**
+     * Takes another reference on an id the caller already holds.
+     */
+    public void retain(int id) {
+        ids.computeIfPresent(keys[id], (k, entry) -> {
+            entry.refs++;
+            return entry;
+        });
+    }
+
+    /**
+     * Gives back a reference taken by {@link #intern} or {@link #retain}. The
+     * id must not be used by the caller afterwards.
+     */
+    public void release(int id) {
+        ids.computeIfPresent(keys[id], (k, entry) -> {
+            if (--entry.refs > 0) {
+                return entry;
+            }
+            freeId(entry.id);
+            return null;
+        });
+    }
+
+    public void release(int[] ids) {
+        for (int id : ids) {
+            release(id);
+        }
+    }
+
+    /**
+     * @return the id of the key, or {@link #UNKNOWN_ID} if nothing holds it
+     */
+    public int getId(String key) {
+        Entry entry = ids.get(key);
+        return entry == null ? UNKNOWN_ID : entry.id;
+    }
+
+    public String getKey(int id) {
+        return keys[id];
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    // called inside the compute of the key, never the other way around
+    private synchronized int allocateId(String key) {
+        int id;
+        if (freeCount > 0) {
+            id = freeIds[--freeCount];
+        } else {
+            id = size++;
+        }
+        String[] current = keys;
+        if (id == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[id] = key;
+        keys = current;
+        return id;
+    }
+
+    private synchronized void freeId(int id) {
+        keys[id] = null;
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeIds.length * 2);
+        }
+        freeIds[freeCount++] = id;
+    }
+}
@@ -0,0 +1,172 @@
+package org.mccproxy.cache;
+
+import java.util.Arrays;
+
+/**
+ * A fixed number of intrusive doubly linked lists over dense key ids. Every
+ * key id is in at most one of the lists, so the links live in flat arrays
+ * indexed by key id, and each list keeps its item count and total byte size.
+ * The building block of the eviction policies. Not thread-safe.
+ */
+class KeyIdLists {
+    static final int NIL = -1;
+    static final int ABSENT = -1;
+
+    private int[] prev;
+    private int[] next;
+    private int[] sizes;
+    private byte[] lists;
+
+    private final int[] heads;
+    private final int[] tails;
+    private final int[] counts;
+    private final long[] bytes;
+
+    KeyIdLists(int numLists, int initialCapacity) {
+        if (numLists > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    "Too many lists: " + numLists);
+        }
+        int capacity = Math.max(initialCapacity, 16);
+        prev = new int[capacity];
+        next = new int[capacity];
+        sizes = new int[capacity];
+        lists = new byte[capacity];
+        Arrays.fill(lists, (byte) ABSENT);
+        heads = new int[numLists];
+        tails = new int[numLists];
+        counts = new int[numLists];
+        bytes = new long[numLists];
+        Arrays.fill(heads, NIL);
+        Arrays.fill(tails, NIL);
+    }
+
+    boolean contains(int keyId) {
+        return keyId >= 0 && keyId < lists.length && lists[keyId] != ABSENT;
+    }
+
+    /**
+     * @return the list the key id is in, or {@link #ABSENT}
+     */
+    int listOf(int keyId) {
+        return contains(keyId) ? lists[keyId] : ABSENT;
+    }
+
+    int sizeOf(int keyId) {
+        return sizes[keyId];
+    }
+
+    int head(int list) {
+        return heads[list];
+    }
+
+    int tail(int list) {
+        return tails[list];
+    }
+
+    int prev(int keyId) {
+        return prev[keyId];
+    }
+
+    int next(int keyId) {
+        return next[keyId];
+    }
+
+    int count(int list) {
+        return counts[list];
+    }
+
+    long bytes(int list) {
+        return bytes[list];
+    }
+
+    void linkFirst(int list, int keyId, int size) {
+        ensureCapacity(keyId);
+        assert !contains(keyId);
+        lists[keyId] = (byte) list;
+        sizes[keyId] = size;
+        prev[keyId] = NIL;
+        next[keyId] = heads[list];
+        if (heads[list] != NIL) {
+            prev[heads[list]] = keyId;
+        } else {
+            tails[list] = keyId;
+        }
+        heads[list] = keyId;
+        counts[list]++;
+        bytes[list] += size;
+    }
+
+    void linkLast(int list, int keyId, int size) {
+        ensureCapacity(keyId);
+        assert !contains(keyId);
+        lists[keyId] = (byte) list;
+        sizes[keyId] = size;
+        next[keyId] = NIL;
+        prev[keyId] = tails[list];
+        if (tails[list] != NIL) {
+            next[tails[list]] = keyId;
+        } else {
+            heads[list] = keyId;
+        }
+        tails[list] = keyId;
+        counts[list]++;
+        bytes[list] += size;
+    }
+
+    /**
+     * Removes the key id from its list.
+     *
+     * @return the list it was in, or {@link #ABSENT}
+     */
+    int unlink(int keyId) {
+        if (!contains(keyId)) {
+            return ABSENT;
+        }
+        int list = lists[keyId];
+        if (prev[keyId] != NIL) {
+            next[prev[keyId]] = next[keyId];
+        } else {
+            heads[list] = next[keyId];
+        }
+        if (next[keyId] != NIL) {
+            prev[next[keyId]] = prev[keyId];
+        } else {
+            tails[list] = prev[keyId];
+        }
+        lists[keyId] = (byte) ABSENT;
+        counts[list]--;
+        bytes[list] -= sizes[keyId];
+        return list;
+    }
+
+    /**
+     * Changes the size of the key id without moving it.
+     */
+    void resize(int keyId, int size) {
+        bytes[lists[keyId]] += size - sizes[keyId];
+        sizes[keyId] = size;
+    }
+
+    /**
+     * Moves the key id, with its size, to the head of the given list.
+     */
+    void moveToFirst(int list, int keyId) {
+        int size = sizes[keyId];
+        unlink(keyId);
+        linkFirst(list, keyId, size);
+    }
+
+    private void ensureCapacity(int keyId) {
+        if (keyId < lists.length) {
+            return;
+        }
+        int capacity = Math.max(keyId + 1, lists.length * 2);
+        prev = Arrays.copyOf(prev, capacity);
+        next = Arrays.copyOf(next, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        int oldCapacity = lists.length;
+        lists = Arrays.copyOf(lists, capacity);
+        Arrays.fill(lists, oldCapacity, capacity, (byte) ABSENT);
+    }
+}
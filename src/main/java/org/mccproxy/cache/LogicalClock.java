@@ -0,0 +1,24 @@
+package org.mccproxy.cache;
+
+/**
+ * The time step shared by the access trackers of a cache. Trackers keep the
+ * absolute time steps of their accesses and are only normalized against the
+ * clock when their features are read, so advancing the clock costs nothing
+ * for items that are not accessed.
+ */
+public class LogicalClock {
+    private volatile long timeStep;
+
+    public long now() {
+        return timeStep;
+    }
+
+    /**
+     * Moves the clock forward, an older time step leaves it unchanged.
+     */
+    public void advanceTo(long timeStep) {
+        if (timeStep > this.timeStep) {
+            this.timeStep = timeStep;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package org.mccproxy.cache;
+
+import org.mccproxy.ml.ObsoleteItemsPredictor;
+import org.mccproxy.proxy.ItemRecord;
+import org.mccproxy.utils.IntHashSet;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The cache metadata operations the proxy needs to serve monotonic consistent
+ * reads. {@link ConsistentCache} is the single-threaded reference
+ * implementation; other implementations trade memory layout or concurrency.
+ */
+public interface MCCCache {
+    /**
+     * @return the dictionary that maps keys to the ids accepted by the
+     * id-based operations
+     */
+    KeyDictionary getKeyDictionary();
+
+    int getCacheSize();
+
+    int getCacheSizeLimit();
+
+    int getItemCount();
+
+    /**
+     * @return an estimate of the heap the cache spends on every item, for a
+     * 64-bit JVM with compressed references, including the key dictionary
+     * entry and a 32-character key
+     */
+    int getEntryOverhead();
+
+    long getItemVersion(String key);
+
+    long getItemValidUntil(String key);
+
+    int getDataSize(List<String> keys);
+
+    void invalidate(String key, long newVersion, long timeStep);
+
+    default void invalidate(List<String> keys, long newVersion,
+                            long timeStep) {
+        for (String key : keys) {
+            invalidate(key, newVersion, timeStep);
+        }
+    }
+
+    /**
+     * Ends the open lifetime of the cached item at {@code newVersion} if the
+     * item is older, without raising the watermark. Used for an invalidation
+     * that was already applied while the item was being fetched, so it found
+     * the key absent or at an older version.
+     */
+    void closeLifetime(String key, long newVersion);
+
+    List<String> getObsoleteItems(IntHashSet itemsToKeep, long timeStep);
+
+    /**
+     * Sets the predictor that getObsoleteItems asks about the candidates.
+     */
+    void setObsoleteItemsPredictor(
+            ObsoleteItemsPredictor obsoleteItemsPredictor);
+
+    /**
+     * Limits the items getObsoleteItems asks the predictor about to the
+     * invalidated ones and to those not read for at least
+     * {@code idleTimeSteps} steps. An item that has not been read for a whole
+     * access tracker window has an empty read history, so a window's worth
+     * of steps skips the items that are still being read; 0, the default,
+     * asks about every item.
+     */
+    void setObsoleteIdleTimeSteps(int idleTimeSteps);
+
+    default List<String> getObsoleteItems(Set<String> itemsToKeep,
+                                          long timeStep) {
+        return getObsoleteItems(toKeyIds(itemsToKeep), timeStep);
+    }
+
+    List<String> getLruItems(IntHashSet itemsToKeep, int neededSize);
+
+    default List<String> getLruItems(Set<String> itemsToKeep,
+                                     int neededSize) {
+        return getLruItems(toKeyIds(itemsToKeep), neededSize);
+    }
+
+    boolean isMCCHit(List<String> keys);
+
+    /**
+     * Classifies every key as hit, missing or outdated and intersects their
+     * lifetimes in a single pass, writing into the caller-owned buffer.
+     */
+    void lookup(List<String> keys, MCCLookupResult result);
+
+    /**
+     * Same as {@link #lookup(List, MCCLookupResult)} for keys that were
+     * already interned with {@link #getKeyDictionary()}.
+     */
+    void lookup(int[] keyIds, MCCLookupResult result);
+
+    ConsistentCache.MCCHitResult makeMCCHit(List<String> keys);
+
+    void postCacheUpdate(List<String> hitItems, List<String> evictedItems,
+                         List<ItemRecord> newItems, long timeStep);
+
+    /**
+     * Appends the versioned keys of every version of the item that is kept in
+     * the cache, so they can be deleted together with the item.
+     */
+    default void collectVersionedKeys(String key, List<String> out) {
+        long version = getItemVersion(key);
+        if (version != -1) {
+            out.add(ItemRecord.versionedKey(key, version));
+        }
+    }
+
+    /**
+     * Moves the versioned keys of the versions that were replaced or dropped
+     * since the last call to {@code out}; their values can be deleted.
+     */
+    void drainDroppedVersions(List<String> out);
+
+    long getMaxInvalidationTimestamp();
+
+    /**
+     * @return whether invalidations may be applied on one thread while reads
+     * use the cache on another
+     */
+    default boolean isThreadSafe() {
+        return false;
+    }
+
+    void markItems(List<String> keys);
+
+    boolean isAllMarked();
+
+    void startNewPhase();
+
+    private IntHashSet toKeyIds(Set<String> keys) {
+        IntHashSet keyIds = new IntHashSet(keys.size());
+        for (String key : keys) {
+            int keyId = getKeyDictionary().getId(key);
+            // keys that were never interned cannot be cached either
+            if (keyId != KeyDictionary.UNKNOWN_ID) {
+                keyIds.add(keyId);
+            }
+        }
+        return keyIds;
+    }
+}
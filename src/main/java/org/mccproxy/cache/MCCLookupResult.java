@@ -0,0 +1,192 @@
+package org.mccproxy.cache;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A reusable buffer filled by {@link MCCCache#lookup}. It holds the state of
+ * every requested key, in request order, together with the intersection of
+ * their lifetimes, so a single pass over the cache answers both
+ * {@link MCCCache#isMCCHit} and {@link MCCCache#makeMCCHit}. The buffer only
+ * grows, so once it has seen the largest read set, lookups allocate nothing.
+ * It is not thread-safe; each caller thread owns its own instance.
+ * <p>
+ * A cache that keeps older versions may serve the read set at an earlier
+ * snapshot; {@link #getVersion} then tells which version of each key to
+ * read. The snapshot floor survives resets: it is the newest version the
+ * owner has returned so far, and no snapshot below it is chosen, so reads
+ * stay monotonic.
+ */
+public class MCCLookupResult {
+    public static final byte HIT = 0;
+    public static final byte MISSING = 1;
+    public static final byte OUTDATED = 2;
+
+    private byte[] states = new byte[16];
+    private long[] versions = new long[16];
+    private int size;
+    private int hitCount;
+    private int missingCount;
+    private int outdatedCount;
+    // true while every item seen so far is cached, covered by the invalidation
+    // stream and overlaps the lifetime of all the others
+    private boolean mccHit;
+    private long lifeStartMax;
+    private long lifeEndMin;
+    private long maxInvalidationTimestamp;
+    private long snapshot;
+    private long snapshotFloor = Long.MIN_VALUE;
+
+    void reset(int numKeys, long maxInvalidationTimestamp) {
+        if (states.length < numKeys) {
+            states = new byte[Math.max(numKeys, states.length * 2)];
+            versions = new long[states.length];
+        }
+        size = numKeys;
+        hitCount = 0;
+        missingCount = 0;
+        outdatedCount = 0;
+        mccHit = true;
+        lifeStartMax = Long.MIN_VALUE;
+        lifeEndMin = Long.MAX_VALUE;
+        this.maxInvalidationTimestamp = maxInvalidationTimestamp;
+        snapshot = Long.MIN_VALUE;
+    }
+
+    void setMissing(int index) {
+        states[index] = MISSING;
+        missingCount++;
+        mccHit = false;
+    }
+
+    void setCached(int index, long version, long validUntil) {
+        versions[index] = version;
+        if (version > maxInvalidationTimestamp ||
+                validUntil != Long.MAX_VALUE) {
+            states[index] = OUTDATED;
+            outdatedCount++;
+        } else {
+            states[index] = HIT;
+            hitCount++;
+        }
+
+        // invalidation outdated, there can be updates after the invalidation
+        if (version > maxInvalidationTimestamp) {
+            mccHit = false;
+        }
+        lifeStartMax = Math.max(version, lifeStartMax);
+        lifeEndMin = Math.min(validUntil, lifeEndMin);
+        if (lifeStartMax >= lifeEndMin) {
+            mccHit = false;
+        }
+    }
+
+    /**
+     * Turns the result into an MCC hit at the given snapshot, after the
+     * version of every key that is valid at it was set with
+     * {@link #setVersion}.
+     */
+    void setSnapshotHit(long snapshot) {
+        for (int i = 0; i < size; i++) {
+            states[i] = HIT;
+        }
+        hitCount = size;
+        missingCount = 0;
+        outdatedCount = 0;
+        mccHit = true;
+        this.snapshot = snapshot;
+    }
+
+    void setVersion(int index, long version) {
+        versions[index] = version;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte getState(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return states[index];
+    }
+
+    /**
+     * @return the cached version of a key that is not missing, or the
+     * version to serve once {@link #isMCCHit()}
+     */
+    public long getVersion(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return versions[index];
+    }
+
+    /**
+     * @return the snapshot an MCC hit on older versions was served at, or
+     * {@code Long.MIN_VALUE} if the current versions were used
+     */
+    public long getSnapshot() {
+        return snapshot;
+    }
+
+    public long getSnapshotFloor() {
+        return snapshotFloor;
+    }
+
+    public void raiseSnapshotFloor(long version) {
+        snapshotFloor = Math.max(snapshotFloor, version);
+    }
+
+    public boolean isMCCHit() {
+        return mccHit;
+    }
+
+    public int getHitCount() {
+        return hitCount;
+    }
+
+    public int getMissingCount() {
+        return missingCount;
+    }
+
+    public int getOutdatedCount() {
+        return outdatedCount;
+    }
+
+    public long getLifeStartMax() {
+        return lifeStartMax;
+    }
+
+    public long getLifeEndMin() {
+        return lifeEndMin;
+    }
+
+    /**
+     * @return the invalidation watermark the states were computed against
+     */
+    public long getMaxInvalidationTimestamp() {
+        return maxInvalidationTimestamp;
+    }
+
+    /**
+     * Appends the keys in the given state to {@code out}, in request order.
+     *
+     * @param keys the keys that were passed to the lookup
+     */
+    public void collect(List<String> keys, byte state, List<String> out) {
+        for (int i = 0; i < size; i++) {
+            if (states[i] == state) {
+                out.add(keys.get(i));
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MCCLookupResult{mccHit=%b, hitCount=%d, missingCount=%d, outdatedCount=%d, states=%s}".formatted(
+                mccHit, hitCount, missingCount, outdatedCount,
+                Arrays.toString(Arrays.copyOf(states, size)));
+    }
+}
@@ -0,0 +1,113 @@
+package org.mccproxy.cache;
+
+import org.mccproxy.ml.ObsoleteItemsPredictor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Groups the obsolete item candidates into batches for the predictor and
+ * keeps up to maxInFlight batches at the predictor at once, so a remote
+ * predictor scores several batches concurrently. The verdicts are handed
+ * over in batch order on the thread that adds the candidates. A batch that
+ * fails or is cancelled is kept, like the items a predictor does not answer
+ * for.
+ */
+class PredictionBatcher {
+    private static final Logger logger =
+            LoggerFactory.getLogger(PredictionBatcher.class.getName());
+
+    @FunctionalInterface
+    interface Verdicts {
+        void accept(int keyId, boolean isObsolete);
+    }
+
+    private record PendingBatch(int[] keyIds,
+                                CompletableFuture<List<Boolean>> verdicts) {
+    }
+
+    private final ObsoleteItemsPredictor predictor;
+    private final int batchSize;
+    private final int maxInFlight;
+    private final Verdicts verdicts;
+    private final int[] keyIds;
+    private final List<AccessTracker> trackers;
+    private int size;
+    private final ArrayDeque<PendingBatch> inFlight = new ArrayDeque<>();
+
+    PredictionBatcher(ObsoleteItemsPredictor predictor, int batchSize,
+                      int maxInFlight, Verdicts verdicts) {
+        this.predictor = predictor;
+        this.batchSize = batchSize;
+        this.maxInFlight = maxInFlight;
+        this.verdicts = verdicts;
+        this.keyIds = new int[batchSize];
+        this.trackers = new ArrayList<>(batchSize);
+    }
+
+    void add(int keyId, AccessTracker tracker) {
+        keyIds[size++] = keyId;
+        trackers.add(tracker);
+        if (size == batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends the partial batch without waiting for any verdicts.
+     */
+    void flush() {
+        if (size == 0) {
+            return;
+        }
+        if (inFlight.size() == maxInFlight) {
+            complete(inFlight.poll());
+        }
+        // the predictor reads the features before it returns, the trackers
+        // may change while the batch is in flight
+        inFlight.add(new PendingBatch(
+                Arrays.copyOf(keyIds, size),
+                predictor.predictObsoleteItemsAsync(List.copyOf(trackers))));
+        size = 0;
+        trackers.clear();
+    }
+
+    /**
+     * Sends the partial batch and hands over the verdicts of every batch.
+     */
+    void finish() {
+        flush();
+        while (!inFlight.isEmpty()) {
+            complete(inFlight.poll());
+        }
+    }
+
+    private void complete(PendingBatch batch) {
+        List<Boolean> isObsolete;
+        try {
+            isObsolete = batch.verdicts().join();
+        } catch (CompletionException e) {
+            logger.warn(
+                    "PredictionBatcher::complete - Prediction of {} items failed, they are kept",
+                    batch.keyIds().length, e.getCause());
+            return;
+        } catch (CancellationException e) {
+            logger.warn(
+                    "PredictionBatcher::complete - Prediction of {} items was cancelled, they are kept",
+                    batch.keyIds().length);
+            return;
+        }
+        // a predictor may answer for fewer items, the rest are kept
+        for (int i = 0; i < isObsolete.size() && i < batch.keyIds().length;
+             i++) {
+            verdicts.accept(batch.keyIds()[i], isObsolete.get(i));
+        }
+    }
+}
@@ -0,0 +1,843 @@
+package org.mccproxy.cache;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.mccproxy.ml.ObsoleteItemsPredictor;
+import org.mccproxy.ml.RawFeature;
+import org.mccproxy.ml.SimpleObsoleteItemsPredictor;
+import org.mccproxy.proxy.ItemRecord;
+import org.mccproxy.utils.CountingBloomFilter;
+import org.mccproxy.utils.IntHashSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A {@link MCCCache} that keeps the metadata of all cached items in parallel
+ * primitive arrays instead of one {@link ConsistentCache.ItemNode} per item.
+ * Every item owns a slot id; its version, lifetime, size, phase mark, LRU
+ * links and access bitmaps live at that index, and an open-addressing table
+ * maps key ids from the {@link KeyDictionary} to slots. Apart from the key string itself, an item costs no
+ * objects, so large caches stay cheap for the garbage collector.
+ */
+public class PrimitiveConsistentCache implements MCCCache {
+    private static final Logger logger =
+            LoggerFactory.getLogger(PrimitiveConsistentCache.class.getName());
+
+    private static final int NIL = -1;
+    private static final int UNLINKED = -2; // not in the invalidated list
+    private static final int INITIAL_CAPACITY = 1024;
+    // same window as the access tracker used by ConsistentCache
+    private static final int TRACKER_WINDOW_SIZE = 256;
+    private static final int TRACKER_WORDS = (TRACKER_WINDOW_SIZE + 63) / 64;
+    private static final int PREDICTION_BATCH_SIZE = 100;
+    private static final int PREDICTIONS_IN_FLIGHT = 8;
+    // slot columns 125, slot table 8, key dictionary entry 68, eviction
+    // policy 16, membership filter 4, key string 72
+    private static final int ENTRY_OVERHEAD = 293;
+
+    // per-slot columns
+    private String[] keys;
+    private int[] keyIds;
+    private long[] versions;
+    private long[] validUntils;
+    private int[] dataSizes;
+    private boolean[] marks;
+    private int[] prev;
+    private int[] next;
+    private long[] readAccesses;
+    private long[] writeAccesses;
+    private long[] lastUpdateTimeSteps;
+    private long[] lastAccessTimeSteps;
+    // obsolete candidates whose cached version has been superseded, linked
+    // in invalidation order so a phase end does not scan the whole cache
+    private int[] invalidatedPrev;
+    private int[] invalidatedNext;
+
+    // key id -> slot + 1, 0 marks an empty bucket
+    private int[] table;
+    private int tableMask;
+
+    private int slotCount; // slots ever handed out
+    private int freeHead = NIL; // free slots are chained through next[]
+    private int lruHead = NIL;
+    private int lruTail = NIL;
+    private int invalidatedHead = NIL;
+    private int invalidatedTail = NIL;
+    // chooses the victims of getLruItems()
+    private final EvictionPolicy evictionPolicy;
+    // keys of the cached items, rejects invalidations of uncached keys
+    private CountingBloomFilter cachedKeys;
+
+    private final KeyDictionary keyDictionary;
+    private int currentSize;
+    private final int maxSize;
+    private int itemCount;
+    private ObsoleteItemsPredictor obsoleteItemsPredictor;
+    // items read more recently are not obsolete candidates
+    private int obsoleteIdleTimeSteps;
+    // the slot bitmaps are read as of this clock, see SlotAccessTracker
+    private final LogicalClock clock = new LogicalClock();
+
+    // see ConsistentCache for the meaning of phases and marks
+    private boolean currentPhaseMark;
+    private int markedItemCount;
+
+    private long maxInvalidationTimestamp = 0;
+    // versioned keys of replaced versions, only the current one is kept
+    private final List<String> droppedVersions = new ArrayList<>();
+
+    public PrimitiveConsistentCache(int maxSize) {
+        this(maxSize, INITIAL_CAPACITY);
+    }
+
+    public PrimitiveConsistentCache(int maxSize, int initialCapacity) {
+        this(maxSize, initialCapacity, new KeyDictionary());
+    }
+
+    public PrimitiveConsistentCache(int maxSize, int initialCapacity,
+                                    KeyDictionary keyDictionary) {
+        this(maxSize, initialCapacity, keyDictionary,
+             new SizeClassLruIndex(initialCapacity));
+    }
+
+    public PrimitiveConsistentCache(int maxSize, int initialCapacity,
+                                    KeyDictionary keyDictionary,
+                                    EvictionPolicy evictionPolicy) {
+        this.maxSize = maxSize;
+        this.keyDictionary = keyDictionary;
+        this.obsoleteItemsPredictor = new SimpleObsoleteItemsPredictor();
+        this.evictionPolicy = evictionPolicy;
+        allocateSlots(Math.max(initialCapacity, 16));
+        allocateTable(tableSizeFor(keys.length));
+        cachedKeys = new CountingBloomFilter(keys.length);
+
+        logger.info(
+                "PrimitiveConsistentCache initialized with maxSize={} initialCapacity={}",
+                maxSize, keys.length);
+    }
+
+    @Override
+    public KeyDictionary getKeyDictionary() {
+        return keyDictionary;
+    }
+
+    @Override
+    public int getCacheSize() {
+        return currentSize;
+    }
+
+    @Override
+    public int getCacheSizeLimit() {
+        return maxSize;
+    }
+
+    @Override
+    public long getItemVersion(String key) {
+        int slot = findSlot(key);
+        return slot == NIL ? -1 : versions[slot];
+    }
+
+    @Override
+    public long getItemValidUntil(String key) {
+        int slot = findSlot(key);
+        return slot == NIL ? -1 : validUntils[slot];
+    }
+
+    @Override
+    public int getDataSize(List<String> keys) {
+        int totalSize = 0;
+        for (String key : keys) {
+            int slot = findSlot(key);
+            if (slot != NIL) {
+                totalSize += dataSizes[slot];
+            }
+        }
+        return totalSize;
+    }
+
+    @Override
+    public void invalidate(String key, long newVersion, long timeStep) {
+        logger.debug(
+                "PrimitiveConsistentCache::invalidate - Invalidating item with key={} newVersion={}",
+                key, newVersion);
+
+        // update the maximum invalidation timestamp before updating the cache to handle race conditions
+        assert newVersion >= maxInvalidationTimestamp;
+        // never lowered, lookups must not be served against a stale watermark
+        maxInvalidationTimestamp =
+                Math.max(maxInvalidationTimestamp, newVersion);
+
+        if (!cachedKeys.mightContain(key)) {
+            return;
+        }
+
+        int slot = findSlot(key);
+        if (slot != NIL) {
+            recordWrite(slot, timeStep);
+            closeLifetime(slot, newVersion);
+            logger.debug(
+                    "PrimitiveConsistentCache::invalidate - Invalidated item with key={}: newVersion={} validUntil={}",
+                    key, newVersion, validUntils[slot]);
+        } else {
+            logger.debug(
+                    "PrimitiveConsistentCache::invalidate - Item with key={} not found in cache",
+                    key);
+        }
+    }
+
+    @Override
+    public void closeLifetime(String key, long newVersion) {
+        int slot = findSlot(key);
+        if (slot != NIL) {
+            closeLifetime(slot, newVersion);
+        }
+    }
+
+    private void closeLifetime(int slot, long newVersion) {
+        if (validUntils[slot] == Long.MAX_VALUE &&
+                versions[slot] < newVersion) {
+            validUntils[slot] = newVersion;
+            linkInvalidated(slot);
+        }
+    }
+
+    @Override
+    public List<String> getObsoleteItems(IntHashSet itemsToKeep,
+                                         long timeStep) {
+        List<String> obsoleteItems = new ArrayList<>();
+        PredictionBatcher batcher =
+                new PredictionBatcher(obsoleteItemsPredictor,
+                                      PREDICTION_BATCH_SIZE,
+                                      PREDICTIONS_IN_FLIGHT,
+                                      (keyId, isObsolete) -> {
+                                          if (isObsolete) {
+                                              obsoleteItems.add(
+                                                      keyDictionary.getKey(
+                                                              keyId));
+                                          }
+                                      });
+        clock.advanceTo(timeStep);
+
+        // superseded versions
+        for (int slot = invalidatedHead; slot != NIL;
+             slot = invalidatedNext[slot]) {
+            if (!itemsToKeep.contains(keyIds[slot])) {
+                batcher.add(keyIds[slot], new SlotAccessTracker(slot));
+            }
+        }
+
+        // idle items, the walk stops at the first item that was read more
+        // recently
+        for (int slot = lruTail; slot != NIL &&
+                lastAccessTimeSteps[slot] + obsoleteIdleTimeSteps <=
+                        timeStep; slot = prev[slot]) {
+            if (invalidatedPrev[slot] == UNLINKED &&
+                    !itemsToKeep.contains(keyIds[slot])) {
+                batcher.add(keyIds[slot], new SlotAccessTracker(slot));
+            }
+        }
+        batcher.finish();
+
+        logger.info(
+                "PrimitiveConsistentCache::getObsoleteItems - Obsolete items: {}",
+                obsoleteItems);
+        return obsoleteItems;
+    }
+
+    @Override
+    public List<String> getLruItems(IntHashSet itemsToKeep, int neededSize) {
+        List<String> lruItems = new ArrayList<>();
+        long evictedSize = evictionPolicy.selectVictims(
+                itemsToKeep, neededSize,
+                keyId -> lruItems.add(keyDictionary.getKey(keyId)));
+        if (evictedSize < neededSize) {
+            logger.warn(
+                    "PrimitiveConsistentCache::getLruItems - Not enough items to evict: neededSize={} evictedSize={}",
+                    neededSize, evictedSize);
+        }
+        logger.info("PrimitiveConsistentCache::getLruItems - LRU items: {}",
+                    lruItems);
+        return lruItems;
+    }
+
+    @Override
+    public boolean isMCCHit(List<String> keys) {
+        long lifeStartMax = Long.MIN_VALUE;
+        long lifeEndMin = Long.MAX_VALUE;
+
+        for (String key : keys) {
+            int slot = findSlot(key);
+            if (slot == NIL || versions[slot] > maxInvalidationTimestamp) {
+                return false;
+            }
+
+            lifeStartMax = Math.max(versions[slot], lifeStartMax);
+            lifeEndMin = Math.min(validUntils[slot], lifeEndMin);
+            if (lifeStartMax >= lifeEndMin) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void lookup(List<String> keys, MCCLookupResult result) {
+        result.reset(keys.size(), maxInvalidationTimestamp);
+        for (int i = 0; i < keys.size(); i++) {
+            int slot = findSlot(keys.get(i));
+            if (slot == NIL) {
+                result.setMissing(i);
+            } else {
+                result.setCached(i, versions[slot], validUntils[slot]);
+            }
+        }
+
+        logger.debug("PrimitiveConsistentCache::lookup - MCCLookupResult: {}",
+                     result);
+    }
+
+    @Override
+    public void lookup(int[] keyIds, MCCLookupResult result) {
+        result.reset(keyIds.length, maxInvalidationTimestamp);
+        for (int i = 0; i < keyIds.length; i++) {
+            int slot = findSlot(keyIds[i]);
+            if (slot == NIL) {
+                result.setMissing(i);
+            } else {
+                result.setCached(i, versions[slot], validUntils[slot]);
+            }
+        }
+
+        logger.debug("PrimitiveConsistentCache::lookup - MCCLookupResult: {}",
+                     result);
+    }
+
+    @Override
+    public ConsistentCache.MCCHitResult makeMCCHit(List<String> keys) {
+        List<String> missingItems = new ArrayList<>();
+        List<String> outdatedItems = new ArrayList<>();
+        List<String> hitItems = new ArrayList<>();
+
+        for (String key : keys) {
+            int slot = findSlot(key);
+            if (slot == NIL) {
+                missingItems.add(key);
+            } else if (versions[slot] > maxInvalidationTimestamp ||
+                    validUntils[slot] != Long.MAX_VALUE) {
+                outdatedItems.add(key);
+            } else {
+                hitItems.add(key);
+            }
+        }
+
+        ConsistentCache.MCCHitResult result =
+                new ConsistentCache.MCCHitResult();
+        result.setMissingItems(missingItems);
+        result.setOutdatedItems(outdatedItems);
+        result.setHitItems(hitItems);
+
+        logger.info("PrimitiveConsistentCache::makeMCCHit - MCCHitResult: {}",
+                    result);
+        return result;
+    }
+
+    @Override
+    public void postCacheUpdate(List<String> hitItems,
+                                List<String> evictedItems,
+                                List<ItemRecord> newItems, long timeStep) {
+        for (String key : hitItems) {
+            access(key, timeStep);
+        }
+        for (String key : evictedItems) {
+            evict(key);
+        }
+        for (ItemRecord record : newItems) {
+            put(record.getKey(), record.getVersion(), record.getSize(),
+                timeStep);
+        }
+
+        logger.info(
+                "PrimitiveConsistentCache::postCacheUpdate - hitItems={} evictedItems={} newItems={}",
+                hitItems, evictedItems, newItems);
+    }
+
+    @Override
+    public void drainDroppedVersions(List<String> out) {
+        out.addAll(droppedVersions);
+        droppedVersions.clear();
+    }
+
+    @Override
+    public long getMaxInvalidationTimestamp() {
+        return maxInvalidationTimestamp;
+    }
+
+    @Override
+    public void markItems(List<String> keys) {
+        for (String key : keys) {
+            int slot = findSlot(key);
+            if (slot != NIL && marks[slot] != currentPhaseMark) {
+                marks[slot] = currentPhaseMark;
+                markedItemCount++;
+            }
+        }
+    }
+
+    @Override
+    public boolean isAllMarked() {
+        return markedItemCount == itemCount;
+    }
+
+    @Override
+    public void startNewPhase() {
+        currentPhaseMark = !currentPhaseMark;
+        markedItemCount = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "PrimitiveConsistentCache{currentSize=%d, maxSize=%d, itemCount=%d, capacity=%d, maxInvalidationTimestamp=%d}".formatted(
+                currentSize, maxSize, itemCount, keys.length,
+                maxInvalidationTimestamp);
+    }
+
+    @VisibleForTesting
+    void put(String key, long version, int dataSize) {
+        put(key, version, dataSize, 0);
+    }
+
+    @VisibleForTesting
+    void put(String key, long version, int dataSize, long timeStep) {
+        int slot = findSlot(key);
+        if (slot != NIL) {
+            if (versions[slot] != version) {
+                droppedVersions.add(
+                        ItemRecord.versionedKey(key, versions[slot]));
+            }
+            versions[slot] = version;
+            validUntils[slot] = Long.MAX_VALUE;
+            lastAccessTimeSteps[slot] = timeStep;
+            recordRead(slot, timeStep);
+            unlinkInvalidated(slot);
+            currentSize += dataSize - dataSizes[slot];
+            dataSizes[slot] = dataSize;
+            unlink(slot);
+            linkFirst(slot);
+            evictionPolicy.onPut(keyIds[slot], dataSize);
+
+            logger.info(
+                    "PrimitiveConsistentCache::put - Updated item with key={}: version={} dataSize={}",
+                    key, version, dataSize);
+        } else {
+            slot = allocateSlot();
+            // the cache holds the id until the item is evicted
+            int keyId = keyDictionary.intern(key);
+            keys[slot] = key;
+            keyIds[slot] = keyId;
+            versions[slot] = version;
+            validUntils[slot] = Long.MAX_VALUE;
+            dataSizes[slot] = dataSize;
+            marks[slot] = currentPhaseMark;
+            Arrays.fill(readAccesses, slot * TRACKER_WORDS,
+                        (slot + 1) * TRACKER_WORDS, 0L);
+            Arrays.fill(writeAccesses, slot * TRACKER_WORDS,
+                        (slot + 1) * TRACKER_WORDS, 0L);
+            lastUpdateTimeSteps[slot] = timeStep;
+            lastAccessTimeSteps[slot] = timeStep;
+            invalidatedPrev[slot] = UNLINKED;
+            invalidatedNext[slot] = UNLINKED;
+            recordRead(slot, timeStep);
+            linkFirst(slot);
+            insertIntoTable(slot);
+            evictionPolicy.onPut(keyId, dataSize);
+
+            currentSize += dataSize;
+            itemCount++;
+            markedItemCount++;
+            cachedKeys.add(key);
+            if (cachedKeys.needsRebuild(itemCount)) {
+                rebuildCachedKeys();
+            }
+
+            logger.info(
+                    "PrimitiveConsistentCache::put - Added item with key={}: version={} dataSize={}",
+                    key, version, dataSize);
+        }
+    }
+
+    @VisibleForTesting
+    void evict(String key) {
+        int slot = findSlot(key);
+        if (slot == NIL) {
+            logger.info(
+                    "PrimitiveConsistentCache::evict - Item with key={} not found in cache",
+                    key);
+            return;
+        }
+
+        removeFromTable(slot);
+        unlink(slot);
+        unlinkInvalidated(slot);
+        evictionPolicy.onRemove(keyIds[slot]);
+        currentSize -= dataSizes[slot];
+        itemCount--;
+        cachedKeys.remove(key);
+        // an evicted item no longer takes part in the phase
+        if (marks[slot] == currentPhaseMark) {
+            markedItemCount--;
+        }
+        keyDictionary.release(keyIds[slot]);
+        keys[slot] = null;
+        next[slot] = freeHead;
+        freeHead = slot;
+
+        logger.info("PrimitiveConsistentCache::evict - Evicted item with key={}",
+                    key);
+    }
+
+    @VisibleForTesting
+    void access(String key, long timeStep) {
+        int slot = findSlot(key);
+        if (slot == NIL) {
+            logger.info(
+                    "PrimitiveConsistentCache::access - Item with key={} not found in cache",
+                    key);
+            return;
+        }
+        unlink(slot);
+        linkFirst(slot);
+        evictionPolicy.onAccess(keyIds[slot]);
+        lastAccessTimeSteps[slot] = timeStep;
+        recordRead(slot, timeStep);
+    }
+
+    @VisibleForTesting
+    List<String> getInvalidatedItems() {
+        List<String> invalidated = new ArrayList<>();
+        for (int slot = invalidatedHead; slot != NIL;
+             slot = invalidatedNext[slot]) {
+            invalidated.add(keys[slot]);
+        }
+        return invalidated;
+    }
+
+    @Override
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    @Override
+    public int getEntryOverhead() {
+        return ENTRY_OVERHEAD;
+    }
+
+    @VisibleForTesting
+    List<String> getKeysInLruOrder() {
+        List<String> lruOrder = new ArrayList<>(itemCount);
+        for (int slot = lruHead; slot != NIL; slot = next[slot]) {
+            lruOrder.add(keys[slot]);
+        }
+        return lruOrder;
+    }
+
+    @Override
+    public void setObsoleteItemsPredictor(
+            ObsoleteItemsPredictor obsoleteItemsPredictor) {
+        this.obsoleteItemsPredictor = obsoleteItemsPredictor;
+    }
+
+    @Override
+    public void setObsoleteIdleTimeSteps(int idleTimeSteps) {
+        if (idleTimeSteps < 0) {
+            throw new IllegalArgumentException(
+                    "idleTimeSteps must not be negative: " + idleTimeSteps);
+        }
+        this.obsoleteIdleTimeSteps = idleTimeSteps;
+    }
+
+    @VisibleForTesting
+    RawFeature getRawFeature(String key) {
+        int slot = findSlot(key);
+        return slot == NIL ? null : new SlotAccessTracker(slot).toRawFeature();
+    }
+
+    // ---- access tracking, same bit layout as VariableSizeAccessTracker ----
+
+    private void recordRead(int slot, long timeStep) {
+        syncTimeStep(slot, timeStep);
+        readAccesses[slot * TRACKER_WORDS] |= 1L;
+    }
+
+    private void recordWrite(int slot, long timeStep) {
+        syncTimeStep(slot, timeStep);
+        writeAccesses[slot * TRACKER_WORDS] |= 1L;
+    }
+
+    private void syncTimeStep(int slot, long timeStep) {
+        long shift = timeStep - lastUpdateTimeSteps[slot];
+        shiftBits(readAccesses, slot * TRACKER_WORDS, shift);
+        shiftBits(writeAccesses, slot * TRACKER_WORDS, shift);
+        lastUpdateTimeSteps[slot] = timeStep;
+    }
+
+    @VisibleForTesting
+    static void shiftBits(long[] words, int offset, long shift) {
+        if (shift <= 0) {
+            return;
+        }
+        if (shift >= TRACKER_WINDOW_SIZE) {
+            Arrays.fill(words, offset, offset + TRACKER_WORDS, 0L);
+            return;
+        }
+        int longShift = (int) (shift / 64);
+        int bitShift = (int) (shift % 64);
+        for (int i = TRACKER_WORDS - 1; i >= longShift; i--) {
+            long val = words[offset + i - longShift] << bitShift;
+            if (i - longShift - 1 >= 0 && bitShift > 0) {
+                val |= words[offset + i - longShift - 1] >>> (64 - bitShift);
+            }
+            words[offset + i] = val;
+        }
+        Arrays.fill(words, offset, offset + longShift, 0L);
+    }
+
+    // ---- LRU list over slot ids ----
+
+    private void linkFirst(int slot) {
+        prev[slot] = NIL;
+        next[slot] = lruHead;
+        if (lruHead != NIL) {
+            prev[lruHead] = slot;
+        } else {
+            lruTail = slot;
+        }
+        lruHead = slot;
+    }
+
+    private void unlink(int slot) {
+        if (prev[slot] != NIL) {
+            next[prev[slot]] = next[slot];
+        } else {
+            lruHead = next[slot];
+        }
+        if (next[slot] != NIL) {
+            prev[next[slot]] = prev[slot];
+        } else {
+            lruTail = prev[slot];
+        }
+    }
+
+    private void rebuildCachedKeys() {
+        cachedKeys = new CountingBloomFilter(
+                Math.max(cachedKeys.capacity(), 2 * itemCount));
+        for (int slot = lruHead; slot != NIL; slot = next[slot]) {
+            cachedKeys.add(keys[slot]);
+        }
+    }
+
+    // ---- invalidated candidate list over slot ids ----
+
+    private void linkInvalidated(int slot) {
+        if (invalidatedPrev[slot] != UNLINKED) {
+            return;
+        }
+        invalidatedPrev[slot] = invalidatedTail;
+        invalidatedNext[slot] = NIL;
+        if (invalidatedTail != NIL) {
+            invalidatedNext[invalidatedTail] = slot;
+        } else {
+            invalidatedHead = slot;
+        }
+        invalidatedTail = slot;
+    }
+
+    private void unlinkInvalidated(int slot) {
+        if (invalidatedPrev[slot] == UNLINKED) {
+            return;
+        }
+        if (invalidatedPrev[slot] != NIL) {
+            invalidatedNext[invalidatedPrev[slot]] = invalidatedNext[slot];
+        } else {
+            invalidatedHead = invalidatedNext[slot];
+        }
+        if (invalidatedNext[slot] != NIL) {
+            invalidatedPrev[invalidatedNext[slot]] = invalidatedPrev[slot];
+        } else {
+            invalidatedTail = invalidatedPrev[slot];
+        }
+        invalidatedPrev[slot] = UNLINKED;
+        invalidatedNext[slot] = UNLINKED;
+    }
+
+    // ---- slot allocation ----
+
+    private int allocateSlot() {
+        if (freeHead != NIL) {
+            int slot = freeHead;
+            freeHead = next[slot];
+            return slot;
+        }
+        if (slotCount == keys.length) {
+            allocateSlots(keys.length * 2);
+        }
+        return slotCount++;
+    }
+
+    private void allocateSlots(int capacity) {
+        if (keys == null) {
+            keys = new String[capacity];
+            keyIds = new int[capacity];
+            versions = new long[capacity];
+            validUntils = new long[capacity];
+            dataSizes = new int[capacity];
+            marks = new boolean[capacity];
+            prev = new int[capacity];
+            next = new int[capacity];
+            readAccesses = new long[capacity * TRACKER_WORDS];
+            writeAccesses = new long[capacity * TRACKER_WORDS];
+            lastUpdateTimeSteps = new long[capacity];
+            lastAccessTimeSteps = new long[capacity];
+            invalidatedPrev = new int[capacity];
+            invalidatedNext = new int[capacity];
+            return;
+        }
+        keys = Arrays.copyOf(keys, capacity);
+        keyIds = Arrays.copyOf(keyIds, capacity);
+        versions = Arrays.copyOf(versions, capacity);
+        validUntils = Arrays.copyOf(validUntils, capacity);
+        dataSizes = Arrays.copyOf(dataSizes, capacity);
+        marks = Arrays.copyOf(marks, capacity);
+        prev = Arrays.copyOf(prev, capacity);
+        next = Arrays.copyOf(next, capacity);
+        readAccesses = Arrays.copyOf(readAccesses, capacity * TRACKER_WORDS);
+        writeAccesses = Arrays.copyOf(writeAccesses, capacity * TRACKER_WORDS);
+        lastUpdateTimeSteps = Arrays.copyOf(lastUpdateTimeSteps, capacity);
+        lastAccessTimeSteps = Arrays.copyOf(lastAccessTimeSteps, capacity);
+        invalidatedPrev = Arrays.copyOf(invalidatedPrev, capacity);
+        invalidatedNext = Arrays.copyOf(invalidatedNext, capacity);
+
+        if (tableSizeFor(capacity) > table.length) {
+            allocateTable(tableSizeFor(capacity));
+            for (int slot = lruHead; slot != NIL; slot = next[slot]) {
+                insertIntoTable(slot);
+            }
+        }
+    }
+
+    // ---- open-addressing key id -> slot table with linear probing ----
+
+    private static int tableSizeFor(int capacity) {
+        // keep the load factor at or below 1/2
+        return Integer.highestOneBit(Math.max(capacity, 8) * 2 - 1) * 2;
+    }
+
+    private void allocateTable(int size) {
+        table = new int[size];
+        tableMask = size - 1;
+    }
+
+    private static int hash(int keyId) {
+        int h = keyId * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int findSlot(String key) {
+        int keyId = keyDictionary.getId(key);
+        return keyId == KeyDictionary.UNKNOWN_ID ? NIL : findSlot(keyId);
+    }
+
+    private int findSlot(int keyId) {
+        for (int i = hash(keyId) & tableMask; ; i = (i + 1) & tableMask) {
+            int entry = table[i];
+            if (entry == 0) {
+                return NIL;
+            }
+            if (keyIds[entry - 1] == keyId) {
+                return entry - 1;
+            }
+        }
+    }
+
+    private void insertIntoTable(int slot) {
+        int i = hash(keyIds[slot]) & tableMask;
+        while (table[i] != 0) {
+            i = (i + 1) & tableMask;
+        }
+        table[i] = slot + 1;
+    }
+
+    private void removeFromTable(int slot) {
+        int i = hash(keyIds[slot]) & tableMask;
+        while (table[i] != slot + 1) {
+            i = (i + 1) & tableMask;
+        }
+        // backward-shift deletion keeps probe sequences intact without tombstones
+        int j = i;
+        while (true) {
+            j = (j + 1) & tableMask;
+            if (table[j] == 0) {
+                break;
+            }
+            int home = hash(keyIds[table[j] - 1]) & tableMask;
+            boolean movable = (i <= j) ? (home <= i || home > j) :
+                    (home <= i && home > j);
+            if (movable) {
+                table[i] = table[j];
+                i = j;
+            }
+        }
+        table[i] = 0;
+    }
+
+    /**
+     * A view of one slot's access bitmaps, handed to the predictor. The
+     * features are shifted to the clock's time step on a copy, so reading
+     * them leaves the slot as it is.
+     */
+    private class SlotAccessTracker implements AccessTracker {
+        private final int slot;
+
+        SlotAccessTracker(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public void recordRead(long timeStep) {
+            PrimitiveConsistentCache.this.recordRead(slot, timeStep);
+        }
+
+        @Override
+        public void recordWrite(long timeStep) {
+            PrimitiveConsistentCache.this.recordWrite(slot, timeStep);
+        }
+
+        @Override
+        public void syncTimeStep(long timeStep) {
+            PrimitiveConsistentCache.this.syncTimeStep(slot, timeStep);
+        }
+
+        @Override
+        public RawFeature toRawFeature() {
+            long shift = clock.now() - lastUpdateTimeSteps[slot];
+            long[] words = new long[2 * TRACKER_WORDS];
+            System.arraycopy(readAccesses, slot * TRACKER_WORDS, words, 0,
+                             TRACKER_WORDS);
+            System.arraycopy(writeAccesses, slot * TRACKER_WORDS, words,
+                             TRACKER_WORDS, TRACKER_WORDS);
+            shiftBits(words, 0, shift);
+            shiftBits(words, TRACKER_WORDS, shift);
+
+            RawFeature.Builder builder = RawFeature.newBuilder();
+            for (int i = 0; i < TRACKER_WORDS; i++) {
+                builder.addReadAccesses(words[i]);
+            }
+            for (int i = 0; i < TRACKER_WORDS; i++) {
+                builder.addWriteAccesses(words[TRACKER_WORDS + i]);
+            }
+            return builder.build();
+        }
+    }
+}
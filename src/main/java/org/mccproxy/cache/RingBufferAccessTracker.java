@@ -0,0 +1,157 @@
+package org.mccproxy.cache;
+
+import org.mccproxy.ml.RawFeature;
+
+import java.util.Arrays;
+
+/**
+ * Tracks reads and writes over the last window of time steps in two circular
+ * bitmaps. Every time step has a fixed bit, so advancing time only clears the
+ * bits of the skipped steps instead of shifting the whole window, and a step
+ * that is a whole window or more behind clears everything.
+ * <p>
+ * The window is rounded up to whole words, and {@link #toRawFeature} produces
+ * the same words as {@link VariableSizeAccessTracker}: bit i of word j is set
+ * if there was an access j * 64 + i steps ago.
+ * <p>
+ * A tracker that shares a {@link LogicalClock} is read as of the clock's time
+ * step, so it does not have to be synced when time advances without an access.
+ */
+public class RingBufferAccessTracker implements AccessTracker {
+    private final long[] readAccesses;
+    private final long[] writeAccesses;
+    private final int bits; // bits in the ring
+    // null if the tracker is read as of its last update
+    private final LogicalClock clock;
+    private long lastUpdateTimeStep;
+
+    public RingBufferAccessTracker(int windowSize) {
+        this(windowSize, null);
+    }
+
+    public RingBufferAccessTracker(int windowSize, LogicalClock clock) {
+        int words = Math.max((windowSize + 63) / 64, 1);
+        this.readAccesses = new long[words];
+        this.writeAccesses = new long[words];
+        this.bits = words * 64;
+        this.clock = clock;
+    }
+
+    // time runs towards lower positions, so the older steps follow the
+    // current one at increasing positions
+    private int positionOf(long timeStep) {
+        return (int) Math.floorMod(-timeStep, (long) bits);
+    }
+
+    @Override
+    public void recordRead(long timeStep) {
+        syncTimeStep(timeStep);
+        set(readAccesses, timeStep);
+    }
+
+    @Override
+    public void recordWrite(long timeStep) {
+        syncTimeStep(timeStep);
+        set(writeAccesses, timeStep);
+    }
+
+    private void set(long[] accesses, long timeStep) {
+        // an access older than the last step is kept if it is in the window
+        if (lastUpdateTimeStep - timeStep < bits) {
+            int position = positionOf(timeStep);
+            accesses[position >>> 6] |= 1L << position;
+        }
+    }
+
+    @Override
+    public void syncTimeStep(long timeStep) {
+        long steps = timeStep - lastUpdateTimeStep;
+        if (steps <= 0) {
+            return;
+        }
+        if (steps >= bits) {
+            Arrays.fill(readAccesses, 0L);
+            Arrays.fill(writeAccesses, 0L);
+        } else {
+            // the skipped steps and the new one, ending below the last step
+            int start = positionOf(timeStep);
+            clear(readAccesses, start, (int) steps);
+            clear(writeAccesses, start, (int) steps);
+        }
+        lastUpdateTimeStep = timeStep;
+    }
+
+    // clears length bits from position start on, wrapping around the ring
+    private void clear(long[] accesses, int start, int length) {
+        int end = start + length;
+        if (end > bits) {
+            clearRange(accesses, start, bits);
+            clearRange(accesses, 0, end - bits);
+        } else {
+            clearRange(accesses, start, end);
+        }
+    }
+
+    private static void clearRange(long[] accesses, int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if (first == last) {
+            accesses[first] &= ~(firstMask & lastMask);
+            return;
+        }
+        accesses[first] &= ~firstMask;
+        for (int i = first + 1; i < last; i++) {
+            accesses[i] = 0L;
+        }
+        accesses[last] &= ~lastMask;
+    }
+
+    @Override
+    public RawFeature toRawFeature() {
+        long now = lastUpdateTimeStep;
+        if (clock != null) {
+            now = Math.max(now, clock.now());
+        }
+        // the bits of the steps after the last update still hold accesses
+        // from an earlier lap of the ring, they read as zero
+        long stale = now - lastUpdateTimeStep;
+        RawFeature.Builder builder = RawFeature.newBuilder();
+        int start = positionOf(now);
+        for (int i = 0; i < readAccesses.length; i++) {
+            builder.addReadAccesses(
+                    wordAt(readAccesses, start + i * 64, stale - i * 64L));
+        }
+        for (int i = 0; i < writeAccesses.length; i++) {
+            builder.addWriteAccesses(
+                    wordAt(writeAccesses, start + i * 64, stale - i * 64L));
+        }
+        return builder.build();
+    }
+
+    // the 64 bits from the given position on with the lowest stale ones
+    // cleared
+    private long wordAt(long[] accesses, int position, long stale) {
+        if (stale >= 64) {
+            return 0L;
+        }
+        long word = wordAt(accesses, position);
+        return stale > 0 ? word & -1L << stale : word;
+    }
+
+    // the 64 bits from the given position on, wrapping around the ring
+    private long wordAt(long[] accesses, int position) {
+        position %= bits;
+        int word = position >>> 6;
+        int offset = position & 63;
+        if (offset == 0) {
+            return accesses[word];
+        }
+        return accesses[word] >>> offset |
+                accesses[(word + 1) % accesses.length] << -offset;
+    }
+}
@@ -0,0 +1,173 @@
+package org.mccproxy.cache;
+
+import org.mccproxy.utils.IntHashSet;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+import static org.mccproxy.cache.KeyIdLists.ABSENT;
+import static org.mccproxy.cache.KeyIdLists.NIL;
+
+/**
+ * The S3-FIFO eviction policy. New items enter a small FIFO queue, and only
+ * the ones read again before they reach its end move to the main FIFO queue,
+ * so one-hit wonders of a scan leave quickly. The main queue reinserts items
+ * that were read since they were last considered, up to three times. Keys
+ * evicted from the small queue are remembered in a ghost queue, and enter the
+ * main queue directly when they come back. Reads only bump a small counter,
+ * they never move an item.
+ */
+class S3FifoPolicy implements EvictionPolicy {
+    private static final int SMALL = 0;
+    private static final int MAIN = 1;
+    private static final int GHOST = 2;
+    // selected victims that have not been removed yet, by origin
+    private static final int PENDING_SMALL = 3;
+    private static final int PENDING_MAIN = 4;
+
+    private static final int SMALL_PERCENT = 10;
+    private static final int MAX_FREQUENCY = 3;
+    private static final int MIN_GHOST_ITEMS = 16;
+
+    private final KeyIdLists lists;
+    // a ghost holds its id here, so a returning key gets the same id and
+    // no other key inherits it; null if ids are never released
+    private final KeyDictionary keyDictionary;
+    private byte[] frequencies;
+    private int size;
+
+    S3FifoPolicy(KeyDictionary keyDictionary) {
+        this(1024, keyDictionary);
+    }
+
+    S3FifoPolicy(int initialCapacity, KeyDictionary keyDictionary) {
+        lists = new KeyIdLists(5, initialCapacity);
+        this.keyDictionary = keyDictionary;
+        frequencies = new byte[Math.max(initialCapacity, 16)];
+    }
+
+    private boolean isCached(int keyId) {
+        int list = lists.listOf(keyId);
+        return list != ABSENT && list != GHOST;
+    }
+
+    @Override
+    public void onPut(int keyId, int dataSize) {
+        if (isCached(keyId)) {
+            lists.resize(keyId, dataSize);
+            onAccess(keyId);
+            return;
+        }
+        if (keyId >= frequencies.length) {
+            frequencies = Arrays.copyOf(frequencies,
+                                        Math.max(keyId + 1,
+                                                 frequencies.length * 2));
+        }
+        frequencies[keyId] = 0;
+        // a key that was evicted from the small queue recently is not a one-hit wonder
+        int list = SMALL;
+        if (lists.unlink(keyId) == GHOST) {
+            list = MAIN;
+            releaseGhost(keyId);
+        }
+        lists.linkFirst(list, keyId, dataSize);
+        size++;
+    }
+
+    @Override
+    public void onAccess(int keyId) {
+        int list = lists.listOf(keyId);
+        if (list == PENDING_SMALL || list == PENDING_MAIN) {
+            lists.moveToFirst(MAIN, keyId);
+        } else if (list == ABSENT || list == GHOST) {
+            return;
+        }
+        if (frequencies[keyId] < MAX_FREQUENCY) {
+            frequencies[keyId]++;
+        }
+    }
+
+    @Override
+    public void onRemove(int keyId) {
+        if (!isCached(keyId)) {
+            return;
+        }
+        if (lists.unlink(keyId) == PENDING_SMALL) {
+            lists.linkFirst(GHOST, keyId, 0);
+            if (keyDictionary != null) {
+                keyDictionary.retain(keyId);
+            }
+            int maxGhostItems = Math.max(lists.count(MAIN), MIN_GHOST_ITEMS);
+            while (lists.count(GHOST) > maxGhostItems) {
+                int ghost = lists.tail(GHOST);
+                lists.unlink(ghost);
+                releaseGhost(ghost);
+            }
+        }
+        size--;
+    }
+
+    private void releaseGhost(int keyId) {
+        if (keyDictionary != null) {
+            keyDictionary.release(keyId);
+        }
+    }
+
+    @Override
+    public long selectVictims(IntHashSet itemsToKeep, int neededSize,
+                              IntConsumer victims) {
+        // victims of an earlier call that stayed cached are chosen first
+        returnPending(PENDING_SMALL, SMALL);
+        returnPending(PENDING_MAIN, MAIN);
+
+        long selectedSize = 0;
+        // every item is reinserted at most MAX_FREQUENCY + 1 times
+        long steps = (MAX_FREQUENCY + 2L) * size + 16;
+        // kept items rotated through the main queue since the last change
+        int keptInMain = 0;
+        while (selectedSize < neededSize && steps-- > 0) {
+            boolean mainBlocked = keptInMain >= lists.count(MAIN);
+            boolean fromSmall = lists.count(SMALL) > 0 && (mainBlocked ||
+                    lists.bytes(SMALL) * 100 >=
+                            (lists.bytes(SMALL) + lists.bytes(MAIN)) *
+                                    SMALL_PERCENT);
+            int queue = fromSmall ? SMALL : MAIN;
+            int keyId = lists.tail(queue);
+            if (keyId == NIL || (!fromSmall && mainBlocked)) {
+                break;
+            }
+            if (!fromSmall && itemsToKeep.contains(keyId)) {
+                lists.moveToFirst(MAIN, keyId);
+                keptInMain++;
+                continue;
+            }
+            keptInMain = 0;
+            if (fromSmall && (frequencies[keyId] > 0 ||
+                    itemsToKeep.contains(keyId))) {
+                // read again while in the small queue
+                frequencies[keyId] = 0;
+                lists.moveToFirst(MAIN, keyId);
+            } else if (!fromSmall && frequencies[keyId] > 0) {
+                frequencies[keyId]--;
+                lists.moveToFirst(MAIN, keyId);
+            } else {
+                int dataSize = lists.sizeOf(keyId);
+                lists.unlink(keyId);
+                lists.linkLast(fromSmall ? PENDING_SMALL : PENDING_MAIN, keyId,
+                               dataSize);
+                victims.accept(keyId);
+                selectedSize += dataSize;
+            }
+        }
+        return selectedSize;
+    }
+
+    private void returnPending(int pending, int queue) {
+        for (int keyId = lists.head(pending); keyId != NIL;
+             keyId = lists.head(pending)) {
+            int dataSize = lists.sizeOf(keyId);
+            lists.unlink(keyId);
+            lists.linkLast(queue, keyId, dataSize);
+        }
+    }
+}
@@ -0,0 +1,602 @@
+package org.mccproxy.cache;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.mccproxy.ml.ObsoleteItemsPredictor;
+import org.mccproxy.proxy.ItemRecord;
+import org.mccproxy.utils.IntHashSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * A {@link MCCCache} split into {@link ConsistentCache} segments, each with
+ * its own map, LRU list and lock. All segments share one atomic invalidation
+ * watermark. The size budget belongs to the whole cache: segments have no
+ * budget of their own, and {@link #getLruItems} takes the needed size from
+ * them in proportion to their occupancy.
+ * <p>
+ * The segments only speed up concurrent invalidations. Reads still look up
+ * and update the metadata under the proxy's global lock, one at a time, so
+ * striping does nothing for them. Since this cache is thread-safe, the
+ * proxy applies invalidations on the invalidation thread outside that lock,
+ * which it only takes briefly to record them for the reads in flight. The
+ * segment locks keep those invalidations from racing with the reads, and an
+ * invalidation only waits for a read that is using the same segment.
+ */
+public class ShardedConsistentCache implements MCCCache {
+    private static Logger logger =
+            LoggerFactory.getLogger(ShardedConsistentCache.class.getName());
+
+    private final KeyDictionary keyDictionary;
+    private final ConsistentCache[] segments;
+    private final ReentrantLock[] locks;
+    private final int maxSize;
+
+    // shared by all segments, only ever moves forward
+    private final AtomicLong maxInvalidationTimestamp = new AtomicLong(0);
+
+    public ShardedConsistentCache(int maxSize, int numSegments) {
+        this(maxSize, numSegments, new KeyDictionary());
+    }
+
+    public ShardedConsistentCache(int maxSize, int numSegments,
+                                  KeyDictionary keyDictionary) {
+        this(maxSize, numSegments, keyDictionary, SizeClassLruIndex::new);
+    }
+
+    /**
+     * @param evictionPolicies creates the eviction policy of each segment
+     */
+    public ShardedConsistentCache(int maxSize, int numSegments,
+                                  KeyDictionary keyDictionary,
+                                  Supplier<EvictionPolicy> evictionPolicies) {
+        if (numSegments <= 0) {
+            throw new IllegalArgumentException(
+                    "Number of segments must be positive: " + numSegments);
+        }
+        this.maxSize = maxSize;
+        this.keyDictionary = keyDictionary;
+        this.segments = new ConsistentCache[numSegments];
+        this.locks = new ReentrantLock[numSegments];
+        for (int i = 0; i < numSegments; i++) {
+            // a segment may hold any share of the cache's budget
+            segments[i] = new ConsistentCache(maxSize, keyDictionary,
+                                              maxInvalidationTimestamp,
+                                              evictionPolicies.get());
+            locks[i] = new ReentrantLock();
+        }
+
+        logger.info(
+                "ShardedConsistentCache initialized with maxSize={} numSegments={}",
+                maxSize, numSegments);
+    }
+
+    @Override
+    public KeyDictionary getKeyDictionary() {
+        return keyDictionary;
+    }
+
+    @Override
+    public int getCacheSize() {
+        int size = 0;
+        for (int i = 0; i < segments.length; i++) {
+            locks[i].lock();
+            try {
+                size += segments[i].getCacheSize();
+            } finally {
+                locks[i].unlock();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public int getCacheSizeLimit() {
+        return maxSize;
+    }
+
+    @Override
+    public long getItemVersion(String key) {
+        int keyId = keyDictionary.getId(key);
+        if (keyId == KeyDictionary.UNKNOWN_ID) {
+            return -1;
+        }
+        int i = segmentOf(keyId);
+        locks[i].lock();
+        try {
+            return segments[i].getItemVersion(key);
+        } finally {
+            locks[i].unlock();
+        }
+    }
+
+    @Override
+    public long getItemValidUntil(String key) {
+        int keyId = keyDictionary.getId(key);
+        if (keyId == KeyDictionary.UNKNOWN_ID) {
+            return -1;
+        }
+        int i = segmentOf(keyId);
+        locks[i].lock();
+        try {
+            return segments[i].getItemValidUntil(key);
+        } finally {
+            locks[i].unlock();
+        }
+    }
+
+    @Override
+    public int getDataSize(List<String> keys) {
+        List<String>[] keysBySegment = partition(keys);
+        int totalSize = 0;
+        for (int i = 0; i < segments.length; i++) {
+            if (keysBySegment[i] == null) {
+                continue;
+            }
+            locks[i].lock();
+            try {
+                totalSize += segments[i].getDataSize(keysBySegment[i]);
+            } finally {
+                locks[i].unlock();
+            }
+        }
+        return totalSize;
+    }
+
+    @Override
+    public void invalidate(String key, long newVersion, long timeStep) {
+        invalidate(List.of(key), newVersion, timeStep);
+    }
+
+    @Override
+    public void invalidate(List<String> keys, long newVersion,
+                           long timeStep) {
+        logger.info(
+                "ShardedConsistentCache::invalidate - Invalidating items with keys={} newVersion={}",
+                keys, newVersion);
+        assert newVersion >= maxInvalidationTimestamp.get();
+
+        for (String key : keys) {
+            int keyId = keyDictionary.getId(key);
+            if (keyId == KeyDictionary.UNKNOWN_ID) {
+                continue;
+            }
+            int i = segmentOf(keyId);
+            locks[i].lock();
+            try {
+                segments[i].applyInvalidation(key, newVersion, timeStep);
+            } finally {
+                locks[i].unlock();
+            }
+        }
+
+        // Readers sample the watermark before looking at any item, so it is
+        // only published once every item of the batch carries its new
+        // validUntil. A reader that sees newVersion is then guaranteed to
+        // also see all of the invalidations up to it.
+        maxInvalidationTimestamp.accumulateAndGet(newVersion, Math::max);
+    }
+
+    @Override
+    public void setObsoleteIdleTimeSteps(int idleTimeSteps) {
+        for (int i = 0; i < segments.length; i++) {
+            locks[i].lock();
+            try {
+                segments[i].setObsoleteIdleTimeSteps(idleTimeSteps);
+            } finally {
+                locks[i].unlock();
+            }
+        }
+    }
+
+    @Override
+    public void closeLifetime(String key, long newVersion) {
+        int keyId = keyDictionary.getId(key);
+        if (keyId == KeyDictionary.UNKNOWN_ID) {
+            return;
+        }
+        int i = segmentOf(keyId);
+        locks[i].lock();
+        try {
+            segments[i].closeLifetime(key, newVersion);
+        } finally {
+            locks[i].unlock();
+        }
+    }
+
+    @Override
+    public List<String> getObsoleteItems(IntHashSet itemsToKeep,
+                                         long timeStep) {
+        List<String> obsoleteItems = new ArrayList<>();
+        for (int i = 0; i < segments.length; i++) {
+            locks[i].lock();
+            try {
+                obsoleteItems.addAll(
+                        segments[i].getObsoleteItems(itemsToKeep, timeStep));
+            } finally {
+                locks[i].unlock();
+            }
+        }
+        return obsoleteItems;
+    }
+
+    // the segments are only asked for obsolete items one at a time, so they
+    // can share a predictor that is not thread-safe
+    @Override
+    public void setObsoleteItemsPredictor(
+            ObsoleteItemsPredictor obsoleteItemsPredictor) {
+        for (ConsistentCache segment : segments) {
+            segment.setObsoleteItemsPredictor(obsoleteItemsPredictor);
+        }
+    }
+
+    @Override
+    public List<String> getLruItems(IntHashSet itemsToKeep, int neededSize) {
+        List<String> lruItems = new ArrayList<>();
+        int totalSize = getCacheSize();
+        if (neededSize <= 0 || totalSize == 0) {
+            return lruItems;
+        }
+
+        // There is no global recency order across segments, so each segment
+        // gives up a share of the needed size proportional to its occupancy.
+        int evictedSize = 0;
+        for (int i = 0; i < segments.length; i++) {
+            locks[i].lock();
+            try {
+                int segmentSize = segments[i].getCacheSize();
+                int share = (int) Math.ceilDiv((long) neededSize * segmentSize,
+                                               totalSize);
+                if (share == 0) {
+                    continue;
+                }
+                List<String> segmentLruItems =
+                        segments[i].getLruItems(itemsToKeep, share);
+                evictedSize += segments[i].getDataSize(segmentLruItems);
+                lruItems.addAll(segmentLruItems);
+            } finally {
+                locks[i].unlock();
+            }
+        }
+
+        // pinned items may have kept some segments from paying their share
+        if (evictedSize < neededSize) {
+            IntHashSet decidedItems = new IntHashSet(itemsToKeep.size());
+            decidedItems.addAll(itemsToKeep);
+            for (String key : lruItems) {
+                decidedItems.add(keyDictionary.getId(key));
+            }
+            for (int i = 0; i < segments.length && evictedSize < neededSize;
+                 i++) {
+                locks[i].lock();
+                try {
+                    List<String> segmentLruItems =
+                            segments[i].getLruItems(decidedItems,
+                                                    neededSize - evictedSize);
+                    evictedSize += segments[i].getDataSize(segmentLruItems);
+                    for (String key : segmentLruItems) {
+                        decidedItems.add(keyDictionary.getId(key));
+                    }
+                    lruItems.addAll(segmentLruItems);
+                } finally {
+                    locks[i].unlock();
+                }
+            }
+        }
+
+        logger.info("ShardedConsistentCache::getLruItems - LRU items: {}",
+                    lruItems);
+        return lruItems;
+    }
+
+    @Override
+    public boolean isMCCHit(List<String> keys) {
+        // sample the watermark before any item, see invalidate()
+        long watermark = maxInvalidationTimestamp.get();
+        long lifeStartMax = Long.MIN_VALUE;
+        long lifeEndMin = Long.MAX_VALUE;
+
+        for (String key : keys) {
+            int keyId = keyDictionary.getId(key);
+            if (keyId == KeyDictionary.UNKNOWN_ID) {
+                return false;
+            }
+            int i = segmentOf(keyId);
+            long lifeStart;
+            long lifeEnd;
+            locks[i].lock();
+            try {
+                ConsistentCache.ItemNode node = segments[i].getNode(keyId);
+                if (node == null) {
+                    return false;
+                }
+                lifeStart = node.getVersion();
+                lifeEnd = node.getValidUntil();
+            } finally {
+                locks[i].unlock();
+            }
+
+            if (lifeStart > watermark) {
+                return false;
+            }
+
+            lifeStartMax = Math.max(lifeStart, lifeStartMax);
+            lifeEndMin = Math.min(lifeEnd, lifeEndMin);
+            if (lifeStartMax >= lifeEndMin) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public void lookup(List<String> keys, MCCLookupResult result) {
+        // sample the watermark before any item, see invalidate()
+        result.reset(keys.size(), maxInvalidationTimestamp.get());
+        for (int k = 0; k < keys.size(); k++) {
+            lookup(k, keyDictionary.getId(keys.get(k)), result);
+        }
+
+        logger.debug("ShardedConsistentCache::lookup - MCCLookupResult: {}",
+                     result);
+    }
+
+    @Override
+    public void lookup(int[] keyIds, MCCLookupResult result) {
+        result.reset(keyIds.length, maxInvalidationTimestamp.get());
+        for (int k = 0; k < keyIds.length; k++) {
+            lookup(k, keyIds[k], result);
+        }
+
+        logger.debug("ShardedConsistentCache::lookup - MCCLookupResult: {}",
+                     result);
+    }
+
+    private void lookup(int index, int keyId, MCCLookupResult result) {
+        if (keyId == KeyDictionary.UNKNOWN_ID) {
+            result.setMissing(index);
+            return;
+        }
+        int i = segmentOf(keyId);
+        locks[i].lock();
+        try {
+            ConsistentCache.ItemNode node = segments[i].getNode(keyId);
+            if (node == null) {
+                result.setMissing(index);
+            } else {
+                result.setCached(index, node.getVersion(),
+                                 node.getValidUntil());
+            }
+        } finally {
+            locks[i].unlock();
+        }
+    }
+
+    @Override
+    public ConsistentCache.MCCHitResult makeMCCHit(List<String> keys) {
+        long watermark = maxInvalidationTimestamp.get();
+        List<String> missingItems = new ArrayList<>();
+        List<String> outdatedItems = new ArrayList<>();
+        List<String> hitItems = new ArrayList<>();
+
+        for (String key : keys) {
+            int keyId = keyDictionary.getId(key);
+            if (keyId == KeyDictionary.UNKNOWN_ID) {
+                missingItems.add(key);
+                continue;
+            }
+            int i = segmentOf(keyId);
+            locks[i].lock();
+            try {
+                ConsistentCache.ItemNode node = segments[i].getNode(keyId);
+                if (node == null) {
+                    missingItems.add(key);
+                } else if (node.getVersion() > watermark ||
+                        node.getValidUntil() != Long.MAX_VALUE) {
+                    outdatedItems.add(key);
+                } else {
+                    hitItems.add(key);
+                }
+            } finally {
+                locks[i].unlock();
+            }
+        }
+
+        ConsistentCache.MCCHitResult result =
+                new ConsistentCache.MCCHitResult();
+        result.setMissingItems(missingItems);
+        result.setOutdatedItems(outdatedItems);
+        result.setHitItems(hitItems);
+
+        logger.info("ShardedConsistentCache::makeMCCHit - MCCHitResult: {}",
+                    result);
+        return result;
+    }
+
+    @Override
+    public void postCacheUpdate(List<String> hitItems,
+                                List<String> evictedItems,
+                                List<ItemRecord> newItems, long timeStep) {
+        List<String>[] hitItemsBySegment = partition(hitItems);
+        List<String>[] evictedItemsBySegment = partition(evictedItems);
+        List<ItemRecord>[] newItemsBySegment = newSegmentLists();
+        // held until the segments have taken their own references, so the
+        // evictions cannot hand a new item's id to another key
+        int[] newKeyIds = new int[newItems.size()];
+        for (int k = 0; k < newKeyIds.length; k++) {
+            newKeyIds[k] = keyDictionary.intern(newItems.get(k).getKey());
+            int i = segmentOf(newKeyIds[k]);
+            if (newItemsBySegment[i] == null) {
+                newItemsBySegment[i] = new ArrayList<>();
+            }
+            newItemsBySegment[i].add(newItems.get(k));
+        }
+
+        for (int i = 0; i < segments.length; i++) {
+            if (hitItemsBySegment[i] == null &&
+                    evictedItemsBySegment[i] == null &&
+                    newItemsBySegment[i] == null) {
+                continue;
+            }
+            locks[i].lock();
+            try {
+                segments[i].postCacheUpdate(orEmpty(hitItemsBySegment[i]),
+                                            orEmpty(evictedItemsBySegment[i]),
+                                            orEmpty(newItemsBySegment[i]),
+                                            timeStep);
+            } finally {
+                locks[i].unlock();
+            }
+        }
+        keyDictionary.release(newKeyIds);
+    }
+
+    @Override
+    public void drainDroppedVersions(List<String> out) {
+        for (int i = 0; i < segments.length; i++) {
+            locks[i].lock();
+            try {
+                segments[i].drainDroppedVersions(out);
+            } finally {
+                locks[i].unlock();
+            }
+        }
+    }
+
+    @Override
+    public long getMaxInvalidationTimestamp() {
+        return maxInvalidationTimestamp.get();
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    @Override
+    public void markItems(List<String> keys) {
+        List<String>[] keysBySegment = partition(keys);
+        for (int i = 0; i < segments.length; i++) {
+            if (keysBySegment[i] == null) {
+                continue;
+            }
+            locks[i].lock();
+            try {
+                segments[i].markItems(keysBySegment[i]);
+            } finally {
+                locks[i].unlock();
+            }
+        }
+    }
+
+    @Override
+    public boolean isAllMarked() {
+        int markedItemCount = 0;
+        int itemCount = 0;
+        for (int i = 0; i < segments.length; i++) {
+            locks[i].lock();
+            try {
+                markedItemCount += segments[i].getMarkedItemCount();
+                itemCount += segments[i].getItemCount();
+            } finally {
+                locks[i].unlock();
+            }
+        }
+        return markedItemCount == itemCount;
+    }
+
+    @Override
+    public void startNewPhase() {
+        // phases are global, so all segments flip their mark together
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+        }
+        try {
+            for (ConsistentCache segment : segments) {
+                segment.startNewPhase();
+            }
+        } finally {
+            for (ReentrantLock lock : locks) {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ShardedConsistentCache{maxSize=%d, numSegments=%d, maxInvalidationTimestamp=%d}".formatted(
+                maxSize, segments.length, maxInvalidationTimestamp.get());
+    }
+
+    @VisibleForTesting
+    void put(String key, long version, int dataSize) {
+        int keyId = keyDictionary.intern(key);
+        int i = segmentOf(keyId);
+        locks[i].lock();
+        try {
+            segments[i].put(key, version, dataSize);
+        } finally {
+            locks[i].unlock();
+            keyDictionary.release(keyId);
+        }
+    }
+
+    @Override
+    public int getEntryOverhead() {
+        return ConsistentCache.ENTRY_OVERHEAD;
+    }
+
+    @Override
+    public int getItemCount() {
+        int itemCount = 0;
+        for (int i = 0; i < segments.length; i++) {
+            locks[i].lock();
+            try {
+                itemCount += segments[i].getItemCount();
+            } finally {
+                locks[i].unlock();
+            }
+        }
+        return itemCount;
+    }
+
+    private int segmentOf(int keyId) {
+        // ids are dense and sequential, scramble them across segments
+        int h = keyId * 0x9E3779B9;
+        h ^= (h >>> 16);
+        return Math.floorMod(h, segments.length);
+    }
+
+    private <T> List<T>[] newSegmentLists() {
+        @SuppressWarnings("unchecked")
+        List<T>[] lists = new List[segments.length];
+        return lists;
+    }
+
+    // keys that were never interned cannot be cached and are left out
+    private List<String>[] partition(List<String> keys) {
+        List<String>[] keysBySegment = newSegmentLists();
+        for (String key : keys) {
+            int keyId = keyDictionary.getId(key);
+            if (keyId == KeyDictionary.UNKNOWN_ID) {
+                continue;
+            }
+            int i = segmentOf(keyId);
+            if (keysBySegment[i] == null) {
+                keysBySegment[i] = new ArrayList<>();
+            }
+            keysBySegment[i].add(key);
+        }
+        return keysBySegment;
+    }
+
+    private static <T> List<T> orEmpty(List<T> list) {
+        return list == null ? List.of() : list;
+    }
+}
@@ -0,0 +1,137 @@
+package org.mccproxy.cache;
+
+import org.mccproxy.utils.IntHashSet;
+
+import java.util.function.IntConsumer;
+
+import static org.mccproxy.cache.KeyIdLists.NIL;
+
+/**
+ * The LRU eviction policy. It keeps one LRU list per power-of-two size
+ * class, over dense key ids. Size class {@code c} holds the items whose size
+ * is in {@code [2^c, 2^(c+1))}, class 0 also holds empty items.
+ * <p>
+ * {@link #selectVictims} frees a byte target by repeatedly taking the least
+ * recently used item of the smallest class whose items alone cover what is
+ * still needed, or of the largest class when no class does. So one large
+ * victim is preferred over many small ones, and every pick costs a constant
+ * number of class checks plus the kept items it has to skip. Skipping is
+ * bounded per class; only when every class ran out of its probe budget does
+ * the selection fall back to walking the classes to the end.
+ */
+class SizeClassLruIndex implements EvictionPolicy {
+    private static final int NUM_CLASSES = 31;
+    private static final int MAX_SKIPPED_PER_CLASS = 16;
+
+    private final KeyIdLists classes;
+    private int size;
+
+    SizeClassLruIndex() {
+        this(1024);
+    }
+
+    SizeClassLruIndex(int initialCapacity) {
+        classes = new KeyIdLists(NUM_CLASSES, initialCapacity);
+    }
+
+    static int sizeClassOf(int dataSize) {
+        return dataSize < 2 ? 0 : 31 - Integer.numberOfLeadingZeros(dataSize);
+    }
+
+    private static long lowerBound(int sizeClass) {
+        return sizeClass == 0 ? 0 : 1L << sizeClass;
+    }
+
+    /**
+     * Inserts the item as the most recently used of its size class, moving it
+     * to another class if its size changed.
+     */
+    @Override
+    public void onPut(int keyId, int dataSize) {
+        if (classes.unlink(keyId) == KeyIdLists.ABSENT) {
+            size++;
+        }
+        classes.linkFirst(sizeClassOf(dataSize), keyId, dataSize);
+    }
+
+    @Override
+    public void onAccess(int keyId) {
+        if (classes.contains(keyId)) {
+            classes.moveToFirst(classes.listOf(keyId), keyId);
+        }
+    }
+
+    @Override
+    public void onRemove(int keyId) {
+        if (classes.unlink(keyId) != KeyIdLists.ABSENT) {
+            size--;
+        }
+    }
+
+    boolean contains(int keyId) {
+        return classes.contains(keyId);
+    }
+
+    int size() {
+        return size;
+    }
+
+    @Override
+    public long selectVictims(IntHashSet itemsToKeep, int neededSize,
+                              IntConsumer victims) {
+        if (neededSize <= 0 || size == 0) {
+            return 0;
+        }
+        int[] cursors = new int[NUM_CLASSES];
+        for (int c = 0; c < NUM_CLASSES; c++) {
+            cursors[c] = classes.tail(c);
+        }
+        int[] skipped = new int[NUM_CLASSES];
+        boolean bounded = true;
+        long selectedSize = 0;
+
+        while (selectedSize < neededSize) {
+            int sizeClass = pickClass(cursors, skipped, bounded,
+                                      neededSize - selectedSize);
+            if (sizeClass == NIL) {
+                if (!bounded) {
+                    break;
+                }
+                // the keep set blocked every class, finish with full walks
+                bounded = false;
+                continue;
+            }
+
+            int keyId = cursors[sizeClass];
+            while (keyId != NIL && itemsToKeep.contains(keyId) &&
+                    (!bounded || skipped[sizeClass] < MAX_SKIPPED_PER_CLASS)) {
+                keyId = classes.prev(keyId);
+                skipped[sizeClass]++;
+            }
+            cursors[sizeClass] = keyId;
+            if (keyId == NIL || itemsToKeep.contains(keyId)) {
+                continue;
+            }
+            victims.accept(keyId);
+            selectedSize += classes.sizeOf(keyId);
+            cursors[sizeClass] = classes.prev(keyId);
+        }
+        return selectedSize;
+    }
+
+    private int pickClass(int[] cursors, int[] skipped, boolean bounded,
+                          long remaining) {
+        int largest = NIL;
+        for (int c = 0; c < NUM_CLASSES; c++) {
+            if (cursors[c] == NIL ||
+                    (bounded && skipped[c] >= MAX_SKIPPED_PER_CLASS)) {
+                continue;
+            }
+            if (lowerBound(c) >= remaining) {
+                return c;
+            }
+            largest = c;
+        }
+        return largest;
+    }
+}
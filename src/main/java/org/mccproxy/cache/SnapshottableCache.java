@@ -0,0 +1,36 @@
+package org.mccproxy.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * A cache whose metadata can be saved to a {@link CacheSnapshot} and restored
+ * from it, so a restarted proxy does not start cold.
+ */
+public interface SnapshottableCache extends MCCCache {
+    /**
+     * Copies the metadata of every cached item into an encoded
+     * {@link CacheSnapshot}, which {@link CacheSnapshot#write} can write
+     * once the cache is no longer locked.
+     */
+    ByteBuffer captureSnapshot(long timeStep);
+
+    /**
+     * Writes the metadata of every cached item to a {@link CacheSnapshot}
+     * file, replacing the previous snapshot.
+     */
+    default void writeSnapshot(Path path, long timeStep) throws IOException {
+        CacheSnapshot.write(path, captureSnapshot(timeStep));
+    }
+
+    /**
+     * Restores the items of a snapshot into this empty cache.
+     *
+     * @param invalidationsReplayed whether the invalidation stream is replayed
+     *                              from the snapshot's watermark, so the
+     *                              lifetimes of the items can stay open
+     */
+    CacheSnapshot.Header loadSnapshot(Path path, boolean invalidationsReplayed)
+            throws IOException;
+}
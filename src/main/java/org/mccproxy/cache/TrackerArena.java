@@ -0,0 +1,239 @@
+package org.mccproxy.cache;
+
+import org.mccproxy.ml.RawFeature;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Arrays;
+
+/**
+ * Keeps the access bitmaps of all items of a cache in one off-heap memory
+ * segment, so they are never scanned or copied by the garbage collector.
+ * Every item owns a fixed-stride slot holding its read words followed by its
+ * write words; with the default window of 256 steps a slot is exactly one
+ * 64-byte cache line. Freed slots are reused, and the segment doubles when
+ * it runs out of slots.
+ * <p>
+ * The bitmaps are rings with the layout and the lazy normalization of
+ * {@link RingBufferAccessTracker}: every time step has a fixed bit, and the
+ * features are read as of the arena's {@link LogicalClock}. This class is not
+ * thread-safe.
+ */
+public class TrackerArena {
+    private static final long CACHE_LINE_SIZE = 64;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int words; // words per bitmap
+    private final int bits; // bits in each ring
+    private final LogicalClock clock;
+    // every segment comes from an automatic arena of its own, so a replaced
+    // segment is freed by the garbage collector once it is unreachable
+    private MemorySegment segment;
+    // time steps of the last update of every slot
+    private long[] lastUpdateTimeSteps;
+    // stack of free slots below capacity
+    private int[] freeSlots;
+    private int freeCount;
+    private int capacity;
+
+    public TrackerArena(int windowSize, LogicalClock clock) {
+        this.words = Math.max((windowSize + 63) / 64, 1);
+        this.bits = words * 64;
+        this.clock = clock;
+        this.freeSlots = new int[0];
+        this.lastUpdateTimeSteps = new long[0];
+        this.segment = MemorySegment.NULL;
+        grow(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @return the tracker of a new slot with no accesses, synced to the
+     * given time step
+     */
+    public Slot allocate(long timeStep) {
+        if (freeCount == 0) {
+            grow(capacity * 2);
+        }
+        int slot = freeSlots[--freeCount];
+        segment.asSlice(offsetOf(slot, 0), 2L * words * Long.BYTES)
+                .fill((byte) 0);
+        lastUpdateTimeSteps[slot] = timeStep;
+        return new Slot(slot);
+    }
+
+    /**
+     * Returns the slot of the tracker to the arena, the tracker must not be
+     * used afterwards.
+     */
+    public void free(Slot tracker) {
+        freeSlots[freeCount++] = tracker.slot;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return capacity - freeCount;
+    }
+
+    // off-heap bytes of every slot
+    public long slotSize() {
+        return 2L * words * Long.BYTES;
+    }
+
+    private void grow(int newCapacity) {
+        MemorySegment newSegment = Arena.ofAuto()
+                .allocate(newCapacity * slotSize(), CACHE_LINE_SIZE);
+        MemorySegment.copy(segment, 0, newSegment, 0, segment.byteSize());
+        segment = newSegment;
+        lastUpdateTimeSteps = Arrays.copyOf(lastUpdateTimeSteps, newCapacity);
+
+        freeSlots = Arrays.copyOf(freeSlots, newCapacity);
+        // the lowest slots are handed out first
+        for (int slot = newCapacity - 1; slot >= capacity; slot--) {
+            freeSlots[freeCount++] = slot;
+        }
+        capacity = newCapacity;
+    }
+
+    // byte offset of a word of the slot, the write words follow the read ones
+    private long offsetOf(int slot, int word) {
+        return ((long) slot * 2 * words + word) * Long.BYTES;
+    }
+
+    private long getWord(int slot, int word) {
+        return segment.get(ValueLayout.JAVA_LONG, offsetOf(slot, word));
+    }
+
+    private void setWord(int slot, int word, long value) {
+        segment.set(ValueLayout.JAVA_LONG, offsetOf(slot, word), value);
+    }
+
+    // see RingBufferAccessTracker for the ring layout
+    private int positionOf(long timeStep) {
+        return (int) Math.floorMod(-timeStep, (long) bits);
+    }
+
+    private void record(int slot, int firstWord, long timeStep) {
+        syncTimeStep(slot, timeStep);
+        if (lastUpdateTimeSteps[slot] - timeStep < bits) {
+            int position = positionOf(timeStep);
+            int word = firstWord + (position >>> 6);
+            setWord(slot, word, getWord(slot, word) | 1L << position);
+        }
+    }
+
+    private void syncTimeStep(int slot, long timeStep) {
+        long steps = timeStep - lastUpdateTimeSteps[slot];
+        if (steps <= 0) {
+            return;
+        }
+        if (steps >= bits) {
+            segment.asSlice(offsetOf(slot, 0), slotSize()).fill((byte) 0);
+        } else {
+            // the skipped steps and the new one, ending below the last step
+            int start = positionOf(timeStep);
+            clear(slot, 0, start, (int) steps);
+            clear(slot, words, start, (int) steps);
+        }
+        lastUpdateTimeSteps[slot] = timeStep;
+    }
+
+    // clears length bits of a ring from position start on, wrapping around
+    private void clear(int slot, int firstWord, int start, int length) {
+        int end = start + length;
+        if (end > bits) {
+            clearRange(slot, firstWord, start, bits);
+            clearRange(slot, firstWord, 0, end - bits);
+        } else {
+            clearRange(slot, firstWord, start, end);
+        }
+    }
+
+    // see RingBufferAccessTracker.clearRange, one word access per word
+    private void clearRange(int slot, int firstWord, int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        int first = firstWord + (from >>> 6);
+        int last = firstWord + ((to - 1) >>> 6);
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if (first == last) {
+            setWord(slot, first,
+                    getWord(slot, first) & ~(firstMask & lastMask));
+            return;
+        }
+        setWord(slot, first, getWord(slot, first) & ~firstMask);
+        for (int word = first + 1; word < last; word++) {
+            setWord(slot, word, 0L);
+        }
+        setWord(slot, last, getWord(slot, last) & ~lastMask);
+    }
+
+    private RawFeature toRawFeature(int slot) {
+        long now = Math.max(lastUpdateTimeSteps[slot], clock.now());
+        long stale = now - lastUpdateTimeSteps[slot];
+        int start = positionOf(now);
+        RawFeature.Builder builder = RawFeature.newBuilder();
+        for (int i = 0; i < words; i++) {
+            builder.addReadAccesses(
+                    wordAt(slot, 0, start + i * 64, stale - i * 64L));
+        }
+        for (int i = 0; i < words; i++) {
+            builder.addWriteAccesses(
+                    wordAt(slot, words, start + i * 64, stale - i * 64L));
+        }
+        return builder.build();
+    }
+
+    // the 64 bits from the given position on, wrapping around the ring, with
+    // the lowest stale ones cleared
+    private long wordAt(int slot, int firstWord, int position, long stale) {
+        if (stale >= 64) {
+            return 0L;
+        }
+        position %= bits;
+        int word = position >>> 6;
+        int offset = position & 63;
+        long value = getWord(slot, firstWord + word);
+        if (offset != 0) {
+            value = value >>> offset |
+                    getWord(slot, firstWord + (word + 1) % words) << -offset;
+        }
+        return stale > 0 ? value & -1L << stale : value;
+    }
+
+    /**
+     * The tracker of one slot of the arena.
+     */
+    public class Slot implements AccessTracker {
+        private final int slot;
+
+        private Slot(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public void recordRead(long timeStep) {
+            record(slot, 0, timeStep);
+        }
+
+        @Override
+        public void recordWrite(long timeStep) {
+            record(slot, words, timeStep);
+        }
+
+        @Override
+        public void syncTimeStep(long timeStep) {
+            TrackerArena.this.syncTimeStep(slot, timeStep);
+        }
+
+        @Override
+        public RawFeature toRawFeature() {
+            return TrackerArena.this.toRawFeature(slot);
+        }
+    }
+}
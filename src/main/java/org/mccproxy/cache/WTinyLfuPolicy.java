@@ -0,0 +1,177 @@
+package org.mccproxy.cache;
+
+import org.mccproxy.utils.IntHashSet;
+
+import java.util.function.IntConsumer;
+
+import static org.mccproxy.cache.KeyIdLists.ABSENT;
+import static org.mccproxy.cache.KeyIdLists.NIL;
+
+/**
+ * The W-TinyLFU eviction policy. New items enter a small LRU window; the main
+ * space is a segmented LRU with a probation and a protected segment. Once the
+ * window grows beyond its share, its least recently used item moves to the
+ * main space. When the main space is full, it only gets in if the frequency
+ * sketch has seen it more often than the probation victim it would displace,
+ * so a scan cannot flush popular items.
+ * <p>
+ * The cache decides when to insert, so admission is settled while victims
+ * are selected rather than on insertion. The sketch counts keys rather than
+ * ids: an id is handed to another key once the cache evicted its item, while
+ * the frequency of a key has to outlive its eviction to be of any use.
+ */
+class WTinyLfuPolicy implements EvictionPolicy {
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+    // selected victims that have not been removed yet
+    private static final int PENDING = 3;
+
+    private static final int WINDOW_PERCENT = 1;
+    private static final int PROTECTED_PERCENT = 80;
+
+    private final KeyIdLists lists;
+    private final FrequencySketch sketch;
+    // null if ids are never handed to another key
+    private final KeyDictionary keyDictionary;
+    private int size;
+
+    WTinyLfuPolicy(KeyDictionary keyDictionary) {
+        this(1024, keyDictionary);
+    }
+
+    WTinyLfuPolicy(int initialCapacity, KeyDictionary keyDictionary) {
+        lists = new KeyIdLists(4, initialCapacity);
+        sketch = new FrequencySketch(initialCapacity);
+        this.keyDictionary = keyDictionary;
+    }
+
+    private int hashOf(int keyId) {
+        return keyDictionary == null ? keyId :
+                keyDictionary.getKey(keyId).hashCode();
+    }
+
+    @Override
+    public void onPut(int keyId, int dataSize) {
+        sketch.increment(hashOf(keyId));
+        if (lists.contains(keyId)) {
+            lists.resize(keyId, dataSize);
+            touch(keyId);
+            return;
+        }
+        lists.linkFirst(WINDOW, keyId, dataSize);
+        size++;
+        sketch.ensureCapacity(size);
+    }
+
+    @Override
+    public void onAccess(int keyId) {
+        if (lists.contains(keyId)) {
+            sketch.increment(hashOf(keyId));
+            touch(keyId);
+        }
+    }
+
+    @Override
+    public void onRemove(int keyId) {
+        if (lists.unlink(keyId) != ABSENT) {
+            size--;
+        }
+    }
+
+    private void touch(int keyId) {
+        if (lists.listOf(keyId) == WINDOW) {
+            lists.moveToFirst(WINDOW, keyId);
+            return;
+        }
+        lists.moveToFirst(PROTECTED, keyId);
+        long mainBytes = lists.bytes(PROBATION) + lists.bytes(PROTECTED);
+        while (lists.count(PROTECTED) > 1 &&
+                lists.bytes(PROTECTED) * 100 > mainBytes * PROTECTED_PERCENT) {
+            lists.moveToFirst(PROBATION, lists.tail(PROTECTED));
+        }
+    }
+
+    @Override
+    public long selectVictims(IntHashSet itemsToKeep, int neededSize,
+                              IntConsumer victims) {
+        // victims of an earlier call that stayed cached are chosen first
+        for (int keyId = lists.head(PENDING); keyId != NIL;
+             keyId = lists.head(PENDING)) {
+            int dataSize = lists.sizeOf(keyId);
+            lists.unlink(keyId);
+            lists.linkLast(PROBATION, keyId, dataSize);
+        }
+
+        // what stays after the eviction, without the window
+        long mainCapacity = (totalBytes() - neededSize) *
+                (100 - WINDOW_PERCENT) / 100;
+        long selectedSize = 0;
+        // each step selects, admits or rotates a kept item
+        long steps = 3L * size + 16;
+        // kept items rotated per list, a list is skipped once all were seen
+        int[] keptRotations = new int[PROTECTED + 1];
+        while (selectedSize < neededSize && steps-- > 0) {
+            int candidate = tailOf(WINDOW, keptRotations);
+            int victim = tailOf(PROBATION, keptRotations);
+            if (victim == NIL) {
+                victim = tailOf(PROTECTED, keptRotations);
+            }
+            if (candidate != NIL && itemsToKeep.contains(candidate)) {
+                lists.moveToFirst(WINDOW, candidate);
+                keptRotations[WINDOW]++;
+                continue;
+            }
+            if (victim != NIL && itemsToKeep.contains(victim)) {
+                int list = lists.listOf(victim);
+                lists.moveToFirst(list, victim);
+                keptRotations[list]++;
+                continue;
+            }
+
+            if (candidate != NIL && isWindowFull()) {
+                long mainBytes = lists.bytes(PROBATION) + lists.bytes(PROTECTED);
+                if (victim == NIL ||
+                        mainBytes + lists.sizeOf(candidate) <= mainCapacity) {
+                    // the main space still has room for the candidate
+                    lists.moveToFirst(PROBATION, candidate);
+                } else if (sketch.frequency(hashOf(candidate)) >
+                        sketch.frequency(hashOf(victim))) {
+                    lists.moveToFirst(PROBATION, candidate);
+                    selectedSize += select(victim, victims);
+                } else {
+                    selectedSize += select(candidate, victims);
+                }
+            } else if (victim != NIL) {
+                selectedSize += select(victim, victims);
+            } else if (candidate != NIL) {
+                selectedSize += select(candidate, victims);
+            } else {
+                break;
+            }
+        }
+        return selectedSize;
+    }
+
+    private int tailOf(int list, int[] keptRotations) {
+        return keptRotations[list] < lists.count(list) ? lists.tail(list) :
+                NIL;
+    }
+
+    private long totalBytes() {
+        return lists.bytes(WINDOW) + lists.bytes(PROBATION) +
+                lists.bytes(PROTECTED);
+    }
+
+    private boolean isWindowFull() {
+        return lists.bytes(WINDOW) * 100 > totalBytes() * WINDOW_PERCENT;
+    }
+
+    private int select(int keyId, IntConsumer victims) {
+        int dataSize = lists.sizeOf(keyId);
+        lists.unlink(keyId);
+        lists.linkLast(PENDING, keyId, dataSize);
+        victims.accept(keyId);
+        return dataSize;
+    }
+}
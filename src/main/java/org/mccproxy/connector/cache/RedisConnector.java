@@ -4,6 +4,8 @@ import org.mccproxy.proxy.ItemRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
 import redis.clients.jedis.Pipeline;
 import redis.clients.jedis.Response;
 import redis.clients.jedis.Transaction;
@@ -12,7 +14,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * A connector that connects to a Redis cache.
+ * A connector that connects to a Redis cache. Every batch borrows a
+ * connection from a pool, so batches of different threads run in parallel.
  */
 public class RedisConnector implements CacheConnector {
     private static Logger logger =
@@ -20,23 +23,32 @@ public class RedisConnector implements CacheConnector {
 
     private String host;
     private int port;
-    private Jedis jedis;
+    private int maxConnections;
+    private JedisPool pool;
 
     public RedisConnector(String host, int port) {
+        this(host, port, 1);
+    }
+
+    public RedisConnector(String host, int port, int maxConnections) {
         this.host = host;
         this.port = port;
+        this.maxConnections = maxConnections;
     }
 
     @Override
     public void connect() {
-        this.jedis = new Jedis(this.host, this.port);
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        poolConfig.setMaxTotal(this.maxConnections);
+        poolConfig.setMaxIdle(this.maxConnections);
+        this.pool = new JedisPool(poolConfig, this.host, this.port);
         logger.info("Connected to Redis cache at {}:{}", this.host, this.port);
     }
 
     @Override
     public void disconnect() {
-        if (this.jedis != null) {
-            this.jedis.close();
+        if (this.pool != null) {
+            this.pool.close();
             logger.info("Disconnected from Redis cache at {}:{}", this.host,
                         this.port);
         } else {
@@ -49,7 +61,7 @@ public class RedisConnector implements CacheConnector {
                                      List<String> deleteKeys,
                                      List<ItemRecord> putKeyValues) {
         List<Object> responses = null;
-        try {
+        try (Jedis jedis = pool.getResource()) {
             Transaction transaction = jedis.multi();
             for (String key : selectKeys) {
                 transaction.get(key);
@@ -71,37 +83,43 @@ public class RedisConnector implements CacheConnector {
 
     @Override
     public void batchInsert(List<String> keys, List<String> values) {
-        Pipeline pipeline = jedis.pipelined();
-        for (int i = 0; i < keys.size(); i++) {
-            pipeline.set(keys.get(i), values.get(i));
+        try (Jedis jedis = pool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            for (int i = 0; i < keys.size(); i++) {
+                pipeline.set(keys.get(i), values.get(i));
+            }
+            pipeline.sync();
+            logger.info("Inserted key-value pairs into Redis cache in batch");
         }
-        pipeline.sync();
-        logger.info("Inserted key-value pairs into Redis cache in batch");
     }
 
     @Override
     public List<String> batchSelect(List<String> keys) {
-        Pipeline pipeline = jedis.pipelined();
-        List<Response<String>> responses = new ArrayList<>();
-        for (String key : keys) {
-            responses.add(pipeline.get(key));
-        }
-        pipeline.sync();
-        logger.info("Selected key-value pairs from Redis cache in batch");
-        List<String> results = new ArrayList<>();
-        for (Response<String> response : responses) {
-            results.add(response.get());
+        try (Jedis jedis = pool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            List<Response<String>> responses = new ArrayList<>();
+            for (String key : keys) {
+                responses.add(pipeline.get(key));
+            }
+            pipeline.sync();
+            logger.info("Selected key-value pairs from Redis cache in batch");
+            List<String> results = new ArrayList<>();
+            for (Response<String> response : responses) {
+                results.add(response.get());
+            }
+            return results;
         }
-        return results;
     }
 
     public void batchDelete(List<String> keys) {
-        Pipeline pipeline = jedis.pipelined();
-        for (String key : keys) {
-            pipeline.del(key);
+        try (Jedis jedis = pool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            for (String key : keys) {
+                pipeline.del(key);
+            }
+            pipeline.sync();
+            logger.info("Deleted key-value pairs from Redis cache in batch");
         }
-        pipeline.sync();
-        logger.info("Deleted key-value pairs from Redis cache in batch");
     }
 
 }
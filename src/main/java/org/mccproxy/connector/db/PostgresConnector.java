@@ -9,31 +9,52 @@ import org.slf4j.LoggerFactory;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
+/**
+ * A connector to a PostgreSQL database. It opens maxConnections connections,
+ * and every batch takes one of them, so up to maxConnections batches of
+ * different threads run in parallel.
+ */
 public class PostgresConnector implements DBConnector {
     static private Logger logger =
             LoggerFactory.getLogger(PostgresConnector.class.getName());
     private String url;
     private String user;
     private String password;
-    private Connection connection;
+    private int maxConnections;
+    // the connections that no batch is using
+    private BlockingQueue<Connection> connections;
 
     public PostgresConnector(String url, String user, String password) {
+        this(url, user, password, 1);
+    }
+
+    public PostgresConnector(String url, String user, String password,
+                             int maxConnections) {
         this.url = url;
         this.user = user;
         this.password = password;
+        this.maxConnections = maxConnections;
     }
 
     @VisibleForTesting
     PostgresConnector(Connection connection) {
-        this.connection = connection;
+        this.maxConnections = 1;
+        this.connections = new ArrayBlockingQueue<>(1);
+        this.connections.add(connection);
     }
 
     @Override
     public void connect() {
+        this.connections = new ArrayBlockingQueue<>(this.maxConnections);
         try {
-            this.connection = DriverManager.getConnection(this.url, this.user,
-                                                          this.password);
+            for (int i = 0; i < this.maxConnections; i++) {
+                this.connections.add(
+                        DriverManager.getConnection(this.url, this.user,
+                                                    this.password));
+            }
             logger.info("Connected to PostgreSQL database at {}", this.url);
         } catch (SQLException e) {
             logger.info("Failed to connect to PostgreSQL database at {}",
@@ -44,9 +65,11 @@ public class PostgresConnector implements DBConnector {
 
     @Override
     public void disconnect() {
-        if (this.connection != null) {
+        if (this.connections != null) {
             try {
-                this.connection.close();
+                for (Connection connection : this.connections) {
+                    connection.close();
+                }
                 logger.info("Disconnected from PostgreSQL database at {}",
                             this.url);
             } catch (SQLException e) {
@@ -93,7 +116,16 @@ public class PostgresConnector implements DBConnector {
     @Override
     public List<ItemRecord> batchSelect(String table, List<String> keys) {
         List<ItemRecord> results = new ArrayList<>();
-        try (Statement stmt = this.connection.createStatement()) {
+        Connection connection;
+        try {
+            connection = this.connections.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.info(
+                    "Interrupted while waiting for a PostgreSQL connection");
+            return results;
+        }
+        try (Statement stmt = connection.createStatement()) {
             String joinedKeys = String.join("', '",
                                             keys); // Join the keys with ', ' and wrap each key in single quotes
             String sql = String.format(
@@ -115,6 +147,8 @@ public class PostgresConnector implements DBConnector {
             logger.info(
                     "Failed to select key-value pairs from PostgreSQL database in batch",
                     e.getCause());
+        } finally {
+            this.connections.add(connection);
         }
         return results;
     }
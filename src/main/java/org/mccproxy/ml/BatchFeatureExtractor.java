@@ -0,0 +1,108 @@
+package org.mccproxy.ml;
+
+import org.mccproxy.cache.AccessTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Computes the features of {@link FeatureExtractor} for a batch of items at
+ * once. The bitmaps are laid out in columns, word j of item i at
+ * words[j * items + i], so a kernel reads the same word of neighbouring items
+ * together. The kernel uses the Vector API when it was built with the vector
+ * profile and the jdk.incubator.vector module is added to the JVM, and
+ * computes one item at a time otherwise.
+ */
+public final class BatchFeatureExtractor {
+    private static final Logger logger =
+            LoggerFactory.getLogger(BatchFeatureExtractor.class.getName());
+
+    interface Kernel {
+        /**
+         * Writes the FEATURES_PER_KIND features of one kind of accesses of
+         * the items from..to to values, NUM_FEATURES per item from offset on.
+         */
+        void extract(long[] words, int wordCount, int items, int from, int to,
+                     float[] values, int offset);
+    }
+
+    private static final String VECTOR_KERNEL =
+            "org.mccproxy.ml.VectorFeatureKernel";
+
+    static final Kernel SCALAR_KERNEL = BatchFeatureExtractor::extractScalar;
+    static final Kernel KERNEL = loadKernel();
+
+    private BatchFeatureExtractor() {
+    }
+
+    /**
+     * Writes the NUM_FEATURES features of every item to values, item i from
+     * i * NUM_FEATURES on.
+     */
+    public static void extract(List<AccessTracker> accessTrackers,
+                               float[] values) {
+        int items = accessTrackers.size();
+        RawFeature[] rawFeatures = new RawFeature[items];
+        int wordCount = 0;
+        for (int i = 0; i < items; i++) {
+            rawFeatures[i] = accessTrackers.get(i).toRawFeature();
+            wordCount = Math.max(wordCount, Math.max(
+                    rawFeatures[i].getReadAccessesCount(),
+                    rawFeatures[i].getWriteAccessesCount()));
+        }
+        // a shorter bitmap is padded with steps without accesses
+        long[] readWords = new long[wordCount * items];
+        long[] writeWords = new long[wordCount * items];
+        for (int i = 0; i < items; i++) {
+            RawFeature rawFeature = rawFeatures[i];
+            for (int j = 0; j < rawFeature.getReadAccessesCount(); j++) {
+                readWords[j * items + i] = rawFeature.getReadAccesses(j);
+            }
+            for (int j = 0; j < rawFeature.getWriteAccessesCount(); j++) {
+                writeWords[j * items + i] = rawFeature.getWriteAccesses(j);
+            }
+        }
+        extract(KERNEL, readWords, writeWords, wordCount, items, values);
+    }
+
+    static void extract(Kernel kernel, long[] readWords, long[] writeWords,
+                        int wordCount, int items, float[] values) {
+        kernel.extract(readWords, wordCount, items, 0, items, values, 0);
+        kernel.extract(writeWords, wordCount, items, 0, items, values,
+                       FeatureExtractor.FEATURES_PER_KIND);
+    }
+
+    private static void extractScalar(long[] words, int wordCount, int items,
+                                      int from, int to, float[] values,
+                                      int offset) {
+        long[] itemWords = new long[wordCount];
+        for (int i = from; i < to; i++) {
+            for (int j = 0; j < wordCount; j++) {
+                itemWords[j] = words[j * items + i];
+            }
+            FeatureExtractor.extract(itemWords, wordCount, values,
+                                     i * FeatureExtractor.NUM_FEATURES +
+                                             offset);
+        }
+    }
+
+    // the vector kernel is compiled separately, so it is only referenced by
+    // name
+    private static Kernel loadKernel() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            logger.info(
+                    "BatchFeatureExtractor::loadKernel - jdk.incubator.vector is not available, features are computed one item at a time");
+            return SCALAR_KERNEL;
+        }
+        try {
+            return (Kernel) Class.forName(VECTOR_KERNEL)
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            logger.info(
+                    "BatchFeatureExtractor::loadKernel - {} is not available, features are computed one item at a time",
+                    VECTOR_KERNEL);
+            return SCALAR_KERNEL;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package org.mccproxy.ml;
+
+import org.mccproxy.cache.AccessTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Answers with the fallback predictor when the primary one fails, for
+ * example when a call to the ML service misses its deadline. After
+ * failureThreshold failures in a row the primary predictor is not asked for
+ * openMillis; then a single batch tries it again, and the breaker closes if
+ * that batch succeeds.
+ */
+public class CircuitBreakingObsoleteItemsPredictor
+        extends ObsoleteItemsPredictor {
+    private static final Logger logger = LoggerFactory.getLogger(
+            CircuitBreakingObsoleteItemsPredictor.class.getName());
+
+    private final ObsoleteItemsPredictor predictor;
+    private final ObsoleteItemsPredictor fallback;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongSupplier nanoTime;
+
+    private int failures;
+    // while open, the primary predictor is not asked before this time
+    private long openUntilNanos;
+    private boolean open;
+    // a batch is trying the primary predictor after the breaker was open
+    private boolean probing;
+
+    public CircuitBreakingObsoleteItemsPredictor(
+            ObsoleteItemsPredictor predictor, ObsoleteItemsPredictor fallback,
+            int failureThreshold, long openMillis) {
+        this(predictor, fallback, failureThreshold, openMillis,
+             System::nanoTime);
+    }
+
+    CircuitBreakingObsoleteItemsPredictor(ObsoleteItemsPredictor predictor,
+                                          ObsoleteItemsPredictor fallback,
+                                          int failureThreshold,
+                                          long openMillis,
+                                          LongSupplier nanoTime) {
+        super();
+        this.predictor = predictor;
+        this.fallback = fallback;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.nanoTime = nanoTime;
+    }
+
+    @Override
+    public List<Boolean> predictObsoleteItems(
+            List<AccessTracker> accessTrackers) {
+        if (!allowRequest()) {
+            return fallback.predictObsoleteItems(accessTrackers);
+        }
+        List<Boolean> isObsolete;
+        try {
+            isObsolete = predictor.predictObsoleteItems(accessTrackers);
+        } catch (RuntimeException e) {
+            onFailure(e);
+            return fallback.predictObsoleteItems(accessTrackers);
+        }
+        onSuccess();
+        return isObsolete;
+    }
+
+    @Override
+    public CompletableFuture<List<Boolean>> predictObsoleteItemsAsync(
+            List<AccessTracker> accessTrackers) {
+        // the trackers may change before the primary predictor answers, so
+        // the fallback verdicts are taken now
+        List<Boolean> fallbackVerdicts =
+                fallback.predictObsoleteItems(accessTrackers);
+        if (!allowRequest()) {
+            return CompletableFuture.completedFuture(fallbackVerdicts);
+        }
+        CompletableFuture<List<Boolean>> verdicts;
+        try {
+            verdicts = predictor.predictObsoleteItemsAsync(accessTrackers);
+        } catch (RuntimeException e) {
+            onFailure(e);
+            return CompletableFuture.completedFuture(fallbackVerdicts);
+        }
+        return verdicts.handle((isObsolete, t) -> {
+            if (t != null) {
+                onFailure(t);
+                return fallbackVerdicts;
+            }
+            onSuccess();
+            return isObsolete;
+        });
+    }
+
+    @Override
+    public boolean isAsync() {
+        return predictor.isAsync();
+    }
+
+    synchronized boolean isOpen() {
+        return open;
+    }
+
+    private synchronized boolean allowRequest() {
+        if (!open) {
+            return true;
+        }
+        if (probing || nanoTime.getAsLong() - openUntilNanos < 0) {
+            return false;
+        }
+        probing = true;
+        return true;
+    }
+
+    private synchronized void onSuccess() {
+        if (open) {
+            logger.info(
+                    "CircuitBreakingObsoleteItemsPredictor::onSuccess - Closed, the predictor answers again");
+        }
+        failures = 0;
+        open = false;
+        probing = false;
+    }
+
+    private synchronized void onFailure(Throwable t) {
+        failures++;
+        probing = false;
+        if (open || failures >= failureThreshold) {
+            if (!open) {
+                logger.warn(
+                        "CircuitBreakingObsoleteItemsPredictor::onFailure - Open after {} failures, falling back for {} ms",
+                        failures, TimeUnit.NANOSECONDS.toMillis(openNanos), t);
+            }
+            open = true;
+            openUntilNanos = nanoTime.getAsLong() + openNanos;
+        } else {
+            logger.warn(
+                    "CircuitBreakingObsoleteItemsPredictor::onFailure - Prediction failed, falling back: {}",
+                    t.toString());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package org.mccproxy.ml;
+
+import org.mccproxy.cache.AccessTracker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Computes the features the obsolete item models are trained on from the
+ * access bitmaps of an item, in the order of FeatureExtractor.py. For reads
+ * and then for writes:
+ * <ul>
+ *   <li>the number of accesses in the last 30, 50, 100 and 200 steps,</li>
+ *   <li>the distances between the six most recent accesses, the first one
+ *   counted from one step into the future, zero if there are fewer
+ *   accesses,</li>
+ *   <li>the differences between neighbouring distances.</li>
+ * </ul>
+ * The bitmaps hold the most recent step in bit 0 of word 0 and are read as
+ * unsigned words.
+ */
+public final class FeatureExtractor {
+    static final int[] WINDOWS = {30, 50, 100, 200};
+    static final int NUM_DELTAS = 6;
+    static final int FEATURES_PER_KIND =
+            WINDOWS.length + 2 * NUM_DELTAS - 1;
+    public static final int NUM_FEATURES = 2 * FEATURES_PER_KIND;
+    public static final List<String> FEATURE_NAMES = featureNames();
+
+    private FeatureExtractor() {
+    }
+
+    public static ExtractedFeature extract(AccessTracker accessTracker) {
+        float[] values = new float[NUM_FEATURES];
+        extract(accessTracker.toRawFeature(), values, 0);
+        ExtractedFeature.Builder builder = ExtractedFeature.newBuilder();
+        for (float value : values) {
+            builder.addValues(value);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Writes the NUM_FEATURES features of the item into values from offset
+     * on.
+     */
+    public static void extract(RawFeature rawFeature, float[] values,
+                               int offset) {
+        long[] words = new long[Math.max(rawFeature.getReadAccessesCount(),
+                                         rawFeature.getWriteAccessesCount())];
+        int readWords = rawFeature.getReadAccessesCount();
+        for (int i = 0; i < readWords; i++) {
+            words[i] = rawFeature.getReadAccesses(i);
+        }
+        extract(words, readWords, values, offset);
+        int writeWords = rawFeature.getWriteAccessesCount();
+        for (int i = 0; i < writeWords; i++) {
+            words[i] = rawFeature.getWriteAccesses(i);
+        }
+        extract(words, writeWords, values, offset + FEATURES_PER_KIND);
+    }
+
+    // writes the FEATURES_PER_KIND features of one kind of accesses
+    static void extract(long[] words, int length, float[] values,
+                        int offset) {
+        for (int window : WINDOWS) {
+            values[offset++] = countAccesses(words, length, window);
+        }
+        int deltaOffset = offset;
+        offset += stepsBetweenAccesses(words, length, values, offset);
+        while (offset < deltaOffset + NUM_DELTAS) {
+            values[offset++] = 0;
+        }
+        for (int i = 0; i < NUM_DELTAS - 1; i++) {
+            values[offset++] = values[deltaOffset + i] -
+                    values[deltaOffset + i + 1];
+        }
+    }
+
+    // the accesses in the last k steps
+    static int countAccesses(long[] words, int length, int k) {
+        int fullWords = Math.min(length, k / 64);
+        int count = 0;
+        for (int i = 0; i < fullWords; i++) {
+            count += Long.bitCount(words[i]);
+        }
+        if (k % 64 != 0 && length > k / 64) {
+            count += Long.bitCount(words[k / 64] & (1L << k % 64) - 1);
+        }
+        return count;
+    }
+
+    // writes the distances between the most recent accesses, returns how
+    // many there are
+    static int stepsBetweenAccesses(long[] words, int length, float[] values,
+                                    int offset) {
+        int lastPosition = -1;
+        int count = 0;
+        for (int j = 0; j < length && count < NUM_DELTAS; j++) {
+            long mask = words[j];
+            while (mask != 0 && count < NUM_DELTAS) {
+                int position = Long.numberOfTrailingZeros(mask) + j * 64;
+                values[offset + count++] = position - lastPosition;
+                lastPosition = position;
+                mask &= mask - 1;
+            }
+        }
+        return count;
+    }
+
+    private static List<String> featureNames() {
+        List<String> names = new ArrayList<>(NUM_FEATURES);
+        for (String kind : new String[]{"read", "write"}) {
+            for (int window : WINDOWS) {
+                names.add(kind + "_arrive_times_p" + window);
+            }
+            for (int i = 0; i < NUM_DELTAS; i++) {
+                names.add(kind + "_p_delta" + i);
+            }
+            for (int i = 0; i < NUM_DELTAS - 1; i++) {
+                names.add(kind + "_p_delta" + i + "_delta" + (i + 1));
+            }
+        }
+        return Collections.unmodifiableList(names);
+    }
+}
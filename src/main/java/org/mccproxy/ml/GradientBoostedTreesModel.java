@@ -0,0 +1,105 @@
+package org.mccproxy.ml;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * The probability is sigmoid(baseScore + the sum of one leaf value per tree),
+ * with the learning rate folded into the leaf values:
+ * <pre>
+ *   "base_score": double,
+ *   "trees": [{"feature": [int], "threshold": [double],
+ *              "left": [int], "right": [int], "value": [double]}]
+ * </pre>
+ * Every tree lists its nodes in arrays, node 0 being the root. A node with a
+ * left child of -1 is a leaf; otherwise the walk goes left when the feature,
+ * an index into the model's features, is at most the threshold.
+ */
+public class GradientBoostedTreesModel implements ObsoleteItemsModel {
+    private final double baseScore;
+    private final double threshold;
+    // the nodes of all trees, a tree's child indexes are relative to its root
+    private final int[] roots;
+    private final int[] features; // index of the extracted feature
+    private final double[] thresholds;
+    private final int[] lefts;
+    private final int[] rights;
+    private final double[] values;
+
+    private GradientBoostedTreesModel(double baseScore, double threshold,
+                                      int[] roots, int[] features,
+                                      double[] thresholds, int[] lefts,
+                                      int[] rights, double[] values) {
+        this.baseScore = baseScore;
+        this.threshold = threshold;
+        this.roots = roots;
+        this.features = features;
+        this.thresholds = thresholds;
+        this.lefts = lefts;
+        this.rights = rights;
+        this.values = values;
+    }
+
+    static GradientBoostedTreesModel fromJson(JsonNode model,
+                                              int[] featureIndexes,
+                                              double threshold) {
+        JsonNode trees = model.path("trees");
+        int nodeCount = 0;
+        for (JsonNode tree : trees) {
+            nodeCount += tree.path("left").size();
+        }
+        int[] roots = new int[trees.size()];
+        int[] features = new int[nodeCount];
+        double[] thresholds = new double[nodeCount];
+        int[] lefts = new int[nodeCount];
+        int[] rights = new int[nodeCount];
+        double[] values = new double[nodeCount];
+
+        int root = 0;
+        for (int t = 0; t < trees.size(); t++) {
+            JsonNode tree = trees.get(t);
+            int size = tree.path("left").size();
+            roots[t] = root;
+            for (int i = 0; i < size; i++) {
+                int node = root + i;
+                lefts[node] = tree.path("left").get(i).asInt();
+                rights[node] = tree.path("right").get(i).asInt();
+                values[node] = tree.path("value").get(i).asDouble();
+                if (lefts[node] == -1) {
+                    continue;
+                }
+                // children follow their parent, so every walk ends
+                if (lefts[node] <= i || lefts[node] >= size ||
+                        rights[node] <= i || rights[node] >= size) {
+                    throw new IllegalArgumentException(
+                            "Invalid child of node " + i + " in tree " + t);
+                }
+                features[node] =
+                        featureIndexes[tree.path("feature").get(i).asInt()];
+                thresholds[node] = tree.path("threshold").get(i).asDouble();
+            }
+            root += size;
+        }
+        return new GradientBoostedTreesModel(
+                model.path("base_score").asDouble(), threshold, roots,
+                features, thresholds, lefts, rights, values);
+    }
+
+    @Override
+    public double score(float[] features, int offset) {
+        double sum = baseScore;
+        for (int root : roots) {
+            int node = root;
+            while (lefts[node] != -1) {
+                node = root + (features[offset + this.features[node]] <=
+                        thresholds[node] ? lefts[node] : rights[node]);
+            }
+            sum += values[node];
+        }
+        return ObsoleteItemsModel.sigmoid(sum);
+    }
+
+    @Override
+    public double getThreshold() {
+        return threshold;
+    }
+}
@@ -0,0 +1,45 @@
+package org.mccproxy.ml;
+
+import org.mccproxy.cache.AccessTracker;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deems an item obsolete if it was not read in the last idleSteps steps and
+ * was written since its last read, so its next read would miss anyway. Items
+ * without any access in the window are left to the LRU order.
+ */
+public class HeuristicObsoleteItemsPredictor extends ObsoleteItemsPredictor {
+    private final int idleSteps;
+
+    public HeuristicObsoleteItemsPredictor(int idleSteps) {
+        super();
+        this.idleSteps = idleSteps;
+    }
+
+    @Override
+    public List<Boolean> predictObsoleteItems(
+            List<AccessTracker> accessTrackers) {
+        List<Boolean> isObsolete = new ArrayList<>(accessTrackers.size());
+        for (AccessTracker accessTracker : accessTrackers) {
+            RawFeature rawFeature = accessTracker.toRawFeature();
+            int lastRead = lastAccess(rawFeature.getReadAccessesList());
+            int lastWrite = lastAccess(rawFeature.getWriteAccessesList());
+            isObsolete.add(lastRead >= idleSteps && lastWrite < lastRead);
+        }
+        return isObsolete;
+    }
+
+    // the steps since the most recent access, Integer.MAX_VALUE if there is
+    // none in the window
+    private static int lastAccess(List<Long> words) {
+        for (int j = 0; j < words.size(); j++) {
+            long word = words.get(j);
+            if (word != 0) {
+                return j * 64 + Long.numberOfTrailingZeros(word);
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+}
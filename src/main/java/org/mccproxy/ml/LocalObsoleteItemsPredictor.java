@@ -0,0 +1,44 @@
+package org.mccproxy.ml;
+
+import org.mccproxy.cache.AccessTracker;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scores the items with a model loaded into the proxy, so a phase end does
+ * not wait on the ML service. Not thread-safe, like the caches that use it.
+ */
+public class LocalObsoleteItemsPredictor extends ObsoleteItemsPredictor {
+    private final ObsoleteItemsModel model;
+    // the features of the current batch, reused between batches
+    private float[] features = new float[0];
+
+    public LocalObsoleteItemsPredictor(ObsoleteItemsModel model) {
+        super();
+        this.model = model;
+    }
+
+    public LocalObsoleteItemsPredictor(Path modelPath) throws IOException {
+        this(ObsoleteItemsModel.load(modelPath));
+    }
+
+    @Override
+    public List<Boolean> predictObsoleteItems(
+            List<AccessTracker> accessTrackers) {
+        int size = accessTrackers.size();
+        if (features.length < size * FeatureExtractor.NUM_FEATURES) {
+            features = new float[size * FeatureExtractor.NUM_FEATURES];
+        }
+        BatchFeatureExtractor.extract(accessTrackers, features);
+        List<Boolean> isObsolete = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            isObsolete.add(
+                    model.score(features, i * FeatureExtractor.NUM_FEATURES) >
+                            model.getThreshold());
+        }
+        return isObsolete;
+    }
+}
@@ -0,0 +1,60 @@
+package org.mccproxy.ml;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * The probability is sigmoid(intercept + coefficients . features), with
+ * <pre>
+ *   "intercept": double, "coefficients": [one per model feature]
+ * </pre>
+ */
+public class LogisticRegressionModel implements ObsoleteItemsModel {
+    // one weight per extracted feature, zero for those the model ignores
+    private final double[] weights;
+    private final double intercept;
+    private final double threshold;
+
+    public LogisticRegressionModel(double[] weights, double intercept,
+                                   double threshold) {
+        if (weights.length != FeatureExtractor.NUM_FEATURES) {
+            throw new IllegalArgumentException(
+                    "Expected " + FeatureExtractor.NUM_FEATURES +
+                            " weights: " + weights.length);
+        }
+        this.weights = weights;
+        this.intercept = intercept;
+        this.threshold = threshold;
+    }
+
+    static LogisticRegressionModel fromJson(JsonNode model,
+                                            int[] featureIndexes,
+                                            double threshold) {
+        JsonNode coefficients = model.path("coefficients");
+        if (coefficients.size() != featureIndexes.length) {
+            throw new IllegalArgumentException(
+                    "Expected one coefficient per feature: " +
+                            coefficients.size());
+        }
+        double[] weights = new double[FeatureExtractor.NUM_FEATURES];
+        for (int i = 0; i < featureIndexes.length; i++) {
+            weights[featureIndexes[i]] += coefficients.get(i).asDouble();
+        }
+        return new LogisticRegressionModel(weights,
+                                           model.path("intercept").asDouble(),
+                                           threshold);
+    }
+
+    @Override
+    public double score(float[] features, int offset) {
+        double sum = intercept;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i] * features[offset + i];
+        }
+        return ObsoleteItemsModel.sigmoid(sum);
+    }
+
+    @Override
+    public double getThreshold() {
+        return threshold;
+    }
+}
@@ -2,33 +2,193 @@ package org.mccproxy.ml;
 
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
 import org.mccproxy.cache.AccessTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 public class MLObsoleteItemsPredictor extends ObsoleteItemsPredictor {
-
+    private static final Logger logger =
+            LoggerFactory.getLogger(MLObsoleteItemsPredictor.class.getName());
+    public static final long DEFAULT_DEADLINE_MILLIS = 100;
 
     private MLServiceGrpc.MLServiceBlockingStub blockingStub;
+    private MLServiceGrpc.MLServiceStub asyncStub;
+    // every batch fails if it is not answered in time, so a slow ML service
+    // does not stall the proxy
+    private final long deadlineMillis;
+
+    // the open PredictStream call, replaced after it fails
+    private PredictStream stream;
+    private long nextRequestId;
 
 
     public MLObsoleteItemsPredictor(String host, int port) {
+        this(host, port, DEFAULT_DEADLINE_MILLIS);
+    }
+
+    public MLObsoleteItemsPredictor(String host, int port,
+                                    long deadlineMillis) {
         super();
+        this.deadlineMillis = deadlineMillis;
         ManagedChannel managedChannel =
                 ManagedChannelBuilder.forAddress(host, port).usePlaintext()
                         .build();
 
         blockingStub = MLServiceGrpc.newBlockingStub(managedChannel);
+        asyncStub = MLServiceGrpc.newStub(managedChannel);
     }
 
     @Override
     public List<Boolean> predictObsoleteItems(
             List<AccessTracker> accessTrackers) {
-        PredictRequest request = PredictRequest.newBuilder().addAllFeatures(
-                accessTrackers.stream().map(AccessTracker::toRawFeature)
-                        .toList()).build();
-
-        PredictResponse response = blockingStub.predict(request);
+        PredictResponse response = blockingStub
+                .withDeadlineAfter(deadlineMillis, TimeUnit.MILLISECONDS)
+                .predict(toRequest(accessTrackers).build());
         return response.getIsObsoleteList();
     }
+
+    /**
+     * Sends the batch on the stream kept open to the ML service, the stream
+     * is opened again on the next batch after it fails.
+     */
+    @Override
+    public synchronized CompletableFuture<List<Boolean>>
+    predictObsoleteItemsAsync(List<AccessTracker> accessTrackers) {
+        if (stream == null || stream.isClosed()) {
+            stream = new PredictStream(deadlineMillis);
+            asyncStub.predictStream(stream);
+        }
+        return stream.send(toRequest(accessTrackers).setRequestId(
+                nextRequestId++).build());
+    }
+
+    @Override
+    public boolean isAsync() {
+        return true;
+    }
+
+    private static PredictRequest.Builder toRequest(
+            List<AccessTracker> accessTrackers) {
+        float[] features = new float[accessTrackers.size() *
+                FeatureExtractor.NUM_FEATURES];
+        BatchFeatureExtractor.extract(accessTrackers, features);
+        PredictRequest.Builder request = PredictRequest.newBuilder();
+        for (int i = 0; i < features.length;
+             i += FeatureExtractor.NUM_FEATURES) {
+            ExtractedFeature.Builder feature = ExtractedFeature.newBuilder();
+            for (int j = 0; j < FeatureExtractor.NUM_FEATURES; j++) {
+                feature.addValues(features[i + j]);
+            }
+            request.addExtractedFeatures(feature);
+        }
+        return request;
+    }
+
+    /**
+     * One PredictStream call. The requests are held back while the call is
+     * not ready, so a slow ML service pushes back on the transport instead
+     * of the requests piling up in its buffers; the responses are matched to
+     * the requests by request id.
+     */
+    private static class PredictStream
+            implements ClientResponseObserver<PredictRequest, PredictResponse> {
+        private ClientCallStreamObserver<PredictRequest> requests;
+        private final ArrayDeque<PredictRequest> unsent = new ArrayDeque<>();
+        private final Map<Long, CompletableFuture<List<Boolean>>> pending =
+                new ConcurrentHashMap<>();
+        private volatile boolean closed;
+        private final long deadlineMillis;
+
+        PredictStream(long deadlineMillis) {
+            this.deadlineMillis = deadlineMillis;
+        }
+
+        @Override
+        public void beforeStart(
+                ClientCallStreamObserver<PredictRequest> requestStream) {
+            requests = requestStream;
+            requests.setOnReadyHandler(this::drain);
+        }
+
+        CompletableFuture<List<Boolean>> send(PredictRequest request) {
+            CompletableFuture<List<Boolean>> verdicts =
+                    new CompletableFuture<>();
+            pending.put(request.getRequestId(), verdicts);
+            // a late response finds no pending request and is dropped
+            verdicts.orTimeout(deadlineMillis, TimeUnit.MILLISECONDS)
+                    .whenComplete((isObsolete, t) -> pending.remove(
+                            request.getRequestId()));
+            synchronized (this) {
+                unsent.add(request);
+            }
+            drain();
+            // the call may have failed before the request was registered
+            if (closed) {
+                fail(new IllegalStateException("PredictStream is closed"));
+            }
+            return verdicts;
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+
+        private synchronized void drain() {
+            while (!closed && requests.isReady() && !unsent.isEmpty()) {
+                PredictRequest request = unsent.poll();
+                // not sent if it missed its deadline while held back
+                if (pending.containsKey(request.getRequestId())) {
+                    requests.onNext(request);
+                }
+            }
+        }
+
+        @Override
+        public void onNext(PredictResponse response) {
+            CompletableFuture<List<Boolean>> verdicts =
+                    pending.remove(response.getRequestId());
+            if (verdicts == null) {
+                logger.debug(
+                        "MLObsoleteItemsPredictor::onNext - No pending request for requestId={}, it missed its deadline",
+                        response.getRequestId());
+                return;
+            }
+            verdicts.complete(response.getIsObsoleteList());
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            logger.warn(
+                    "MLObsoleteItemsPredictor::onError - PredictStream failed with {} requests pending",
+                    pending.size(), t);
+            closed = true;
+            fail(t);
+        }
+
+        @Override
+        public void onCompleted() {
+            closed = true;
+            fail(new IllegalStateException(
+                    "PredictStream was completed by the ML service"));
+        }
+
+        private void fail(Throwable t) {
+            for (Long requestId : pending.keySet()) {
+                CompletableFuture<List<Boolean>> verdicts =
+                        pending.remove(requestId);
+                if (verdicts != null) {
+                    verdicts.completeExceptionally(t);
+                }
+            }
+        }
+    }
 }
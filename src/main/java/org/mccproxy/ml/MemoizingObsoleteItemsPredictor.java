@@ -0,0 +1,224 @@
+package org.mccproxy.ml;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
+import org.mccproxy.cache.AccessTracker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Remembers the verdicts of another predictor by the raw feature they were
+ * given, so items with the same access pattern, like "read once 200 steps
+ * ago, never written", are scored once. The trackers are normalized to the
+ * current time step, so equal raw features have equal extracted features and
+ * a verdict stays valid for as long as the model does not change.
+ * <p>
+ * The verdicts of the least recently used raw features are dropped beyond
+ * maxEntries. Equal raw features in one batch are sent to the predictor once.
+ */
+public class MemoizingObsoleteItemsPredictor extends ObsoleteItemsPredictor {
+    private final ObsoleteItemsPredictor predictor;
+    private final Map<Fingerprint, Boolean> verdicts;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public MemoizingObsoleteItemsPredictor(ObsoleteItemsPredictor predictor,
+                                           int maxEntries,
+                                           MetricRegistry metrics) {
+        super();
+        this.predictor = predictor;
+        this.verdicts = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<Fingerprint, Boolean> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.hitCounter = metrics.counter(MetricRegistry.name(
+                MemoizingObsoleteItemsPredictor.class, "verdictHit"));
+        this.missCounter = metrics.counter(MetricRegistry.name(
+                MemoizingObsoleteItemsPredictor.class, "verdictMiss"));
+    }
+
+    @Override
+    public List<Boolean> predictObsoleteItems(
+            List<AccessTracker> accessTrackers) {
+        Batch batch = lookup(accessTrackers);
+        if (batch.misses.isEmpty()) {
+            return batch.answer(List.of());
+        }
+        return remember(batch, predictor.predictObsoleteItems(
+                batch.missTrackers()));
+    }
+
+    @Override
+    public CompletableFuture<List<Boolean>> predictObsoleteItemsAsync(
+            List<AccessTracker> accessTrackers) {
+        Batch batch = lookup(accessTrackers);
+        if (batch.misses.isEmpty()) {
+            return CompletableFuture.completedFuture(batch.answer(List.of()));
+        }
+        return predictor.predictObsoleteItemsAsync(batch.missTrackers())
+                .thenApply(isObsolete -> remember(batch, isObsolete));
+    }
+
+    @Override
+    public boolean isAsync() {
+        return predictor.isAsync();
+    }
+
+    private synchronized Batch lookup(List<AccessTracker> accessTrackers) {
+        Batch batch = new Batch(accessTrackers.size());
+        Map<Fingerprint, Integer> missIndexes = new HashMap<>();
+        for (int i = 0; i < accessTrackers.size(); i++) {
+            RawFeature rawFeature = accessTrackers.get(i).toRawFeature();
+            Fingerprint fingerprint = Fingerprint.of(rawFeature);
+            Boolean isObsolete = verdicts.get(fingerprint);
+            if (isObsolete != null) {
+                hitCounter.inc();
+                batch.cached[i] = isObsolete;
+                continue;
+            }
+            missCounter.inc();
+            Integer missIndex = missIndexes.get(fingerprint);
+            if (missIndex == null) {
+                missIndex = batch.misses.size();
+                missIndexes.put(fingerprint, missIndex);
+                batch.misses.add(fingerprint);
+                batch.missFeatures.add(rawFeature);
+            }
+            batch.missIndexes[i] = missIndex;
+        }
+        return batch;
+    }
+
+    private List<Boolean> remember(Batch batch, List<Boolean> isObsolete) {
+        // a predictor may answer for fewer items, the rest are kept and not
+        // remembered
+        synchronized (this) {
+            for (int i = 0; i < isObsolete.size() && i < batch.misses.size();
+                 i++) {
+                verdicts.put(batch.misses.get(i), isObsolete.get(i));
+            }
+        }
+        return batch.answer(isObsolete);
+    }
+
+    @VisibleForTesting
+    synchronized int size() {
+        return verdicts.size();
+    }
+
+    private static class Batch {
+        // the remembered verdict of every item, null for a miss
+        final Boolean[] cached;
+        // the index of a missed item's raw feature in misses
+        final int[] missIndexes;
+        final List<Fingerprint> misses = new ArrayList<>();
+        final List<RawFeature> missFeatures = new ArrayList<>();
+
+        Batch(int size) {
+            cached = new Boolean[size];
+            missIndexes = new int[size];
+        }
+
+        List<AccessTracker> missTrackers() {
+            List<AccessTracker> trackers = new ArrayList<>(misses.size());
+            for (RawFeature rawFeature : missFeatures) {
+                trackers.add(new RawFeatureTracker(rawFeature));
+            }
+            return trackers;
+        }
+
+        List<Boolean> answer(List<Boolean> missVerdicts) {
+            List<Boolean> isObsolete = new ArrayList<>(cached.length);
+            for (int i = 0; i < cached.length; i++) {
+                if (cached[i] != null) {
+                    isObsolete.add(cached[i]);
+                } else if (missIndexes[i] < missVerdicts.size()) {
+                    isObsolete.add(missVerdicts.get(missIndexes[i]));
+                } else {
+                    isObsolete.add(false);
+                }
+            }
+            return isObsolete;
+        }
+    }
+
+    /**
+     * The words of a raw feature with their hash. Equal hashes are confirmed
+     * on the words, so a collision never hands out another item's verdict.
+     */
+    private static final class Fingerprint {
+        // the read count, the read words, then the write words
+        private final long[] words;
+        private final int hash;
+
+        private Fingerprint(long[] words) {
+            this.words = words;
+            long h = words.length;
+            for (long word : words) {
+                h = (h ^ word) * 0x9E3779B97F4A7C15L;
+            }
+            this.hash = (int) (h ^ (h >>> 32));
+        }
+
+        static Fingerprint of(RawFeature rawFeature) {
+            int reads = rawFeature.getReadAccessesCount();
+            int writes = rawFeature.getWriteAccessesCount();
+            long[] words = new long[reads + writes + 1];
+            words[0] = reads;
+            for (int i = 0; i < reads; i++) {
+                words[1 + i] = rawFeature.getReadAccesses(i);
+            }
+            for (int i = 0; i < writes; i++) {
+                words[1 + reads + i] = rawFeature.getWriteAccesses(i);
+            }
+            return new Fingerprint(words);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Fingerprint other && hash == other.hash &&
+                    Arrays.equals(words, other.words);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Hands a remembered raw feature to the predictor, so the features of a
+     * miss are not read from its tracker twice.
+     */
+    private record RawFeatureTracker(RawFeature rawFeature)
+            implements AccessTracker {
+        @Override
+        public void recordRead(long timeStep) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void recordWrite(long timeStep) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void syncTimeStep(long timeStep) {
+        }
+
+        @Override
+        public RawFeature toRawFeature() {
+            return rawFeature;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.mccproxy.ml;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A trained model that scores the features of {@link FeatureExtractor}. A
+ * model is loaded from the JSON written by ModelExporter.py:
+ * <pre>
+ *   {"type": "logistic_regression" | "gradient_boosted_trees",
+ *    "features": [feature names, in the order of the model's inputs],
+ *    "threshold": probability above which an item is obsolete,
+ *    ...the parameters of the type}
+ * </pre>
+ * The model may use any subset of the extracted features.
+ */
+public interface ObsoleteItemsModel {
+
+    /**
+     * @param features the NUM_FEATURES features of an item, from offset on
+     * @return the probability that the item is obsolete
+     */
+    double score(float[] features, int offset);
+
+    double getThreshold();
+
+    static ObsoleteItemsModel load(Path path) throws IOException {
+        JsonNode model = new ObjectMapper().readTree(path.toFile());
+        return fromJson(model);
+    }
+
+    static ObsoleteItemsModel fromJson(JsonNode model) {
+        int[] featureIndexes = featureIndexes(model.path("features"));
+        double threshold = model.path("threshold").asDouble(0.5);
+        String type = model.path("type").asText();
+        return switch (type) {
+            case "logistic_regression" ->
+                    LogisticRegressionModel.fromJson(model, featureIndexes,
+                                                     threshold);
+            case "gradient_boosted_trees" ->
+                    GradientBoostedTreesModel.fromJson(model, featureIndexes,
+                                                       threshold);
+            default -> throw new IllegalArgumentException(
+                    "Unsupported model type: " + type);
+        };
+    }
+
+    // the positions of the model's features among the extracted ones
+    private static int[] featureIndexes(JsonNode features) {
+        int[] indexes = new int[features.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            String name = features.get(i).asText();
+            indexes[i] = FeatureExtractor.FEATURE_NAMES.indexOf(name);
+            if (indexes[i] < 0) {
+                throw new IllegalArgumentException(
+                        "Unknown model feature: " + name);
+            }
+        }
+        return indexes;
+    }
+
+    static double sigmoid(double x) {
+        return 1 / (1 + Math.exp(-x));
+    }
+}
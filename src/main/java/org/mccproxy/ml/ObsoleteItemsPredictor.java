@@ -3,6 +3,7 @@ package org.mccproxy.ml;
 import org.mccproxy.cache.AccessTracker;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public abstract class ObsoleteItemsPredictor {
 
@@ -11,4 +12,22 @@ public abstract class ObsoleteItemsPredictor {
 
     abstract public List<Boolean> predictObsoleteItems(
             List<AccessTracker> accessTrackers);
+
+    /**
+     * Scores a batch without waiting for the verdicts. The features are read
+     * before this returns, so the trackers may change afterwards.
+     */
+    public CompletableFuture<List<Boolean>> predictObsoleteItemsAsync(
+            List<AccessTracker> accessTrackers) {
+        return CompletableFuture.completedFuture(
+                predictObsoleteItems(accessTrackers));
+    }
+
+    /**
+     * @return whether the verdicts are computed off the calling thread, which
+     * makes it worth asking for them before they are needed
+     */
+    public boolean isAsync() {
+        return false;
+    }
 }
@@ -0,0 +1,195 @@
+package org.mccproxy.proxy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Carries invalidations from the gRPC threads to a dedicated thread that
+ * applies them, so they never wait behind queued reads and the invalidation
+ * watermark keeps up with the database.
+ * <p>
+ * The invalidations pass through a bounded ring buffer. Every slot has a
+ * sequence number telling whether it is free for the producer of a given lap
+ * or published for the consumer, so neither side takes a lock. gRPC may call
+ * in on several threads, so producers claim slots with a CAS; there is only
+ * one consumer. A full ring blocks the producer until the consumer catches
+ * up.
+ */
+public class InvalidationPipeline {
+    private static final Logger logger =
+            LoggerFactory.getLogger(InvalidationPipeline.class.getName());
+    private static final int SPINS_BEFORE_PARK = 1000;
+
+    @FunctionalInterface
+    public interface Handler {
+        boolean apply(List<String> keys, long newVersion);
+    }
+
+    @FunctionalInterface
+    public interface Callback {
+        void onApplied(boolean success);
+    }
+
+    private final Handler handler;
+    private final int mask;
+    // slot i is free for position p when sequences[i] == p, and holds the
+    // invalidation of position p when sequences[i] == p + 1
+    private final AtomicLongArray sequences;
+    private final Object[] keys;
+    private final long[] versions;
+    private final Callback[] callbacks;
+
+    private final AtomicLong tail = new AtomicLong(); // next position to claim
+    private long head; // next position to apply, consumer only
+    // the newest version applied, readable from any thread
+    private volatile long appliedVersion = Long.MIN_VALUE;
+
+    private final Thread consumer;
+    private volatile boolean consumerParked;
+    private volatile boolean isRunning = true;
+
+    public InvalidationPipeline(int capacity, Handler handler) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException(
+                    "Capacity must be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        size = Math.max(size, 2);
+        this.handler = handler;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.keys = new Object[size];
+        this.versions = new long[size];
+        this.callbacks = new Callback[size];
+        this.consumer = new Thread(this::run, "invalidation-pipeline");
+        this.consumer.setDaemon(true);
+
+        logger.info("InvalidationPipeline initialized with capacity={}",
+                    size);
+    }
+
+    public void start() {
+        consumer.start();
+    }
+
+    /**
+     * Stops the consumer once everything published so far is applied.
+     */
+    public void stop() {
+        isRunning = false;
+        LockSupport.unpark(consumer);
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return the newest version applied so far, {@link Long#MIN_VALUE}
+     * before the first invalidation
+     */
+    public long getAppliedVersion() {
+        return appliedVersion;
+    }
+
+    /**
+     * Queues an invalidation, waiting for room if the ring is full.
+     *
+     * @param callback called on the consumer thread once the invalidation is
+     *                 applied
+     */
+    public void publish(List<String> keys, long newVersion,
+                        Callback callback) {
+        long position;
+        int spins = 0;
+        while (true) {
+            position = tail.get();
+            long available = sequences.get((int) position & mask) - position;
+            if (available == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (available < 0) {
+                // the consumer has not freed the slot of the previous lap
+                backOff(++spins);
+            }
+        }
+
+        int slot = (int) position & mask;
+        this.keys[slot] = keys;
+        versions[slot] = newVersion;
+        callbacks[slot] = callback;
+        sequences.set(slot, position + 1);
+
+        if (consumerParked) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    private void run() {
+        int idleSpins = 0;
+        while (true) {
+            int slot = (int) head & mask;
+            if (sequences.get(slot) != head + 1) {
+                if (!isRunning && tail.get() == head) {
+                    break;
+                }
+                if (++idleSpins < SPINS_BEFORE_PARK) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                consumerParked = true;
+                // a producer that published before the flag was set did not
+                // unpark, so look again before sleeping
+                if (sequences.get(slot) != head + 1 && isRunning) {
+                    LockSupport.park(this);
+                }
+                consumerParked = false;
+                continue;
+            }
+            idleSpins = 0;
+
+            @SuppressWarnings("unchecked")
+            List<String> slotKeys = (List<String>) keys[slot];
+            long newVersion = versions[slot];
+            Callback callback = callbacks[slot];
+            keys[slot] = null;
+            callbacks[slot] = null;
+            // the slot is free for the producer of the next lap
+            sequences.set(slot, head + mask + 1);
+            head++;
+
+            boolean success;
+            try {
+                success = handler.apply(slotKeys, newVersion);
+                appliedVersion = Math.max(appliedVersion, newVersion);
+            } catch (RuntimeException e) {
+                logger.error(
+                        "InvalidationPipeline::run - Failed to apply invalidation of keys={} newVersion={}",
+                        slotKeys, newVersion, e);
+                success = false;
+            }
+            if (callback != null) {
+                callback.onApplied(success);
+            }
+        }
+        logger.info("InvalidationPipeline::run - Stopped at position={}",
+                    head);
+    }
+
+    private static void backOff(int spins) {
+        if (spins < SPINS_BEFORE_PARK) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(1000);
+        }
+    }
+}
@@ -1,20 +1,30 @@
 package org.mccproxy.proxy;
 
+import com.google.common.base.Utf8;
+
 public class ItemRecord {
     private final String key;
     private final String value;
     private final long version;
+    // -1 if the size is that of the encoded key and value
+    private final int size;
 
     public ItemRecord(String key, String value) {
-        this.key = key;
-        this.value = value;
-        this.version = 0;
+        this(key, value, 0);
     }
 
     public ItemRecord(String key, String value, long version) {
+        this(key, value, version, -1);
+    }
+
+    /**
+     * @param size the size the cache accounts for the item
+     */
+    public ItemRecord(String key, String value, long version, int size) {
         this.key = key;
         this.value = value;
         this.version = version;
+        this.size = size;
     }
 
     public String getKey() {
@@ -29,8 +39,36 @@ public class ItemRecord {
         return version;
     }
 
+    /**
+     * @return the key the value of this version is stored under in the cache
+     */
+    public String getVersionedKey() {
+        return versionedKey(key, version);
+    }
+
+    public static String versionedKey(String key, long version) {
+        return key + "@" + version;
+    }
+
+    /**
+     * @return the size given on construction, or else the UTF-8 encoded size
+     * of the key and the value
+     */
     public int getSize() {
-        return key.length() + value.length();
+        if (size >= 0) {
+            return size;
+        }
+        return Utf8.encodedLength(key) + Utf8.encodedLength(value);
+    }
+
+    /**
+     * @param entryOverhead the memory Redis spends on every key besides the
+     *                      key and value bytes
+     * @return the memory the value of this version takes in Redis
+     */
+    public int getStoredSize(int entryOverhead) {
+        return Utf8.encodedLength(getVersionedKey()) +
+                Utf8.encodedLength(value) + entryOverhead;
     }
 
     public String toString() {
@@ -0,0 +1,123 @@
+package org.mccproxy.proxy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs tasks on a pool of threads, in submission order among the tasks that
+ * share a key. A task waits for the last earlier task of each of its keys to
+ * finish, so tasks with disjoint keys run in parallel while the requests of
+ * one key are applied one after the other. Waiting tasks do not hold a
+ * thread.
+ */
+public class KeyOrderedExecutor {
+    private static final Logger logger =
+            LoggerFactory.getLogger(KeyOrderedExecutor.class.getName());
+
+    private static class Task {
+        final List<String> keys;
+        final Runnable runnable;
+        // guarded by lastTasks
+        int unfinishedPredecessors;
+        final List<Task> successors = new ArrayList<>(1);
+
+        Task(List<String> keys, Runnable runnable) {
+            this.keys = keys;
+            this.runnable = runnable;
+        }
+    }
+
+    private final ExecutorService workers;
+    // the last submitted task of every key that has an unfinished task
+    private final Map<String, Task> lastTasks = new HashMap<>();
+
+    public KeyOrderedExecutor(int threads, String name) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException(
+                    "threads must be positive: " + threads);
+        }
+        this.workers = Executors.newFixedThreadPool(threads,
+                                                    Thread.ofPlatform()
+                                                            .name(name + "-",
+                                                                  0)
+                                                            .daemon(true)
+                                                            .factory());
+        logger.info("KeyOrderedExecutor initialized with threads={}",
+                    threads);
+    }
+
+    public void submit(List<String> keys, Runnable runnable) {
+        Task task = new Task(keys, runnable);
+        synchronized (lastTasks) {
+            for (String key : keys) {
+                Task last = lastTasks.put(key, task);
+                if (last != null && last != task) {
+                    last.successors.add(task);
+                    task.unfinishedPredecessors++;
+                }
+            }
+            if (task.unfinishedPredecessors > 0) {
+                return;
+            }
+        }
+        workers.execute(() -> run(task));
+    }
+
+    /**
+     * Stops taking tasks and waits for the running ones to finish.
+     */
+    public void shutdown() {
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warn(
+                        "KeyOrderedExecutor::shutdown - Tasks still running after 30 seconds");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run(Task task) {
+        try {
+            task.runnable.run();
+        } catch (RuntimeException e) {
+            logger.error("KeyOrderedExecutor::run - Task for keys {} failed",
+                         task.keys, e);
+        } finally {
+            finish(task);
+        }
+    }
+
+    private void finish(Task task) {
+        List<Task> ready = new ArrayList<>(task.successors.size());
+        synchronized (lastTasks) {
+            for (String key : task.keys) {
+                lastTasks.remove(key, task);
+            }
+            for (Task successor : task.successors) {
+                if (--successor.unfinishedPredecessors == 0) {
+                    ready.add(successor);
+                }
+            }
+        }
+        for (Task successor : ready) {
+            try {
+                workers.execute(() -> run(successor));
+            } catch (RejectedExecutionException e) {
+                logger.warn(
+                        "KeyOrderedExecutor::finish - Dropped task for keys {} after shutdown",
+                        successor.keys);
+            }
+        }
+    }
+}
@@ -3,6 +3,7 @@ package org.mccproxy.proxy;
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.annotations.VisibleForTesting;
+import org.mccproxy.cache.KeyDictionary;
 import org.mccproxy.connector.cache.CacheConnector;
 import org.mccproxy.connector.cache.RedisConnector;
 import org.mccproxy.connector.db.DBConnector;
@@ -20,6 +21,7 @@ public abstract class MCCProxy {
     protected final CacheConnector cacheConnector;
     protected final DBConnector dbConnector;
 
+    protected final KeyDictionary keyDictionary = new KeyDictionary();
     protected final HashMap<String, Long> itemsLastReadVersion;
     protected final boolean testMode = true;
     @VisibleForTesting
@@ -31,16 +33,19 @@ public abstract class MCCProxy {
     @VisibleForTesting
     final Counter dbReadItemsCounter;
 
-    protected long timeStep = 0;
+    // only advanced while the cache metadata is locked, every read and every
+    // invalidation takes the next step
+    protected volatile long timeStep = 0;
 
 
     public MCCProxy(MCCProxyConfig config) {
-        this.cacheConnector = new RedisConnector(config.getRedis().getHost(),
-                                                 config.getRedis().getPort());
-        this.dbConnector = new PostgresConnector(config.getPostgres().getUrl(),
-                                                 config.getPostgres().getUser(),
-                                                 config.getPostgres()
-                                                         .getPassword());
+        this(createCacheConnector(config), createDBConnector(config));
+    }
+
+    @VisibleForTesting
+    MCCProxy(CacheConnector cacheConnector, DBConnector dbConnector) {
+        this.cacheConnector = cacheConnector;
+        this.dbConnector = dbConnector;
 
         mccHitCounter =
                 metrics.counter(MetricRegistry.name(MCCProxy.class, "mccHit"));
@@ -58,6 +63,21 @@ public abstract class MCCProxy {
         }
     }
 
+    // a connection for every read that may run at the same time
+    protected static CacheConnector createCacheConnector(
+            MCCProxyConfig config) {
+        return new RedisConnector(config.getRedis().getHost(),
+                                  config.getRedis().getPort(),
+                                  config.getReadThreads());
+    }
+
+    protected static DBConnector createDBConnector(MCCProxyConfig config) {
+        return new PostgresConnector(config.getPostgres().getUrl(),
+                                     config.getPostgres().getUser(),
+                                     config.getPostgres().getPassword(),
+                                     config.getReadThreads());
+    }
+
     public void start() {
         logger.info("MCCProxy::start - Starting MCCProxy");
         this.cacheConnector.connect();
@@ -70,8 +90,37 @@ public abstract class MCCProxy {
         this.dbConnector.disconnect();
     }
 
-    abstract public List<ItemRecord> processRead(List<String> keys);
+    public KeyDictionary getKeyDictionary() {
+        return keyDictionary;
+    }
+
+    public List<ItemRecord> processRead(List<String> keys) {
+        int[] keyIds = keyDictionary.intern(keys);
+        try {
+            return processRead(keys, keyIds);
+        } finally {
+            keyDictionary.release(keyIds);
+        }
+    }
+
+    /**
+     * May be called from several threads at once. Reads that share a key
+     * should be submitted one after the other, a read otherwise waits for
+     * the ones in flight on its keys.
+     *
+     * @param keyIds the ids of the keys in {@link #getKeyDictionary()}, in
+     *               the same order as the keys, held by the caller until
+     *               the read returns
+     */
+    abstract public List<ItemRecord> processRead(List<String> keys,
+                                                 int[] keyIds);
 
     abstract public boolean processInvalidation(List<String> keys,
                                                 long newVersion);
+
+    /**
+     * @return whether {@link #processInvalidation} may run on its own thread
+     * while reads are processed
+     */
+    abstract public boolean isConcurrentInvalidationSupported();
 }
@@ -2,7 +2,28 @@ package org.mccproxy.proxy;
 
 public class MCCProxyConfig {
     private int cacheSize;
+    private String cacheSizeMode = "DATA";
+    private int redisEntryOverhead = 64;
+    private long proxyHeapBudget = 0;
+    private int proxyEntryOverhead = 0;
+    private String cacheBackend = "DEFAULT";
+    private int cacheShards = 16;
+    private String evictionPolicy = "LRU";
+    private int cacheVersionsPerKey = 1;
     private String versionSelectionPolicy;
+    private int invalidationRingSize = 4096;
+    // only items idle for this many steps, or invalidated, are offered to
+    // the obsolete items predictor; 0 offers every item
+    private int obsoleteIdleTimeSteps = 0;
+    // reads with disjoint keys run in parallel when above 1
+    private int readThreads = 1;
+    private String snapshotPath;
+    private int snapshotIntervalSeconds = 60;
+    private boolean snapshotInvalidationsReplayed = false;
+    // the directory of the eviction outcome log, null to disable it
+    private String evictionLogPath;
+    private int evictionLogSampleEvery = 100;
+    private int evictionLogHorizonSteps = 1000;
     private RedisConfig redis;
     private PostgresConfig postgres;
     private MLServiceConfig mlServiceConfig;
@@ -31,6 +52,70 @@ public class MCCProxyConfig {
         this.cacheSize = cacheSize;
     }
 
+    public String getCacheSizeMode() {
+        return cacheSizeMode;
+    }
+
+    public void setCacheSizeMode(String cacheSizeMode) {
+        this.cacheSizeMode = cacheSizeMode;
+    }
+
+    public int getRedisEntryOverhead() {
+        return redisEntryOverhead;
+    }
+
+    public void setRedisEntryOverhead(int redisEntryOverhead) {
+        this.redisEntryOverhead = redisEntryOverhead;
+    }
+
+    public long getProxyHeapBudget() {
+        return proxyHeapBudget;
+    }
+
+    public void setProxyHeapBudget(long proxyHeapBudget) {
+        this.proxyHeapBudget = proxyHeapBudget;
+    }
+
+    public int getProxyEntryOverhead() {
+        return proxyEntryOverhead;
+    }
+
+    public void setProxyEntryOverhead(int proxyEntryOverhead) {
+        this.proxyEntryOverhead = proxyEntryOverhead;
+    }
+
+    public String getCacheBackend() {
+        return cacheBackend;
+    }
+
+    public void setCacheBackend(String cacheBackend) {
+        this.cacheBackend = cacheBackend;
+    }
+
+    public int getCacheShards() {
+        return cacheShards;
+    }
+
+    public void setCacheShards(int cacheShards) {
+        this.cacheShards = cacheShards;
+    }
+
+    public String getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    public void setEvictionPolicy(String evictionPolicy) {
+        this.evictionPolicy = evictionPolicy;
+    }
+
+    public int getCacheVersionsPerKey() {
+        return cacheVersionsPerKey;
+    }
+
+    public void setCacheVersionsPerKey(int cacheVersionsPerKey) {
+        this.cacheVersionsPerKey = cacheVersionsPerKey;
+    }
+
     public String getVersionSelectionPolicy() {
         return versionSelectionPolicy;
     }
@@ -39,6 +124,79 @@ public class MCCProxyConfig {
         this.versionSelectionPolicy = versionSelectionPolicy;
     }
 
+    public int getInvalidationRingSize() {
+        return invalidationRingSize;
+    }
+
+    public void setInvalidationRingSize(int invalidationRingSize) {
+        this.invalidationRingSize = invalidationRingSize;
+    }
+
+    public int getObsoleteIdleTimeSteps() {
+        return obsoleteIdleTimeSteps;
+    }
+
+    public void setObsoleteIdleTimeSteps(int obsoleteIdleTimeSteps) {
+        this.obsoleteIdleTimeSteps = obsoleteIdleTimeSteps;
+    }
+
+    public int getReadThreads() {
+        return readThreads;
+    }
+
+    public void setReadThreads(int readThreads) {
+        this.readThreads = readThreads;
+    }
+
+    public String getSnapshotPath() {
+        return snapshotPath;
+    }
+
+    public void setSnapshotPath(String snapshotPath) {
+        this.snapshotPath = snapshotPath;
+    }
+
+    public int getSnapshotIntervalSeconds() {
+        return snapshotIntervalSeconds;
+    }
+
+    public void setSnapshotIntervalSeconds(int snapshotIntervalSeconds) {
+        this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+    }
+
+    public boolean isSnapshotInvalidationsReplayed() {
+        return snapshotInvalidationsReplayed;
+    }
+
+    public void setSnapshotInvalidationsReplayed(
+            boolean snapshotInvalidationsReplayed) {
+        this.snapshotInvalidationsReplayed = snapshotInvalidationsReplayed;
+    }
+
+    public String getEvictionLogPath() {
+        return evictionLogPath;
+    }
+
+    public void setEvictionLogPath(String evictionLogPath) {
+        this.evictionLogPath = evictionLogPath;
+    }
+
+    public int getEvictionLogSampleEvery() {
+        return evictionLogSampleEvery;
+    }
+
+    public void setEvictionLogSampleEvery(int evictionLogSampleEvery) {
+        this.evictionLogSampleEvery = evictionLogSampleEvery;
+    }
+
+    public int getEvictionLogHorizonSteps() {
+        return evictionLogHorizonSteps;
+    }
+
+    public void setEvictionLogHorizonSteps(int evictionLogHorizonSteps) {
+        this.evictionLogHorizonSteps = evictionLogHorizonSteps;
+    }
+
     public MLServiceConfig getMlServiceConfig() {
         return mlServiceConfig;
     }
@@ -102,8 +260,59 @@ public class MCCProxyConfig {
     }
 
     public static class MLServiceConfig {
+        // NONE, SERVICE to ask the ML service or LOCAL to score in the proxy
+        private String predictor = "NONE";
         private String host;
         private int port;
+        // the exported model of the LOCAL predictor
+        private String modelPath;
+        // the verdicts remembered by raw feature, 0 to ask the predictor
+        // about every item
+        private int verdictCacheSize = 0;
+        // a SERVICE prediction that takes longer fails, and the items are
+        // judged by HeuristicObsoleteItemsPredictor instead
+        private long deadlineMillis = 100;
+        private int fallbackIdleSteps = 100;
+
+        public String getPredictor() {
+            return predictor;
+        }
+
+        public void setPredictor(String predictor) {
+            this.predictor = predictor;
+        }
+
+        public int getVerdictCacheSize() {
+            return verdictCacheSize;
+        }
+
+        public void setVerdictCacheSize(int verdictCacheSize) {
+            this.verdictCacheSize = verdictCacheSize;
+        }
+
+        public long getDeadlineMillis() {
+            return deadlineMillis;
+        }
+
+        public void setDeadlineMillis(long deadlineMillis) {
+            this.deadlineMillis = deadlineMillis;
+        }
+
+        public int getFallbackIdleSteps() {
+            return fallbackIdleSteps;
+        }
+
+        public void setFallbackIdleSteps(int fallbackIdleSteps) {
+            this.fallbackIdleSteps = fallbackIdleSteps;
+        }
+
+        public String getModelPath() {
+            return modelPath;
+        }
+
+        public void setModelPath(String modelPath) {
+            this.modelPath = modelPath;
+        }
 
         public String getHost() {
             return host;
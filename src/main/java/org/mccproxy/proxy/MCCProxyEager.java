@@ -1,56 +1,436 @@
 package org.mccproxy.proxy;
 
-import org.mccproxy.cache.ConsistentCache;
-
+import com.google.common.annotations.VisibleForTesting;
+import org.mccproxy.cache.*;
+import org.mccproxy.connector.cache.CacheConnector;
+import org.mccproxy.connector.db.DBConnector;
+import org.mccproxy.ml.CircuitBreakingObsoleteItemsPredictor;
+import org.mccproxy.ml.HeuristicObsoleteItemsPredictor;
+import org.mccproxy.ml.LocalObsoleteItemsPredictor;
+import org.mccproxy.ml.MLObsoleteItemsPredictor;
+import org.mccproxy.ml.MemoizingObsoleteItemsPredictor;
+import org.mccproxy.ml.ObsoleteItemsPredictor;
+import org.mccproxy.ml.SimpleObsoleteItemsPredictor;
+import org.mccproxy.utils.IntHashSet;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class MCCProxyEager extends MCCProxy {
-    private final ConsistentCache cache;
+    /**
+     * The keys a read holds while it is in flight. Invalidations of its
+     * requested keys that arrive in the meantime are remembered, because
+     * they may find a key absent or older than the version the read fetches
+     * from the database before that version is cached.
+     */
+    private static class Claim {
+        // the requested keys, and the items evicted by the read until they
+        // are deleted from Redis
+        final IntHashSet keyIds;
+        final int[] requestedKeyIds;
+        // per requested key, the newest version invalidated while the claim
+        // is held, Long.MIN_VALUE if none
+        final long[] invalidatedVersions;
+        boolean invalidated;
+
+        Claim(int[] requestedKeyIds) {
+            this.keyIds = IntHashSet.of(requestedKeyIds);
+            this.requestedKeyIds = requestedKeyIds;
+            this.invalidatedVersions = new long[requestedKeyIds.length];
+            Arrays.fill(invalidatedVersions, Long.MIN_VALUE);
+        }
+
+        void recordInvalidation(int keyId, long newVersion) {
+            for (int i = 0; i < requestedKeyIds.length; i++) {
+                if (requestedKeyIds[i] == keyId) {
+                    invalidatedVersions[i] =
+                            Math.max(invalidatedVersions[i], newVersion);
+                    invalidated = true;
+                }
+            }
+        }
+    }
+
+    // the ML service is not asked for a while after this many failed
+    // predictions in a row
+    private static final int PREDICTOR_FAILURE_THRESHOLD = 3;
+    private static final long PREDICTOR_OPEN_MILLIS = 5000;
+    private static final long EVICTION_LOG_FILE_BYTES = 64L << 20;
+    private static final int EVICTION_LOG_FILES = 8;
+
+    @VisibleForTesting
+    final MCCCache cache;
+    // Guards the cache metadata. A read holds it while it looks up its keys
+    // and while it decides and applies its changes, but not during its
+    // database and Redis round trips, so reads of disjoint keys overlap.
+    private final ReentrantLock cacheLock = new ReentrantLock();
+    private final Condition claimsReleased = cacheLock.newCondition();
+    // The claims of the reads in flight. A read waits until none of its
+    // keys is claimed, and claimed items are never evicted by another read.
+    private final List<Claim> claims = new ArrayList<>();
+    // reused by the reads of a thread, the floor is kept in snapshotFloor
+    private final ThreadLocal<MCCLookupResult> lookupResults =
+            ThreadLocal.withInitial(MCCLookupResult::new);
+    // the newest version returned so far, guarded by cacheLock
+    private long snapshotFloor = Long.MIN_VALUE;
+    // guarded by cacheLock
+    private final IntHashSet decidedItems = new IntHashSet();
+    private final int versionsPerKey;
+    // In MEMORY mode an item's size is the Redis memory of its value,
+    // including the per-key overhead, and the number of items is bounded by
+    // the proxy heap budget. In DATA mode the size is that of the key and
+    // value, and redisEntryOverhead is -1.
+    private final int redisEntryOverhead;
+    private final int maxItemCount;
+    // null if snapshots are disabled
+    private final Path snapshotPath;
+    private final long snapshotIntervalNanos;
+    private final boolean snapshotInvalidationsReplayed;
+    private long lastSnapshotNanos;
+    // writes the snapshots captured under cacheLock to disk, one at a time;
+    // null if snapshots are disabled
+    private final ExecutorService snapshotWriter;
+    // the last submitted write, guarded by cacheLock
+    private Future<?> snapshotWrite;
+    // null if the eviction outcome log is disabled
+    private final EvictionOutcomeLog evictionOutcomeLog;
 
     public MCCProxyEager(MCCProxyConfig configFilePath) {
-        super(configFilePath);
-        this.cache = new ConsistentCache(1000);
+        this(configFilePath, createCacheConnector(configFilePath),
+             createDBConnector(configFilePath));
+    }
+
+    @VisibleForTesting
+    MCCProxyEager(MCCProxyConfig configFilePath, CacheConnector cacheConnector,
+                  DBConnector dbConnector) {
+        super(cacheConnector, dbConnector);
+        this.cache = createCache(configFilePath, keyDictionary);
+        this.cache.setObsoleteIdleTimeSteps(
+                configFilePath.getObsoleteIdleTimeSteps());
+        if (configFilePath.getMlServiceConfig() != null) {
+            this.cache.setObsoleteItemsPredictor(createObsoleteItemsPredictor(
+                    configFilePath.getMlServiceConfig()));
+        }
+        this.versionsPerKey = configFilePath.getCacheVersionsPerKey();
+        switch (configFilePath.getCacheSizeMode()) {
+            case "DATA":
+                this.redisEntryOverhead = -1;
+                this.maxItemCount = Integer.MAX_VALUE;
+                break;
+            case "MEMORY":
+                this.redisEntryOverhead =
+                        configFilePath.getRedisEntryOverhead();
+                int entryOverhead = configFilePath.getProxyEntryOverhead() > 0 ?
+                        configFilePath.getProxyEntryOverhead() :
+                        cache.getEntryOverhead();
+                this.maxItemCount = configFilePath.getProxyHeapBudget() > 0 ?
+                        (int) Math.min(configFilePath.getProxyHeapBudget() /
+                                               entryOverhead,
+                                       Integer.MAX_VALUE) : Integer.MAX_VALUE;
+                logger.info(
+                        "MCCProxy::MCCProxyEager - Memory mode with redisEntryOverhead={} proxyEntryOverhead={} maxItemCount={}",
+                        redisEntryOverhead, entryOverhead, maxItemCount);
+                break;
+            default:
+                throw new IllegalArgumentException(
+                        "Unsupported cache size mode: " +
+                                configFilePath.getCacheSizeMode());
+        }
+        if (configFilePath.getSnapshotPath() != null &&
+                !(cache instanceof SnapshottableCache)) {
+            throw new IllegalArgumentException(
+                    "Snapshots are not supported by the " +
+                            configFilePath.getCacheBackend() +
+                            " cache backend");
+        }
+        this.snapshotPath = configFilePath.getSnapshotPath() == null ? null :
+                Path.of(configFilePath.getSnapshotPath());
+        this.snapshotIntervalNanos = TimeUnit.SECONDS.toNanos(
+                configFilePath.getSnapshotIntervalSeconds());
+        this.snapshotInvalidationsReplayed =
+                configFilePath.isSnapshotInvalidationsReplayed();
+        this.snapshotWriter = snapshotPath == null ? null :
+                Executors.newSingleThreadExecutor(Thread.ofPlatform()
+                                                          .name("snapshot-writer")
+                                                          .daemon(true)
+                                                          .factory());
+        this.evictionOutcomeLog = createEvictionOutcomeLog(configFilePath);
+        if (evictionOutcomeLog != null) {
+            ((ConsistentCache) cache).setEvictionOutcomeRecorder(
+                    new EvictionOutcomeRecorder(
+                            evictionOutcomeLog,
+                            configFilePath.getEvictionLogSampleEvery()));
+        }
     }
 
     @Override
-    public List<ItemRecord> processRead(List<String> keys) {
-        timeStep++;
+    public void start() {
+        super.start();
+        if (snapshotPath != null && Files.exists(snapshotPath)) {
+            try {
+                CacheSnapshot.Header header =
+                        ((SnapshottableCache) cache).loadSnapshot(
+                                snapshotPath, snapshotInvalidationsReplayed);
+                // the restored access histories continue from the saved step
+                timeStep = Math.max(timeStep, header.timeStep());
+            } catch (IOException e) {
+                logger.warn(
+                        "MCCProxy::start - Failed to load snapshot from {}, starting cold",
+                        snapshotPath, e);
+            }
+        }
+        lastSnapshotNanos = System.nanoTime();
+    }
+
+    @Override
+    public void stop() {
+        if (snapshotPath != null) {
+            cacheLock.lock();
+            try {
+                writeSnapshot();
+            } finally {
+                cacheLock.unlock();
+            }
+            snapshotWriter.shutdown();
+            try {
+                if (!snapshotWriter.awaitTermination(30, TimeUnit.SECONDS)) {
+                    logger.warn(
+                            "MCCProxy::stop - Snapshot still being written after 30 seconds");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (evictionOutcomeLog != null) {
+            evictionOutcomeLog.close();
+        }
+        super.stop();
+    }
+
+    // only the copy of the metadata holds cacheLock, the file is written
+    // and forced on the snapshot writer
+    private void writeSnapshot() {
+        ByteBuffer snapshot =
+                ((SnapshottableCache) cache).captureSnapshot(timeStep);
+        lastSnapshotNanos = System.nanoTime();
+        snapshotWrite = snapshotWriter.submit(() -> {
+            try {
+                CacheSnapshot.write(snapshotPath, snapshot);
+            } catch (IOException e) {
+                logger.warn(
+                        "MCCProxy::writeSnapshot - Failed to write snapshot to {}",
+                        snapshotPath, e);
+            }
+        });
+    }
 
+    private static EvictionOutcomeLog createEvictionOutcomeLog(
+            MCCProxyConfig config) {
+        if (config.getEvictionLogPath() == null) {
+            return null;
+        }
+        if (!config.getCacheBackend().equals("DEFAULT")) {
+            throw new IllegalArgumentException(
+                    "The eviction outcome log is only supported by the DEFAULT cache backend");
+        }
+        try {
+            return new EvictionOutcomeLog(Path.of(config.getEvictionLogPath()),
+                                          "eviction-outcomes",
+                                          config.getEvictionLogHorizonSteps(),
+                                          EVICTION_LOG_FILE_BYTES,
+                                          EVICTION_LOG_FILES);
+        } catch (IOException e) {
+            throw new UncheckedIOException(
+                    "Failed to open the eviction outcome log in " +
+                            config.getEvictionLogPath(), e);
+        }
+    }
+
+    private static ObsoleteItemsPredictor createObsoleteItemsPredictor(
+            MCCProxyConfig.MLServiceConfig config) {
+        ObsoleteItemsPredictor predictor = createModelPredictor(config);
+        if (config.getVerdictCacheSize() > 0) {
+            predictor = new MemoizingObsoleteItemsPredictor(
+                    predictor, config.getVerdictCacheSize(), metrics);
+        }
+        if (config.getPredictor().equals("SERVICE")) {
+            // outside the verdict cache, so fallback verdicts are not
+            // remembered
+            predictor = new CircuitBreakingObsoleteItemsPredictor(
+                    predictor, new HeuristicObsoleteItemsPredictor(
+                    config.getFallbackIdleSteps()),
+                    PREDICTOR_FAILURE_THRESHOLD, PREDICTOR_OPEN_MILLIS);
+        }
+        return predictor;
+    }
+
+    private static ObsoleteItemsPredictor createModelPredictor(
+            MCCProxyConfig.MLServiceConfig config) {
+        switch (config.getPredictor()) {
+            case "NONE":
+                return new SimpleObsoleteItemsPredictor();
+            case "SERVICE":
+                return new MLObsoleteItemsPredictor(config.getHost(),
+                                                    config.getPort(),
+                                                    config.getDeadlineMillis());
+            case "LOCAL":
+                try {
+                    return new LocalObsoleteItemsPredictor(
+                            Path.of(config.getModelPath()));
+                } catch (IOException e) {
+                    throw new IllegalArgumentException(
+                            "Failed to load the model from " +
+                                    config.getModelPath(), e);
+                }
+            default:
+                throw new IllegalArgumentException(
+                        "Unsupported obsolete items predictor: " +
+                                config.getPredictor());
+        }
+    }
+
+    private static MCCCache createCache(MCCProxyConfig config,
+                                        KeyDictionary keyDictionary) {
+        if (config.getCacheVersionsPerKey() > 1 &&
+                !config.getCacheBackend().equals("DEFAULT")) {
+            throw new IllegalArgumentException(
+                    "Multiple versions per key are only supported by the DEFAULT cache backend");
+        }
+        switch (config.getCacheBackend()) {
+            case "DEFAULT":
+                ConsistentCache consistentCache =
+                        new ConsistentCache(config.getCacheSize(),
+                                            keyDictionary,
+                                            EvictionPolicy.create(
+                                                    config.getEvictionPolicy(),
+                                                    keyDictionary));
+                consistentCache.setMaxVersionsPerKey(
+                        config.getCacheVersionsPerKey());
+                return consistentCache;
+            case "SHARDED":
+                return new ShardedConsistentCache(config.getCacheSize(),
+                                                  config.getCacheShards(),
+                                                  keyDictionary,
+                                                  () -> EvictionPolicy.create(
+                                                          config.getEvictionPolicy(),
+                                                          keyDictionary));
+            case "PRIMITIVE":
+                return new PrimitiveConsistentCache(config.getCacheSize(),
+                                                    1024, keyDictionary,
+                                                    EvictionPolicy.create(
+                                                            config.getEvictionPolicy(),
+                                                            keyDictionary));
+            default:
+                throw new IllegalArgumentException(
+                        "Unsupported cache backend: " +
+                                config.getCacheBackend());
+        }
+    }
+
+    @Override
+    public List<ItemRecord> processRead(List<String> keys, int[] keyIds) {
         logger.info("MCCProxy::processRead - Processing read for keys: {}",
                     keys);
         if (keys.isEmpty()) {
+            cacheLock.lock();
+            try {
+                advanceTimeStep();
+            } finally {
+                cacheLock.unlock();
+            }
             return new ArrayList<>();
         }
 
-        boolean isMCCHit = this.cache.isMCCHit(keys);
+        MCCLookupResult lookupResult = lookupResults.get();
+        Claim claim = new Claim(keyIds);
+        // the claimed evicted items, whose ids must not be handed to another
+        // key before the claim is released
+        IntHashSet evictedItems = new IntHashSet();
+        cacheLock.lock();
+        try {
+            // a read of the same keys, or one still deleting them from Redis
+            while (isClaimed(keyIds)) {
+                claimsReleased.awaitUninterruptibly();
+            }
+            claims.add(claim);
+            lookupResult.raiseSnapshotFloor(snapshotFloor);
+            this.cache.lookup(keyIds, lookupResult);
+        } finally {
+            cacheLock.unlock();
+        }
+
+        try {
+            return processLookedUpRead(keys, keyIds, lookupResult, claim,
+                                       evictedItems);
+        } finally {
+            cacheLock.lock();
+            try {
+                claims.remove(claim);
+                claimsReleased.signalAll();
+            } finally {
+                cacheLock.unlock();
+            }
+            keyDictionary.release(evictedItems.toArray());
+        }
+    }
+
+    private List<ItemRecord> processLookedUpRead(List<String> keys,
+                                                 int[] keyIds,
+                                                 MCCLookupResult lookupResult,
+                                                 Claim claim,
+                                                 IntHashSet evictedItems) {
         List<String> missingItems;
         List<String> outdatedItems;
         List<String> hitItems;
-        if (isMCCHit) {
+        // the version of each hit item to read, older versions are served
+        // when the hit is at an earlier snapshot
+        List<Long> hitVersions;
+        if (lookupResult.isMCCHit()) {
             missingItems = new ArrayList<>();
             outdatedItems = new ArrayList<>();
             hitItems = new ArrayList<>(keys);
+            hitVersions = new ArrayList<>(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                hitVersions.add(lookupResult.getVersion(i));
+            }
 
-            cache.markItems(keys);
-
-            logger.info("MCCProxy::processRead - MCC hit");
+            logger.info("MCCProxy::processRead - MCC hit at snapshot: {}",
+                        lookupResult.getSnapshot());
         } else {
-            ConsistentCache.MCCHitResult mccHitResult =
-                    this.cache.makeMCCHit(keys);
-            missingItems = mccHitResult.getMissingItems();
-            outdatedItems = mccHitResult.getOutdatedItems();
-            hitItems = mccHitResult.getHitItems();
+            missingItems = new ArrayList<>(lookupResult.getMissingCount());
+            outdatedItems = new ArrayList<>(lookupResult.getOutdatedCount());
+            hitItems = new ArrayList<>(lookupResult.getHitCount());
+            hitVersions = new ArrayList<>(lookupResult.getHitCount());
+            lookupResult.collect(keys, MCCLookupResult.MISSING, missingItems);
+            lookupResult.collect(keys, MCCLookupResult.OUTDATED,
+                                 outdatedItems);
+            for (int i = 0; i < keys.size(); i++) {
+                if (lookupResult.getState(i) == MCCLookupResult.HIT) {
+                    hitItems.add(keys.get(i));
+                    hitVersions.add(lookupResult.getVersion(i));
+                }
+            }
 
             logger.info(
                     "MCCProxy::processRead - missing items: {} outdated items: {} hit items: {}",
                     missingItems, outdatedItems, hitItems);
         }
 
+        // the watermark the lookup was evaluated against
         long maxInvalidationTimestamp =
-                this.cache.getMaxInvalidationTimestamp();
+                lookupResult.getMaxInvalidationTimestamp();
 
         // if items are invalidated here
         // 2 - 5, 3 - inf, 4 - 5
@@ -106,12 +486,24 @@ public class MCCProxyEager extends MCCProxy {
                 dbReadItemsCounter.inc(keys.size());
                 outdatedItems.addAll(hitItems);
                 hitItems.clear();
+                hitVersions.clear();
                 logger.info(
                         "MCCProxy::processRead - Read all items from DB: {}",
                         itemsFromDb);
             }
         }
 
+        if (redisEntryOverhead >= 0) {
+            List<ItemRecord> sizedItems = new ArrayList<>(itemsFromDb.size());
+            for (ItemRecord item : itemsFromDb) {
+                sizedItems.add(new ItemRecord(item.getKey(), item.getValue(),
+                                              item.getVersion(),
+                                              item.getStoredSize(
+                                                      redisEntryOverhead)));
+            }
+            itemsFromDb = sizedItems;
+        }
+
         if (hitItems.size() == keys.size()) {
             this.mccHitCounter.inc();
             this.mccHitItemsCounter.inc(keys.size());
@@ -124,87 +516,264 @@ public class MCCProxyEager extends MCCProxy {
         logger.info("MCCProxy::processRead - Data size to put: {}",
                     dataSizeToPut);
 
-        // evict outdated items
-        int outdatedItemsSize = cache.getDataSize(outdatedItems);
-        logger.info("MCCProxy::processRead - Outdated items: {} size: {}",
-                    outdatedItems, outdatedItemsSize);
-
-        List<String> itemsToEvict = new ArrayList<>();
-        // evict obsolete items
-        if (cache.getCacheSize() + dataSizeToPut - outdatedItemsSize >
-                cache.getCacheSizeLimit()) {
-            int neededSize =
-                    cache.getCacheSize() + dataSizeToPut - outdatedItemsSize -
-                            cache.getCacheSizeLimit();
-
-            Set<String> decidedItems = new HashSet<>();
-            decidedItems.addAll(hitItems);
-            decidedItems.addAll(outdatedItems);
+        List<String> versionedKeysToDelete = new ArrayList<>();
+        cacheLock.lock();
+        try {
+            advanceTimeStep();
+            if (lookupResult.isMCCHit()) {
+                cache.markItems(keys);
+            }
 
-            if (cache.isAllMarked()) {
-                cache.startNewPhase();
+            // evict outdated items, unless their versions are kept
+            int outdatedItemsSize = versionsPerKey > 1 ? 0 :
+                    cache.getDataSize(outdatedItems);
+            logger.info(
+                    "MCCProxy::processRead - Outdated items: {} size: {}",
+                    outdatedItems, outdatedItemsSize);
 
-                List<String> obsoleteItems =
-                        cache.getObsoleteItems(decidedItems, this.timeStep);
-                int obsoleteItemsSize = cache.getDataSize(obsoleteItems);
-                itemsToEvict.addAll(obsoleteItems);
-                neededSize -= obsoleteItemsSize;
+            List<String> itemsToEvict = new ArrayList<>();
+            // evict obsolete items
+            if (cache.getCacheSize() + dataSizeToPut - outdatedItemsSize >
+                    cache.getCacheSizeLimit()) {
+                int neededSize = cache.getCacheSize() + dataSizeToPut -
+                        outdatedItemsSize - cache.getCacheSizeLimit();
+
+                keepRequestedItems(lookupResult, keyIds, claim);
+
+                if (cache.isAllMarked()) {
+                    cache.startNewPhase();
+
+                    List<String> obsoleteItems = cache.getObsoleteItems(
+                            decidedItems, this.timeStep);
+                    int obsoleteItemsSize =
+                            cache.getDataSize(obsoleteItems);
+                    itemsToEvict.addAll(obsoleteItems);
+                    neededSize -= obsoleteItemsSize;
+
+                    logger.info(
+                            "MCCProxy::processRead - Obsolete items: {} size: {}",
+                            obsoleteItems, obsoleteItemsSize);
+                }
+
+                logger.info("MCCProxy::processRead - Needed size: {}",
+                            neededSize);
+
+                if (neededSize > 0) {
+                    for (String key : itemsToEvict) {
+                        decidedItems.add(keyDictionary.getId(key));
+                    }
+                    List<String> lruItems =
+                            cache.getLruItems(decidedItems, neededSize);
+
+                    logger.info("MCCProxy::processRead - LRU items: {}",
+                                lruItems);
+
+                    itemsToEvict.addAll(lruItems);
+                }
+            }
 
+            // the heap budget bounds the number of items
+            int itemCountAfter = cache.getItemCount() +
+                    missingItems.size() - itemsToEvict.size();
+            if (itemCountAfter > maxItemCount) {
+                keepRequestedItems(lookupResult, keyIds, claim);
+                for (String key : itemsToEvict) {
+                    decidedItems.add(keyDictionary.getId(key));
+                }
+                while (itemCountAfter > maxItemCount) {
+                    List<String> lruItems =
+                            cache.getLruItems(decidedItems, 1);
+                    if (lruItems.isEmpty()) {
+                        break;
+                    }
+                    for (String key : lruItems) {
+                        decidedItems.add(keyDictionary.getId(key));
+                        itemsToEvict.add(key);
+                        itemCountAfter--;
+                    }
+                }
                 logger.info(
-                        "MCCProxy::processRead - Obsolete items: {} size: {}",
-                        obsoleteItems, obsoleteItemsSize);
+                        "MCCProxy::processRead - Evicting for the heap budget: itemCount={} maxItemCount={}",
+                        itemCountAfter, maxItemCount);
             }
 
-            logger.info("MCCProxy::processRead - Needed size: {}", neededSize);
-
-            if (neededSize > 0) {
-                decidedItems.addAll(itemsToEvict);
-                List<String> lruItems =
-                        cache.getLruItems(decidedItems, neededSize);
+            for (String key : itemsToEvict) {
+                cache.collectVersionedKeys(key, versionedKeysToDelete);
+                // no read may cache the item again before it is deleted
+                int keyId = keyDictionary.getId(key);
+                if (evictedItems.add(keyId)) {
+                    keyDictionary.retain(keyId);
+                    claim.keyIds.add(keyId);
+                }
+            }
+            // versions replaced during the previous reads
+            cache.drainDroppedVersions(versionedKeysToDelete);
+
+            // applied before the Redis batch, the claims keep the reads of
+            // these keys and of the evicted items out until it is done
+            this.cache.postCacheUpdate(hitItems, itemsToEvict, itemsFromDb,
+                                       this.timeStep);
+            if (claim.invalidated) {
+                applyMissedInvalidations(keys, claim);
+            }
 
-                logger.info("MCCProxy::processRead - LRU items: {}", lruItems);
+            // later snapshots must not go back behind anything returned so
+            // far
+            for (Long version : hitVersions) {
+                snapshotFloor = Math.max(snapshotFloor, version);
+            }
+            for (ItemRecord item : itemsFromDb) {
+                snapshotFloor = Math.max(snapshotFloor, item.getVersion());
+            }
 
-                itemsToEvict.addAll(lruItems);
+            if (testMode) {
+                for (int i = 0; i < hitItems.size(); i++) {
+                    checkMonotonicRead(hitItems.get(i), hitVersions.get(i));
+                }
+                for (ItemRecord item : itemsFromDb) {
+                    checkMonotonicRead(item.getKey(), item.getVersion());
+                }
             }
+        } finally {
+            cacheLock.unlock();
+        }
+
+        // values are stored under versioned keys
+        List<String> versionedHitKeys = new ArrayList<>(hitItems.size());
+        for (int i = 0; i < hitItems.size(); i++) {
+            versionedHitKeys.add(ItemRecord.versionedKey(hitItems.get(i),
+                                                         hitVersions.get(i)));
+        }
+        List<ItemRecord> versionedItemsFromDb =
+                new ArrayList<>(itemsFromDb.size());
+        for (ItemRecord item : itemsFromDb) {
+            versionedItemsFromDb.add(
+                    new ItemRecord(item.getVersionedKey(), item.getValue(),
+                                   item.getVersion()));
         }
 
         List<Object> cacheResults =
-                this.cacheConnector.batchExecute(hitItems, itemsToEvict,
-                                                 itemsFromDb);
+                this.cacheConnector.batchExecute(versionedHitKeys,
+                                                 versionedKeysToDelete,
+                                                 versionedItemsFromDb);
 
         logger.info("MCCProxy::processRead - Cache execution results: {}",
                     cacheResults);
 
-        this.cache.postCacheUpdate(hitItems, itemsToEvict, itemsFromDb,
-                                   this.timeStep);
-
         List<ItemRecord> results = new ArrayList<>();
         for (int i = 0; i < hitItems.size(); i++) {
             String key = hitItems.get(i);
             results.add(new ItemRecord(key, cacheResults.get(i).toString(),
-                                       cache.getItemVersion(key)));
+                                       hitVersions.get(i)));
         }
         results.addAll(itemsFromDb);
 
         logger.info("MCCProxy::processRead - Returning results: {}", results);
+        return results;
+    }
 
-        if (testMode) {
-            for (ItemRecord item : results) {
-                assert !itemsLastReadVersion.containsKey(item.getKey()) ||
-                        itemsLastReadVersion.get(item.getKey()) <=
-                                item.getVersion();
-                itemsLastReadVersion.put(item.getKey(), item.getVersion());
+    // every requested item that is cached is either hit or outdated, and
+    // the items claimed by the other reads in flight are theirs
+    private void keepRequestedItems(MCCLookupResult lookupResult,
+                                    int[] keyIds, Claim claim) {
+        decidedItems.clear();
+        for (int i = 0; i < keyIds.length; i++) {
+            if (lookupResult.getState(i) != MCCLookupResult.MISSING) {
+                decidedItems.add(keyIds[i]);
+            }
+        }
+        for (Claim other : claims) {
+            if (other != claim) {
+                decidedItems.addAll(other.keyIds);
             }
         }
-        return results;
+    }
+
+    private boolean isClaimed(int[] keyIds) {
+        for (Claim other : claims) {
+            for (int keyId : keyIds) {
+                if (other.keyIds.contains(keyId)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // An invalidation that arrived while the read was fetching found its key
+    // absent or older, so it did not close the lifetime of the version just
+    // cached from the database; a version at or above the invalidated one is
+    // left open.
+    private void applyMissedInvalidations(List<String> keys, Claim claim) {
+        for (int i = 0; i < keys.size(); i++) {
+            if (claim.invalidatedVersions[i] != Long.MIN_VALUE) {
+                cache.closeLifetime(keys.get(i),
+                                    claim.invalidatedVersions[i]);
+            }
+        }
+    }
+
+    // guarded by cacheLock, reads in flight must see every invalidation of
+    // their keys that they may have fetched an older version of
+    private void recordClaimedInvalidations(List<String> keys,
+                                            long newVersion) {
+        if (claims.isEmpty()) {
+            return;
+        }
+        for (String key : keys) {
+            int keyId = keyDictionary.getId(key);
+            if (keyId == KeyDictionary.UNKNOWN_ID) {
+                // no read holds it
+                continue;
+            }
+            for (Claim claim : claims) {
+                claim.recordInvalidation(keyId, newVersion);
+            }
+        }
+    }
+
+    private void advanceTimeStep() {
+        timeStep++;
+        // no write is queued behind one still in flight, a later step tries
+        // again
+        if (snapshotPath != null &&
+                System.nanoTime() - lastSnapshotNanos >= snapshotIntervalNanos &&
+                (snapshotWrite == null || snapshotWrite.isDone())) {
+            writeSnapshot();
+        }
+    }
+
+    private void checkMonotonicRead(String key, long version) {
+        assert itemsLastReadVersion.getOrDefault(key, Long.MIN_VALUE) <=
+                version;
+        itemsLastReadVersion.put(key, version);
     }
 
     @Override
     public boolean processInvalidation(List<String> keys, long newVersion) {
-        timeStep++;
-        for (String key : keys) {
-            cache.invalidate(key, newVersion, timeStep);
+        long step;
+        cacheLock.lock();
+        try {
+            recordClaimedInvalidations(keys, newVersion);
+            // every invalidation takes its own step on both paths
+            step = ++timeStep;
+            if (!isConcurrentInvalidationSupported()) {
+                cache.invalidate(keys, newVersion, step);
+                return true;
+            }
+        } finally {
+            cacheLock.unlock();
         }
+        // Applied outside the lock, so its writes may be stamped with a step
+        // older than that of a read that runs meanwhile, which the trackers
+        // accept. It was recorded first, so a read that caches one of its
+        // keys before it is applied closes the lifetime itself.
+        cache.invalidate(keys, newVersion, step);
         return true;
     }
+
+    @Override
+    public boolean isConcurrentInvalidationSupported() {
+        return cache.isThreadSafe();
+    }
 }
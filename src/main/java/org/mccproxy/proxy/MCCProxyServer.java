@@ -6,7 +6,9 @@ import io.grpc.Grpc;
 import io.grpc.InsecureServerCredentials;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
+import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
+import org.mccproxy.cache.KeyDictionary;
 import org.mccproxy.service.*;
 import org.mccproxy.utils.TimeUtils;
 import org.slf4j.Logger;
@@ -118,6 +120,10 @@ public class MCCProxyServer {
                 new LinkedBlockingQueue<>();
 
         private final MCCProxy proxy;
+        // null when invalidations share the task queue with reads
+        private final InvalidationPipeline invalidationPipeline;
+        // null when reads run one at a time on the task thread
+        private final KeyOrderedExecutor readExecutor;
         private volatile boolean isRunning = true;
 
         MCCProxyService(MCCProxyConfig config) {
@@ -128,8 +134,34 @@ public class MCCProxyServer {
                         "Unsupported version selection policy: " +
                                 config.getVersionSelectionPolicy());
             }
+            this.proxy.start();
+
+            // Parallel reads only keep the order of requests per key, which
+            // would let invalidations of different keys overtake each other
+            // and move the watermark backwards. They get the pipeline's
+            // single ordered lane instead; a cache that is not thread-safe
+            // is invalidated under the proxy's cache lock.
+            if (this.proxy.isConcurrentInvalidationSupported() ||
+                    config.getReadThreads() > 1) {
+                this.invalidationPipeline = new InvalidationPipeline(
+                        config.getInvalidationRingSize(),
+                        this.proxy::processInvalidation);
+                this.invalidationPipeline.start();
+            } else {
+                logger.info(
+                        "MCCProxyService::MCCProxyService - Cache backend {} is not thread-safe, invalidations are queued with reads",
+                        config.getCacheBackend());
+                this.invalidationPipeline = null;
+            }
 
-            startTaskProcessingThread();
+            if (config.getReadThreads() > 1) {
+                this.readExecutor =
+                        new KeyOrderedExecutor(config.getReadThreads(),
+                                               "read-worker");
+            } else {
+                this.readExecutor = null;
+                startTaskProcessingThread();
+            }
         }
 
         private void startTaskProcessingThread() {
@@ -148,10 +180,21 @@ public class MCCProxyServer {
 
         public void stopTaskProcessingThreads() {
             isRunning = false;
+            if (readExecutor != null) {
+                readExecutor.shutdown();
+            }
+            if (invalidationPipeline != null) {
+                invalidationPipeline.stop();
+            }
+            proxy.stop();
         }
 
-        public void addReadTask(Runnable task) {
-            taskQueue.add(task);
+        public void addReadTask(List<String> keys, Runnable task) {
+            if (readExecutor != null) {
+                readExecutor.submit(keys, task);
+            } else {
+                taskQueue.add(task);
+            }
         }
 
         public void addInvalidateTask(Runnable task) {
@@ -167,9 +210,25 @@ public class MCCProxyServer {
                          StreamObserver<ReadResponse> responseObserver) {
             logger.info("Received read request for keys: {}",
                         request.getKeysList());
-            addReadTask(() -> {
-                List<ItemRecord> result =
-                        this.proxy.processRead(request.getKeysList());
+            // intern once on the gRPC thread, the proxy works on the ids
+            KeyDictionary keyDictionary = this.proxy.getKeyDictionary();
+            int[] keyIds = keyDictionary.intern(request.getKeysList());
+            addReadTask(request.getKeysList(), () -> {
+                List<ItemRecord> result;
+                try {
+                    result = this.proxy.processRead(request.getKeysList(),
+                                                    keyIds);
+                } catch (RuntimeException | AssertionError e) {
+                    // the client gets an answer even if the read failed
+                    logger.error(
+                            "MCCProxyService::read - Failed to read keys: {}",
+                            request.getKeysList(), e);
+                    responseObserver.onError(Status.INTERNAL.withDescription(
+                            e.toString()).asRuntimeException());
+                    return;
+                } finally {
+                    keyDictionary.release(keyIds);
+                }
 
                 ReadResponse.Builder responseBuilder =
                         ReadResponse.newBuilder();
@@ -197,19 +256,34 @@ public class MCCProxyServer {
             logger.info(
                     "Received invalidate request for keys: {} timestamp: {}",
                     request.getKeysList(), request.getTimestamp());
+            long newVersion = TimeUtils.convertProtoTimestampToNanos(
+                    request.getTimestamp());
+
+            if (invalidationPipeline != null) {
+                invalidationPipeline.publish(request.getKeysList(), newVersion,
+                                             success -> respond(
+                                                     responseObserver,
+                                                     success));
+                return;
+            }
 
             addInvalidateTask(() -> {
                 boolean result =
                         this.proxy.processInvalidation(request.getKeysList(),
-                                                       TimeUtils.convertProtoTimestampToNanos(
-                                                               request.getTimestamp()));
-                InvalidateResponse response =
-                        InvalidateResponse.newBuilder().setSuccess(result)
-                                .build();
-                responseObserver.onNext(response);
-                responseObserver.onCompleted();
+                                                       newVersion);
+                respond(responseObserver, result);
             });
         }
 
+        private static void respond(
+                StreamObserver<InvalidateResponse> responseObserver,
+                boolean success) {
+            InvalidateResponse response =
+                    InvalidateResponse.newBuilder().setSuccess(success)
+                            .build();
+            responseObserver.onNext(response);
+            responseObserver.onCompleted();
+        }
+
     }
 }
\ No newline at end of file
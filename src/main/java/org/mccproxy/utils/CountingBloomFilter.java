@@ -0,0 +1,112 @@
+package org.mccproxy.utils;
+
+/**
+ * A counting Bloom filter over strings with 4-bit counters, 16 to a long.
+ * Keys can be removed as well as added, so it can track the content of a
+ * cache. {@link #mightContain} never returns false for a key that was added
+ * and not removed since.
+ * <p>
+ * A counter that reaches 15 sticks there, as its true count is lost, so the
+ * filter gets less selective with every saturated counter and as it fills
+ * beyond its capacity. {@link #needsRebuild} tells the owner when to rebuild
+ * it from the keys it actually holds. A few saturated counters are tolerated,
+ * as keys with equal hash codes saturate them again after every rebuild. Not
+ * thread-safe.
+ */
+public class CountingBloomFilter {
+    private static final int NUM_HASHES = 4;
+    // counters per expected key, about 2.4% false positives with 4 hashes
+    private static final int COUNTERS_PER_KEY = 8;
+    private static final int MAX_COUNT = 15;
+    // saturated counters tolerated per 256 counters
+    private static final int MAX_SATURATED_PER_256 = 1;
+
+    private final long[] counters;
+    private final int counterMask;
+    private final int capacity;
+    private int saturatedCounters;
+
+    public CountingBloomFilter(int capacity) {
+        this.capacity = Math.max(capacity, 16);
+        int numCounters = Integer.highestOneBit(
+                this.capacity * COUNTERS_PER_KEY - 1) << 1;
+        counters = new long[numCounters / 16];
+        counterMask = numCounters - 1;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public void add(String key) {
+        int h = key.hashCode();
+        int h1 = IntHashSet.mix(h);
+        int h2 = secondHash(h);
+        for (int i = 0; i < NUM_HASHES; i++) {
+            int counter = (h1 + i * h2) & counterMask;
+            int count = get(counter);
+            if (count < MAX_COUNT) {
+                set(counter, count + 1);
+                if (count + 1 == MAX_COUNT) {
+                    saturatedCounters++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes a key that was added before.
+     */
+    public void remove(String key) {
+        int h = key.hashCode();
+        int h1 = IntHashSet.mix(h);
+        int h2 = secondHash(h);
+        for (int i = 0; i < NUM_HASHES; i++) {
+            int counter = (h1 + i * h2) & counterMask;
+            int count = get(counter);
+            // a saturated counter does not know how many keys it counts
+            if (count > 0 && count < MAX_COUNT) {
+                set(counter, count - 1);
+            }
+        }
+    }
+
+    public boolean mightContain(String key) {
+        int h = key.hashCode();
+        int h1 = IntHashSet.mix(h);
+        int h2 = secondHash(h);
+        for (int i = 0; i < NUM_HASHES; i++) {
+            if (get((h1 + i * h2) & counterMask) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param size the number of keys the filter holds
+     * @return whether the filter is too full or has saturated counters
+     */
+    public boolean needsRebuild(int size) {
+        return size > capacity || saturatedCounters >
+                (counterMask + 1) / 256 * MAX_SATURATED_PER_256;
+    }
+
+    // odd, so the probes of a key never repeat within the table
+    private static int secondHash(int h) {
+        h *= 0x85EBCA6B;
+        return (h ^ (h >>> 13)) | 1;
+    }
+
+    private int get(int counter) {
+        return (int) (counters[counter >>> 4] >>> ((counter & 15) << 2)) &
+                0xF;
+    }
+
+    private void set(int counter, int count) {
+        int shift = (counter & 15) << 2;
+        counters[counter >>> 4] =
+                (counters[counter >>> 4] & ~(0xFL << shift)) |
+                        ((long) count << shift);
+    }
+}
@@ -0,0 +1,120 @@
+package org.mccproxy.utils;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing set of non-negative ints, meant for the dense key ids
+ * handed out by {@link org.mccproxy.cache.KeyDictionary}. Lookups hash a
+ * primitive and never box.
+ */
+public class IntHashSet {
+    // id + 1, 0 marks an empty bucket
+    private int[] table;
+    private int mask;
+    private int size;
+
+    public IntHashSet() {
+        this(16);
+    }
+
+    public IntHashSet(int expectedSize) {
+        int capacity =
+                Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) * 2;
+        table = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    public static IntHashSet of(int... values) {
+        IntHashSet set = new IntHashSet(values.length);
+        set.addAll(values);
+        return set;
+    }
+
+    public boolean add(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        int i = indexOf(value);
+        if (table[i] != 0) {
+            return false;
+        }
+        table[i] = value + 1;
+        if (++size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return true;
+    }
+
+    public void addAll(int[] values) {
+        for (int value : values) {
+            add(value);
+        }
+    }
+
+    public void addAll(IntHashSet other) {
+        for (int entry : other.table) {
+            if (entry != 0) {
+                add(entry - 1);
+            }
+        }
+    }
+
+    public boolean contains(int value) {
+        return value >= 0 && table[indexOf(value)] != 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(table, 0);
+            size = 0;
+        }
+    }
+
+    public int[] toArray() {
+        int[] values = new int[size];
+        int n = 0;
+        for (int entry : table) {
+            if (entry != 0) {
+                values[n++] = entry - 1;
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    static int mix(int value) {
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int indexOf(int value) {
+        int i = mix(value) & mask;
+        while (table[i] != 0 && table[i] != value + 1) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void rehash(int capacity) {
+        int[] old = table;
+        table = new int[capacity];
+        mask = capacity - 1;
+        for (int entry : old) {
+            if (entry != 0) {
+                table[indexOf(entry - 1)] = entry;
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.mccproxy.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptiveAccessTrackerTest {
+
+    private static AdaptiveAccessTracker.Factory<RingBufferAccessTracker> newFactory(
+            int windowSize, int maxSparseAccesses, LogicalClock clock) {
+        return new AdaptiveAccessTracker.Factory<>(
+                windowSize, maxSparseAccesses, clock, timeStep -> {
+            RingBufferAccessTracker dense =
+                    new RingBufferAccessTracker(windowSize, clock);
+            dense.syncTimeStep(timeStep);
+            return dense;
+        });
+    }
+
+    @Test
+    void testBecomesDenseWhenHot() {
+        LogicalClock clock = new LogicalClock();
+        AdaptiveAccessTracker.Factory<RingBufferAccessTracker> factory =
+                newFactory(256, 4, clock);
+        AdaptiveAccessTracker<RingBufferAccessTracker> tracker =
+                factory.create(0);
+        // reads far apart never fill the sparse form
+        for (int i = 0; i < 10; i++) {
+            tracker.recordRead(i * 100L);
+        }
+        assertFalse(tracker.isDense());
+        assertEquals(3, tracker.toRawFeature().getReadAccessesList().stream()
+                .mapToInt(Long::bitCount).sum());
+
+        for (int i = 0; i < 5; i++) {
+            tracker.recordWrite(1000 + i);
+        }
+        assertTrue(tracker.isDense());
+        assertEquals(tracker.getDenseTracker().toRawFeature(),
+                     tracker.toRawFeature());
+    }
+
+    @Test
+    void testMatchesRingBufferAccessTracker() {
+        for (int maxSparseAccesses : new int[]{1, 8, 127}) {
+            LogicalClock clock = new LogicalClock();
+            AdaptiveAccessTracker.Factory<RingBufferAccessTracker> factory =
+                    newFactory(100, maxSparseAccesses, clock);
+            Random random = new Random(maxSparseAccesses);
+            for (int run = 0; run < 20; run++) {
+                AdaptiveAccessTracker<RingBufferAccessTracker> tracker =
+                        factory.create(clock.now());
+                RingBufferAccessTracker reference =
+                        new RingBufferAccessTracker(100, clock);
+                reference.syncTimeStep(clock.now());
+                long timeStep = clock.now();
+                for (int i = 0; i < 500; i++) {
+                    timeStep += random.nextInt(
+                            random.nextInt(10) == 0 ? 200 : 8);
+                    switch (random.nextInt(4)) {
+                        case 0 -> {
+                            tracker.recordRead(timeStep);
+                            reference.recordRead(timeStep);
+                        }
+                        case 1 -> {
+                            tracker.recordWrite(timeStep);
+                            reference.recordWrite(timeStep);
+                        }
+                        case 2 -> {
+                            tracker.syncTimeStep(timeStep);
+                            reference.syncTimeStep(timeStep);
+                        }
+                        default -> clock.advanceTo(timeStep);
+                    }
+                    assertEquals(reference.toRawFeature(),
+                                 tracker.toRawFeature());
+                }
+            }
+        }
+    }
+}
@@ -5,7 +5,13 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mccproxy.ml.ObsoleteItemsPredictor;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
@@ -155,6 +161,29 @@ public class ConsistentCacheTest {
         assertEquals(7, cache.getMaxInvalidationTimestamp());
     }
 
+    @Test
+    public void testInvalidateUncachedKeys() {
+        for (int i = 0; i < 3000; i++) {
+            cache.put("key" + i, 1L, 1);
+        }
+        for (int i = 0; i < 3000; i += 2) {
+            cache.evict("key" + i);
+        }
+
+        cache.invalidate("uncached", 2L);
+        assertEquals(2, cache.getMaxInvalidationTimestamp());
+        assertEquals(-1, cache.getItemValidUntil("uncached"));
+
+        for (int i = 0; i < 3000; i++) {
+            cache.invalidate("key" + i, 3L + i);
+        }
+        assertEquals(3002, cache.getMaxInvalidationTimestamp());
+        for (int i = 1; i < 3000; i += 2) {
+            assertEquals(3L + i, cache.getItemValidUntil("key" + i));
+        }
+        assertEquals(1500, cache.getInvalidatedItems().size());
+    }
+
     @Test
     public void testGetLruItems() {
         String[] keys = {"testKey1", "testKey2", "testKey3", "testKey4"};
@@ -310,6 +339,336 @@ public class ConsistentCacheTest {
                              result.getHitItems());
     }
 
+    @Test
+    public void testLookup() {
+        String[] keys = {"testKey1", "testKey2", "testKey3", "testKey4"};
+        for (int i = 0; i < keys.length; i++) {
+            cache.put(keys[i], i + 1, 10);
+            cache.invalidate(keys[i], 5L);
+        }
+        cache.put("testKey1", 5L, 10);
+
+        MCCLookupResult result = new MCCLookupResult();
+        List<String> requested =
+                List.of("testKey1", "testKey2", "testKey3", "testKey5");
+        cache.lookup(requested, result);
+        assertFalse(result.isMCCHit());
+        assertEquals(1, result.getHitCount());
+        assertEquals(2, result.getOutdatedCount());
+        assertEquals(1, result.getMissingCount());
+        assertEquals(MCCLookupResult.HIT, result.getState(0));
+        assertEquals(MCCLookupResult.OUTDATED, result.getState(1));
+        assertEquals(MCCLookupResult.MISSING, result.getState(3));
+
+        var expected = cache.makeMCCHit(requested);
+        List<String> collected = new ArrayList<>();
+        result.collect(requested, MCCLookupResult.OUTDATED, collected);
+        assertIterableEquals(expected.getOutdatedItems(), collected);
+
+        // the same buffer is reused for the next request
+        requested = List.of("testKey2", "testKey3", "testKey4");
+        cache.lookup(requested, result);
+        assertEquals(cache.isMCCHit(requested), result.isMCCHit());
+        assertTrue(result.isMCCHit());
+        assertEquals(3, result.size());
+        assertEquals(4, result.getLifeStartMax());
+        assertEquals(5, result.getLifeEndMin());
+
+        cache.lookup(List.of("testKey1", "testKey2"), result);
+        assertFalse(result.isMCCHit());
+        assertEquals(5, result.getMaxInvalidationTimestamp());
+    }
+
+    @Test
+    public void testGetObsoleteItems() {
+        // every candidate the predictor is asked about is obsolete
+        cache.setObsoleteItemsPredictor(new ObsoleteItemsPredictor() {
+            @Override
+            public List<Boolean> predictObsoleteItems(
+                    List<AccessTracker> accessTrackers) {
+                return accessTrackers.stream().map(t -> true).toList();
+            }
+        });
+
+        for (int i = 1; i <= 5; i++) {
+            cache.put("testKey" + i, 1, 10, 0);
+        }
+        // every item is a candidate by default
+        assertIterableEquals(List.of("testKey1", "testKey2", "testKey3",
+                                     "testKey4", "testKey5"),
+                             cache.getObsoleteItems(Set.of(), 0));
+
+        cache.setObsoleteIdleTimeSteps(256);
+        cache.invalidate("testKey2", 5L, 10);
+        cache.invalidate("testKey4", 5L, 10);
+        assertIterableEquals(List.of("testKey2", "testKey4"),
+                             cache.getInvalidatedItems());
+
+        // only superseded versions are candidates before the idle window
+        assertIterableEquals(List.of("testKey2", "testKey4"),
+                             cache.getObsoleteItems(Set.of(), 10));
+        assertIterableEquals(List.of("testKey4"),
+                             cache.getObsoleteItems(Set.of("testKey2"), 10));
+
+        // refreshing or evicting an item drops it from the candidates
+        cache.put("testKey2", 5L, 10, 20);
+        cache.evict("testKey4");
+        assertIterableEquals(List.of(), cache.getInvalidatedItems());
+
+        // idle items are found at the LRU tail
+        cache.access("testKey5", 200);
+        assertIterableEquals(List.of("testKey1", "testKey3"),
+                             cache.getObsoleteItems(Set.of(), 256));
+        assertIterableEquals(List.of("testKey1", "testKey3", "testKey2"),
+                             cache.getObsoleteItems(Set.of(), 276));
+    }
+
+    @Test
+    public void testPrecomputeObsoleteItems() {
+        // an async predictor that deems every candidate obsolete
+        List<Integer> batchSizes = new ArrayList<>();
+        cache.setObsoleteItemsPredictor(new ObsoleteItemsPredictor() {
+            @Override
+            public List<Boolean> predictObsoleteItems(
+                    List<AccessTracker> accessTrackers) {
+                batchSizes.add(accessTrackers.size());
+                return accessTrackers.stream().map(t -> true).toList();
+            }
+
+            @Override
+            public boolean isAsync() {
+                return true;
+            }
+        });
+        cache.setObsoleteIdleTimeSteps(256);
+
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            keys.add("testKey" + i);
+            cache.put("testKey" + i, 1, 0, 0);
+        }
+        for (int i = 0; i < 3; i++) {
+            cache.invalidate("testKey" + i, 5L, 10);
+        }
+        cache.startNewPhase();
+
+        // the candidates are scored once 90% of the items are marked
+        cache.markItems(keys.subList(0, 89));
+        assertEquals(List.of(), batchSizes);
+        cache.markItems(keys.subList(89, 90));
+        assertEquals(List.of(3), batchSizes);
+
+        // only the item read since then is scored again at the phase end
+        cache.access("testKey1", 20);
+        cache.markItems(keys.subList(90, 100));
+        assertTrue(cache.isAllMarked());
+        assertIterableEquals(List.of("testKey0", "testKey2", "testKey1"),
+                             cache.getObsoleteItems(Set.of(), 30));
+        assertEquals(List.of(3, 1), batchSizes);
+
+        // the verdicts are used for a single phase end
+        assertIterableEquals(List.of("testKey0", "testKey1", "testKey2"),
+                             cache.getObsoleteItems(Set.of(), 30));
+        assertEquals(List.of(3, 1, 3), batchSizes);
+    }
+
+    @Test
+    public void testOlderVersions() {
+        cache.setMaxVersionsPerKey(3);
+        cache.put("testKey1", 1L, 10);
+        cache.put("testKey2", 1L, 10);
+        cache.invalidate("testKey1", 3L);
+        cache.put("testKey1", 3L, 10);
+        cache.invalidate("testKey2", 5L);
+        cache.put("testKey2", 5L, 10);
+        cache.invalidate("testKey1", 6L);
+        cache.invalidate("testKey2", 7L);
+        cache.put("testKey2", 7L, 10);
+        // testKey1: 1 - 3, 3 - 6
+        // testKey2: 1 - 5, 5 - 7, 7 - inf
+        assertEquals(50, cache.getCacheSize());
+
+        // the current versions do not overlap, testKey1@3 and testKey2@5 do
+        List<String> keys = List.of("testKey1", "testKey2");
+        MCCLookupResult result = new MCCLookupResult();
+        cache.lookup(keys, result);
+        assertTrue(result.isMCCHit());
+        assertEquals(5, result.getSnapshot());
+        assertEquals(3, result.getVersion(0));
+        assertEquals(5, result.getVersion(1));
+        assertTrue(cache.isMCCHit(keys));
+
+        // no snapshot behind what was already returned
+        result.raiseSnapshotFloor(6);
+        cache.lookup(keys, result);
+        assertFalse(result.isMCCHit());
+        assertEquals(MCCLookupResult.OUTDATED, result.getState(0));
+        assertEquals(MCCLookupResult.HIT, result.getState(1));
+        assertEquals(7, result.getVersion(1));
+
+        // the oldest version makes room
+        cache.invalidate("testKey2", 9L);
+        cache.put("testKey2", 9L, 10);
+        List<String> dropped = new ArrayList<>();
+        cache.drainDroppedVersions(dropped);
+        assertIterableEquals(List.of("testKey2@1"), dropped);
+        List<String> versionedKeys = new ArrayList<>();
+        cache.collectVersionedKeys("testKey2", versionedKeys);
+        assertIterableEquals(List.of("testKey2@5", "testKey2@7", "testKey2@9"),
+                             versionedKeys);
+        assertEquals(50, cache.getCacheSize());
+
+        cache.evict("testKey2");
+        assertEquals(20, cache.getCacheSize());
+        assertEquals(20, cache.getDataSize(List.of("testKey1")));
+
+        // a single version per key replaces the value
+        ConsistentCache singleVersionCache = new ConsistentCache(100);
+        singleVersionCache.put("testKey1", 1L, 10);
+        singleVersionCache.put("testKey1", 3L, 10);
+        dropped.clear();
+        singleVersionCache.drainDroppedVersions(dropped);
+        assertIterableEquals(List.of("testKey1@1"), dropped);
+        assertEquals(10, singleVersionCache.getCacheSize());
+    }
+
+    @Test
+    public void testLateInvalidationOfReplacedVersion() {
+        cache.setMaxVersionsPerKey(3);
+        cache.invalidate("testKey1", 1L);
+        cache.put("testKey1", 1L, 10);
+        // the database returned version 3 before the invalidation of
+        // version 2 arrived
+        cache.put("testKey1", 3L, 10);
+        cache.invalidate("testKey1", 2L);
+        cache.invalidate("testKey1", 3L);
+        cache.put("testKey2", 2L, 10);
+        cache.invalidate("testKey2", 3L);
+        // testKey1: 1 - 2, 3 - inf
+        // testKey2: 2 - 3
+
+        // testKey1@1 must not be served at snapshot 2
+        MCCLookupResult result = new MCCLookupResult();
+        cache.lookup(List.of("testKey1", "testKey2"), result);
+        assertFalse(result.isMCCHit());
+
+        // nothing was invalidated up to the watermark, the version stays
+        // valid up to it
+        cache.invalidate("testKey3", 4L);
+        cache.put("testKey3", 4L, 10);
+        cache.put("testKey3", 6L, 10);
+        cache.put("testKey2", 4L, 10);
+        cache.invalidate("testKey2", 5L);
+        // testKey2: 4 - 5, testKey3: 4 - 5, 6 - inf
+        cache.lookup(List.of("testKey2", "testKey3"), result);
+        assertTrue(result.isMCCHit());
+        assertEquals(4, result.getVersion(1));
+    }
+
+    @Test
+    public void testSnapshot() throws IOException {
+        cache.put("testKey1", 1L, 10, 1);
+        cache.put("testKey2", 2L, 20, 2);
+        cache.put("testKey3", 3L, 30, 3);
+        cache.invalidate("testKey2", 4L, 4);
+        cache.access("testKey1", 5);
+
+        Path dir = Files.createTempDirectory("snapshot");
+        Path path = dir.resolve("cache.snapshot");
+        try {
+            cache.writeSnapshot(path, 5);
+            assertFalse(Files.exists(dir.resolve("cache.snapshot.tmp")));
+
+            // the invalidation stream resumes at the snapshot's watermark
+            ConsistentCache restored = new ConsistentCache(100);
+            CacheSnapshot.Header header = restored.loadSnapshot(path, true);
+            assertEquals(new CacheSnapshot.Header(4, 5, 3), header);
+            assertEquals(4, restored.getMaxInvalidationTimestamp());
+            assertEquals(60, restored.getCacheSize());
+            assertEquals(3, restored.getItemCount());
+            assertIterableEquals(cache.getNodesInLruOrder(),
+                                 restored.getNodesInLruOrder());
+            assertIterableEquals(List.of("testKey2"),
+                                 restored.getInvalidatedItems());
+            for (String key : List.of("testKey1", "testKey2", "testKey3")) {
+                assertEquals(cache.getNode(key).getAccessTracker().toRawFeature(),
+                             restored.getNode(key).getAccessTracker()
+                                     .toRawFeature());
+            }
+            assertTrue(restored.isMCCHit(List.of("testKey1", "testKey3")));
+            restored.invalidate("testKey3", 6L);
+            assertEquals(6, restored.getItemValidUntil("testKey3"));
+
+            // invalidations after the watermark may have been missed
+            ConsistentCache reconciled = new ConsistentCache(100);
+            reconciled.loadSnapshot(path, false);
+            assertEquals(5, reconciled.getItemValidUntil("testKey1"));
+            assertEquals(4, reconciled.getItemValidUntil("testKey2"));
+            assertEquals(5, reconciled.getItemValidUntil("testKey3"));
+            assertTrue(reconciled.isMCCHit(List.of("testKey1", "testKey3")));
+            reconciled.invalidate("testKey1", 9L);
+            assertEquals(5, reconciled.getItemValidUntil("testKey1"));
+
+            assertThrows(IllegalStateException.class,
+                         () -> reconciled.loadSnapshot(path, false));
+        } finally {
+            Files.deleteIfExists(path);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testSnapshotIsCapturedBeforeWrite() throws IOException {
+        cache.put("testKey1", 1L, 10, 1);
+        ByteBuffer snapshot = cache.captureSnapshot(1);
+        // changes after the capture are not part of the snapshot
+        cache.put("testKey2", 2L, 20, 2);
+        cache.invalidate("testKey1", 3L, 3);
+
+        Path dir = Files.createTempDirectory("snapshot");
+        Path path = dir.resolve("cache.snapshot");
+        try {
+            CacheSnapshot.write(path, snapshot);
+            ConsistentCache restored = new ConsistentCache(100);
+            assertEquals(new CacheSnapshot.Header(0, 1, 1),
+                         restored.loadSnapshot(path, true));
+            assertEquals(Long.MAX_VALUE,
+                         restored.getItemValidUntil("testKey1"));
+            assertNull(restored.getNode("testKey2"));
+        } finally {
+            Files.deleteIfExists(path);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testEvictionReleasesKeyIds() {
+        KeyDictionary dictionary = new KeyDictionary();
+        ConsistentCache s3FifoCache = new ConsistentCache(
+                100, dictionary, EvictionPolicy.create("S3_FIFO", dictionary));
+        for (int i = 0; i < 3; i++) {
+            s3FifoCache.put("testKey" + i, 1L, 10);
+        }
+        assertEquals(3, dictionary.size());
+
+        // testKey0 is remembered as a ghost, testKey1 is forgotten
+        s3FifoCache.evict("testKey1");
+        s3FifoCache.postCacheUpdate(List.of(), s3FifoCache.getLruItems(
+                Set.of("testKey2"), 10), List.of(), 1);
+        assertEquals(1, s3FifoCache.getItemCount());
+        assertEquals(KeyDictionary.UNKNOWN_ID, dictionary.getId("testKey1"));
+        assertEquals(2, dictionary.size());
+
+        // the ghost keeps its id, a new key takes the free one
+        int ghostId = dictionary.getId("testKey0");
+        s3FifoCache.put("testKey0", 3L, 10);
+        s3FifoCache.put("testKey3", 1L, 10);
+        assertEquals(ghostId, dictionary.getId("testKey0"));
+        assertEquals(3, dictionary.size());
+        assertEquals("testKey3",
+                     s3FifoCache.getNode(dictionary.getId("testKey3"))
+                             .getKey());
+    }
 
     private void validateListStructure(ConsistentCache.ItemNode head,
                                        ConsistentCache.ItemNode tail,
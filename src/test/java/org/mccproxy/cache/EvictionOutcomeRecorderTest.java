@@ -0,0 +1,140 @@
+package org.mccproxy.cache;
+
+import org.junit.jupiter.api.Test;
+import org.mccproxy.proxy.ItemRecord;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EvictionOutcomeRecorderTest {
+
+    // the stepsToRequest and the first read word of every record
+    private static List<long[]> readRecords(Path file) throws IOException {
+        List<long[]> records = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(
+                Files.newInputStream(file))) {
+            assertEquals(EvictionOutcomeLog.MAGIC, in.readInt());
+            assertEquals(EvictionOutcomeLog.FORMAT, in.readInt());
+            assertEquals(10, in.readInt());
+            while (true) {
+                int stepsToRequest;
+                try {
+                    stepsToRequest = in.readInt();
+                } catch (EOFException e) {
+                    return records;
+                }
+                long[] readWords = new long[in.readInt()];
+                for (int i = 0; i < readWords.length; i++) {
+                    readWords[i] = in.readLong();
+                }
+                long[] writeWords = new long[in.readInt()];
+                for (int i = 0; i < writeWords.length; i++) {
+                    writeWords[i] = in.readLong();
+                }
+                records.add(new long[]{stepsToRequest, readWords[0]});
+            }
+        }
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder())
+                    .toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    public void testRecordEvictionOutcomes() throws IOException {
+        Path directory = Files.createTempDirectory("eviction-outcomes");
+        try {
+            EvictionOutcomeLog log = new EvictionOutcomeLog(
+                    directory, "outcomes", 10, 1 << 20, 2);
+            EvictionOutcomeRecorder recorder =
+                    new EvictionOutcomeRecorder(log, 2);
+            ConsistentCache cache = new ConsistentCache(100);
+            cache.setEvictionOutcomeRecorder(recorder);
+            for (int i = 1; i <= 4; i++) {
+                cache.put("testKey" + i, 1, 0, 100);
+            }
+
+            // every second eviction is sampled, testKey2 and testKey4
+            cache.postCacheUpdate(List.of(), List.of("testKey1", "testKey2"),
+                                  List.of(), 102);
+            cache.postCacheUpdate(List.of(), List.of("testKey3", "testKey4"),
+                                  List.of(), 104);
+            assertEquals(2, recorder.getPendingCount());
+
+            // testKey2 comes back within the horizon, testKey1 was not
+            // sampled
+            cache.postCacheUpdate(List.of(), List.of(),
+                                  List.of(new ItemRecord("testKey1", "v", 2, 1),
+                                          new ItemRecord("testKey2", "v", 2, 1)),
+                                  109);
+            assertEquals(1, recorder.getPendingCount());
+
+            // testKey4 comes back too late
+            cache.postCacheUpdate(List.of(), List.of(),
+                                  List.of(new ItemRecord("testKey4", "v", 2, 1)),
+                                  115);
+            assertEquals(0, recorder.getPendingCount());
+            log.close();
+
+            List<Path> files;
+            try (Stream<Path> paths = Files.list(directory)) {
+                files = paths.toList();
+            }
+            assertEquals(List.of(directory.resolve("outcomes-0.bin")), files);
+            List<long[]> records = readRecords(files.get(0));
+            assertEquals(2, records.size());
+            // the bitmaps are as of the eviction, read 2 and 4 steps before
+            assertArrayEquals(new long[]{7, 1L << 2}, records.get(0));
+            assertArrayEquals(new long[]{-1, 1L << 4}, records.get(1));
+            assertEquals(0, log.getDroppedCount());
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    @Test
+    public void testRotation() throws IOException {
+        Path directory = Files.createTempDirectory("eviction-outcomes");
+        try {
+            // a file holds two records of one word each
+            EvictionOutcomeLog log = new EvictionOutcomeLog(
+                    directory, "outcomes", 10, 12 + 2 * 28, 2);
+            for (int i = 0; i < 7; i++) {
+                log.append(new EvictionOutcomeLog.Sample(
+                        i, new long[]{i}, new long[]{0}));
+            }
+            log.close();
+
+            // the oldest files are deleted, a new log continues the numbering
+            log = new EvictionOutcomeLog(directory, "outcomes", 10, 1 << 20, 2);
+            log.append(new EvictionOutcomeLog.Sample(
+                    7, new long[]{7}, new long[]{0}));
+            log.close();
+            List<Path> files;
+            try (Stream<Path> paths = Files.list(directory)) {
+                files = paths.sorted().toList();
+            }
+            assertEquals(List.of(directory.resolve("outcomes-3.bin"),
+                                 directory.resolve("outcomes-4.bin")), files);
+            assertEquals(1, readRecords(files.get(0)).size());
+            assertArrayEquals(new long[]{7, 7},
+                              readRecords(files.get(1)).get(0));
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package org.mccproxy.cache;
+
+import org.junit.jupiter.api.Test;
+import org.mccproxy.utils.IntHashSet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EvictionPolicyTest {
+    private static final List<String> POLICIES =
+            List.of("LRU", "W_TINYLFU", "S3_FIFO");
+
+    private static List<Integer> select(EvictionPolicy policy,
+                                        IntHashSet itemsToKeep,
+                                        int neededSize) {
+        List<Integer> victims = new ArrayList<>();
+        policy.selectVictims(itemsToKeep, neededSize, victims::add);
+        return victims;
+    }
+
+    @Test
+    public void testCreate() {
+        assertInstanceOf(SizeClassLruIndex.class, EvictionPolicy.create("LRU"));
+        assertInstanceOf(WTinyLfuPolicy.class,
+                         EvictionPolicy.create("W_TINYLFU"));
+        assertInstanceOf(S3FifoPolicy.class, EvictionPolicy.create("S3_FIFO"));
+        assertThrows(IllegalArgumentException.class,
+                     () -> EvictionPolicy.create("FIFO"));
+    }
+
+    @Test
+    public void testSelectVictimsContract() {
+        for (String name : POLICIES) {
+            EvictionPolicy policy = EvictionPolicy.create(name);
+            Random random = new Random(7);
+            Map<Integer, Integer> cached = new HashMap<>();
+            for (int op = 0; op < 20000; op++) {
+                int keyId = random.nextInt(2000);
+                switch (random.nextInt(4)) {
+                    case 0, 1 -> {
+                        int size = 1 + random.nextInt(100);
+                        policy.onPut(keyId, size);
+                        cached.put(keyId, size);
+                    }
+                    case 2 -> policy.onAccess(keyId);
+                    default -> {
+                        policy.onRemove(keyId);
+                        cached.remove(keyId);
+                    }
+                }
+
+                if (op % 500 == 0) {
+                    IntHashSet itemsToKeep = new IntHashSet();
+                    for (int i = 0; i < 50; i++) {
+                        itemsToKeep.add(random.nextInt(2000));
+                    }
+                    int neededSize = random.nextInt(5000);
+                    List<Integer> victims =
+                            select(policy, itemsToKeep, neededSize);
+                    long victimSize = 0;
+                    for (int victim : victims) {
+                        assertTrue(cached.containsKey(victim), name);
+                        assertFalse(itemsToKeep.contains(victim), name);
+                        victimSize += cached.get(victim);
+                    }
+                    assertEquals(victims.size(), new HashSet<>(victims).size(),
+                                 name);
+                    long evictableSize = 0;
+                    for (var entry : cached.entrySet()) {
+                        if (!itemsToKeep.contains(entry.getKey())) {
+                            evictableSize += entry.getValue();
+                        }
+                    }
+                    assertTrue(victimSize >= Math.min(neededSize, evictableSize),
+                               name);
+
+                    // only every other selection is carried out
+                    if (op % 1000 == 0) {
+                        for (int victim : victims) {
+                            policy.onRemove(victim);
+                            cached.remove(victim);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testWTinyLfuResistsScans() {
+        EvictionPolicy policy = EvictionPolicy.create("W_TINYLFU");
+        for (int keyId = 0; keyId < 10; keyId++) {
+            policy.onPut(keyId, 1);
+            for (int i = 0; i < 5; i++) {
+                policy.onAccess(keyId);
+            }
+        }
+        for (int keyId = 100; keyId < 200; keyId++) {
+            policy.onPut(keyId, 1);
+        }
+
+        List<Integer> victims = select(policy, IntHashSet.of(), 50);
+        assertEquals(50, victims.size());
+        for (int victim : victims) {
+            assertTrue(victim >= 100, "popular item " + victim + " evicted");
+        }
+    }
+
+    @Test
+    public void testWTinyLfuCountsKeysAcrossIds() {
+        KeyDictionary keyDictionary = new KeyDictionary();
+        EvictionPolicy policy =
+                EvictionPolicy.create("W_TINYLFU", keyDictionary);
+        int[] hotIds = new int[10];
+        for (int i = 0; i < 10; i++) {
+            hotIds[i] = keyDictionary.intern("hot" + i);
+            policy.onPut(hotIds[i], 1);
+            for (int j = 0; j < 5; j++) {
+                policy.onAccess(hotIds[i]);
+            }
+        }
+        for (int keyId : hotIds) {
+            policy.onRemove(keyId);
+            keyDictionary.release(keyId);
+        }
+
+        // the ids of the evicted keys go to new keys, the evicted keys come
+        // back under other ids
+        Set<Integer> hot = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            policy.onPut(keyDictionary.intern("cold" + i), 1);
+        }
+        for (int i = 0; i < 100; i++) {
+            policy.onPut(keyDictionary.intern("scan" + i), 1);
+        }
+        for (int i = 0; i < 10; i++) {
+            int keyId = keyDictionary.intern("hot" + i);
+            hot.add(keyId);
+            policy.onPut(keyId, 1);
+        }
+
+        List<Integer> victims = select(policy, IntHashSet.of(), 50);
+        assertEquals(50, victims.size());
+        for (int victim : victims) {
+            assertFalse(hot.contains(victim),
+                        "popular key " + keyDictionary.getKey(victim) +
+                                " evicted");
+        }
+    }
+
+    @Test
+    public void testS3FifoEvictsOneHitWondersFirst() {
+        EvictionPolicy policy = EvictionPolicy.create("S3_FIFO");
+        for (int keyId = 0; keyId < 100; keyId++) {
+            policy.onPut(keyId, 1);
+        }
+        // read again while still in the small queue
+        Set<Integer> reread = Set.of(3, 50, 97);
+        for (int keyId : reread) {
+            policy.onAccess(keyId);
+        }
+
+        List<Integer> victims = select(policy, IntHashSet.of(), 90);
+        assertEquals(90, victims.size());
+        for (int keyId : reread) {
+            assertFalse(victims.contains(keyId));
+        }
+        for (int victim : victims) {
+            policy.onRemove(victim);
+        }
+
+        // an evicted key that comes back skips the small queue
+        int ghost = victims.getLast();
+        policy.onPut(ghost, 1);
+        for (int keyId = 200; keyId < 210; keyId++) {
+            policy.onPut(keyId, 1);
+        }
+        assertFalse(select(policy, IntHashSet.of(), 10).contains(ghost));
+    }
+}
@@ -0,0 +1,109 @@
+package org.mccproxy.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KeyDictionaryTest {
+
+    @Test
+    public void testIntern() {
+        KeyDictionary dictionary = new KeyDictionary();
+        assertEquals(KeyDictionary.UNKNOWN_ID, dictionary.getId("key1"));
+
+        int[] keyIds = dictionary.intern(List.of("key1", "key2", "key1"));
+        assertArrayEquals(new int[]{0, 1, 0}, keyIds);
+        assertEquals(2, dictionary.size());
+        assertEquals(1, dictionary.getId("key2"));
+        assertEquals("key2", dictionary.getKey(1));
+    }
+
+    @Test
+    public void testGrowth() {
+        KeyDictionary dictionary = new KeyDictionary();
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i, dictionary.intern("key" + i));
+        }
+        for (int i = 0; i < 5000; i++) {
+            assertEquals("key" + i, dictionary.getKey(i));
+        }
+    }
+
+    @Test
+    public void testReleaseRecyclesIds() {
+        KeyDictionary dictionary = new KeyDictionary();
+        int[] keyIds = dictionary.intern(List.of("key1", "key2", "key1"));
+        dictionary.retain(keyIds[1]);
+
+        // key1 is referenced twice, key2 once more by the retain
+        dictionary.release(keyIds);
+        assertEquals(KeyDictionary.UNKNOWN_ID, dictionary.getId("key1"));
+        assertEquals(1, dictionary.getId("key2"));
+        assertEquals(1, dictionary.size());
+
+        assertEquals(0, dictionary.intern("key3"));
+        assertEquals("key3", dictionary.getKey(0));
+        assertEquals(2, dictionary.intern("key4"));
+        dictionary.release(1);
+        assertEquals(KeyDictionary.UNKNOWN_ID, dictionary.getId("key2"));
+        assertEquals(2, dictionary.size());
+    }
+
+    @Test
+    public void testConcurrentIntern() throws Exception {
+        KeyDictionary dictionary = new KeyDictionary();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<int[]>> futures = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            keys.add("key" + i);
+        }
+        for (int t = 0; t < 4; t++) {
+            futures.add(executor.submit(() -> dictionary.intern(keys)));
+        }
+        int[] expected = futures.getFirst().get();
+        for (Future<int[]> future : futures) {
+            assertArrayEquals(expected, future.get());
+        }
+        executor.shutdown();
+
+        assertEquals(keys.size(), dictionary.size());
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(keys.get(i), dictionary.getKey(expected[i]));
+        }
+    }
+
+    @Test
+    public void testConcurrentInternAndRelease() throws Exception {
+        KeyDictionary dictionary = new KeyDictionary();
+        // a key held for the whole test never changes its id
+        int heldId = dictionary.intern("held");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    String key = "key" + i % 50;
+                    int keyId = dictionary.intern(key);
+                    assertEquals(key, dictionary.getKey(keyId));
+                    assertEquals(heldId, dictionary.intern("held"));
+                    dictionary.release(heldId);
+                    dictionary.release(keyId);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(1, dictionary.size());
+        assertEquals(heldId, dictionary.getId("held"));
+    }
+}
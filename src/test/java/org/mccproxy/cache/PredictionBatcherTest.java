@@ -0,0 +1,79 @@
+package org.mccproxy.cache;
+
+import org.junit.jupiter.api.Test;
+import org.mccproxy.ml.ObsoleteItemsPredictor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PredictionBatcherTest {
+
+    // hands out futures that the test completes
+    private static class PendingPredictor extends ObsoleteItemsPredictor {
+        final List<CompletableFuture<List<Boolean>>> batches =
+                new ArrayList<>();
+
+        @Override
+        public List<Boolean> predictObsoleteItems(
+                List<AccessTracker> accessTrackers) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<List<Boolean>> predictObsoleteItemsAsync(
+                List<AccessTracker> accessTrackers) {
+            CompletableFuture<List<Boolean>> batch = new CompletableFuture<>();
+            batches.add(batch);
+            return batch;
+        }
+    }
+
+    @Test
+    public void testPipelining() {
+        PendingPredictor predictor = new PendingPredictor();
+        List<String> verdicts = new ArrayList<>();
+        PredictionBatcher batcher = new PredictionBatcher(
+                predictor, 2, 2,
+                (keyId, isObsolete) -> verdicts.add(keyId + "=" + isObsolete));
+        AccessTracker tracker = new RingBufferAccessTracker(8);
+
+        // two full batches are in flight, nothing is waited for
+        for (int keyId = 0; keyId < 4; keyId++) {
+            batcher.add(keyId, tracker);
+        }
+        assertEquals(2, predictor.batches.size());
+        assertEquals(List.of(), verdicts);
+
+        // a third batch waits for the oldest one only
+        predictor.batches.get(0).complete(List.of(true, false));
+        predictor.batches.get(1).complete(List.of(false));
+        batcher.add(4, tracker);
+        batcher.add(5, tracker);
+        assertEquals(3, predictor.batches.size());
+        assertEquals(List.of("0=true", "1=false"), verdicts);
+
+        // a short answer and a failed batch keep the items
+        predictor.batches.get(2).completeExceptionally(
+                new IllegalStateException("unavailable"));
+        batcher.finish();
+        assertEquals(List.of("0=true", "1=false", "2=false"), verdicts);
+
+        // finishing an empty batcher sends nothing
+        batcher.finish();
+        assertEquals(3, predictor.batches.size());
+
+        // a cancelled batch keeps its items too
+        batcher.add(6, tracker);
+        batcher.add(7, tracker);
+        predictor.batches.get(3).cancel(true);
+        batcher.add(8, tracker);
+        batcher.add(9, tracker);
+        predictor.batches.get(4).complete(List.of(true, false));
+        batcher.finish();
+        assertEquals(List.of("0=true", "1=false", "2=false", "8=true",
+                             "9=false"), verdicts);
+    }
+}
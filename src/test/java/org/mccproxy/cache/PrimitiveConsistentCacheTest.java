@@ -0,0 +1,191 @@
+package org.mccproxy.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mccproxy.ml.ObsoleteItemsPredictor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PrimitiveConsistentCacheTest {
+    private PrimitiveConsistentCache cache;
+
+    @BeforeEach
+    public void setup() {
+        cache = new PrimitiveConsistentCache(100, 16);
+    }
+
+    @Test
+    public void testPutEvictAccess() {
+        String[] keys = {"testKey1", "testKey2", "testKey3", "testKey1"};
+        long[] versions = {1L, 2L, 3L, 4L};
+        int[] dataSizes = {10, 10, 10, 20};
+
+        for (int i = 0; i < keys.length; i++) {
+            cache.put(keys[i], versions[i], dataSizes[i]);
+        }
+        assertEquals(40, cache.getCacheSize());
+        assertEquals(4, cache.getItemVersion("testKey1"));
+        assertIterableEquals(List.of("testKey1", "testKey3", "testKey2"),
+                             cache.getKeysInLruOrder());
+
+        cache.access("testKey2", 0);
+        assertIterableEquals(List.of("testKey2", "testKey1", "testKey3"),
+                             cache.getKeysInLruOrder());
+
+        cache.evict("testKey1");
+        assertEquals(20, cache.getCacheSize());
+        assertEquals(-1, cache.getItemVersion("testKey1"));
+        assertIterableEquals(List.of("testKey2", "testKey3"),
+                             cache.getKeysInLruOrder());
+    }
+
+    @Test
+    public void testGetLruItems() {
+        String[] keys = {"testKey1", "testKey2", "testKey3", "testKey4"};
+        for (int i = 0; i < keys.length; i++) {
+            cache.put(keys[i], i + 1, 10);
+        }
+        cache.access("testKey4", 0);
+        cache.access("testKey3", 0);
+        cache.access("testKey2", 0);
+        cache.access("testKey1", 0);
+
+        assertEquals(0, cache.getLruItems(Set.of(keys), 10).size());
+        assertIterableEquals(List.of("testKey3"),
+                             cache.getLruItems(Set.of("testKey1", "testKey4"),
+                                               10));
+        assertIterableEquals(List.of("testKey3", "testKey2"),
+                             cache.getLruItems(Set.of("testKey1", "testKey4"),
+                                               15));
+    }
+
+    @Test
+    public void testMCCHit() {
+        String[] keys = {"testKey1", "testKey2", "testKey3", "testKey4"};
+        for (int i = 0; i < keys.length; i++) {
+            cache.put(keys[i], i + 1, 10);
+            cache.invalidate(keys[i], 5L, 0);
+        }
+        assertTrue(cache.isMCCHit(List.of(keys)));
+        assertFalse(cache.isMCCHit(List.of("testKey1", "testKey5")));
+
+        cache.put("testKey1", 5L, 10);
+        assertFalse(cache.isMCCHit(List.of("testKey1", "testKey2")));
+
+        var result = cache.makeMCCHit(
+                List.of("testKey1", "testKey2", "testKey3", "testKey4",
+                        "testKey5"));
+        assertIterableEquals(List.of("testKey5"), result.getMissingItems());
+        assertIterableEquals(List.of("testKey2", "testKey3", "testKey4"),
+                             result.getOutdatedItems());
+        assertIterableEquals(List.of("testKey1"), result.getHitItems());
+    }
+
+    @Test
+    public void testAccessTracking() {
+        VariableSizeAccessTracker tracker = new VariableSizeAccessTracker(256);
+        cache.put("testKey1", 1L, 10, 3);
+        tracker.syncTimeStep(3);
+        tracker.recordRead(3);
+        cache.invalidate("testKey1", 2L, 70);
+        tracker.recordWrite(70);
+        cache.access("testKey1", 200);
+        tracker.recordRead(200);
+
+        assertEquals(tracker.toRawFeature(), cache.getRawFeature("testKey1"));
+    }
+
+    @Test
+    public void testObsoleteIdleTimeSteps() {
+        // every candidate the predictor is asked about is obsolete
+        cache.setObsoleteItemsPredictor(new ObsoleteItemsPredictor() {
+            @Override
+            public List<Boolean> predictObsoleteItems(
+                    List<AccessTracker> accessTrackers) {
+                return accessTrackers.stream().map(t -> true).toList();
+            }
+        });
+        for (int i = 1; i <= 4; i++) {
+            cache.put("testKey" + i, 1, 10, 0);
+        }
+        cache.invalidate("testKey2", 5L, 10);
+        cache.access("testKey3", 200);
+
+        // every item is a candidate by default
+        assertIterableEquals(List.of("testKey2", "testKey1", "testKey4",
+                                     "testKey3"),
+                             cache.getObsoleteItems(Set.of(), 256));
+
+        cache.setObsoleteIdleTimeSteps(256);
+        assertIterableEquals(List.of("testKey2", "testKey1", "testKey4"),
+                             cache.getObsoleteItems(Set.of(), 256));
+        assertThrows(IllegalArgumentException.class,
+                     () -> cache.setObsoleteIdleTimeSteps(-1));
+    }
+
+    @Test
+    public void testMatchesConsistentCache() {
+        // random operations, including slot reuse and table growth
+        ConsistentCache reference = new ConsistentCache(100);
+        Random random = new Random(42);
+        List<String> universe = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            universe.add("key" + i);
+        }
+
+        for (int op = 0; op < 20000; op++) {
+            String key = universe.get(random.nextInt(universe.size()));
+            switch (random.nextInt(6)) {
+                case 0 -> {
+                    int size = 1 + random.nextInt(20);
+                    cache.put(key, op, size);
+                    reference.put(key, op, size);
+                }
+                case 1 -> {
+                    cache.evict(key);
+                    reference.evict(key);
+                }
+                case 2 -> {
+                    cache.invalidate(key, op, 0);
+                    reference.invalidate(key, op, 0);
+                }
+                case 3 -> {
+                    cache.access(key, 0);
+                    reference.access(key);
+                }
+                case 4 -> {
+                    cache.markItems(List.of(key));
+                    reference.markItems(List.of(key));
+                }
+                default -> {
+                    // both start a phase once every item is marked
+                    if (reference.isAllMarked()) {
+                        cache.startNewPhase();
+                        reference.startNewPhase();
+                    }
+                }
+            }
+            assertEquals(reference.isAllMarked(), cache.isAllMarked());
+        }
+
+        assertEquals(reference.getItemCount(), cache.getItemCount());
+        assertEquals(reference.getCacheSize(), cache.getCacheSize());
+        List<String> referenceOrder = new ArrayList<>();
+        for (ConsistentCache.ItemNode node = reference.getDummyHead().next;
+             node != reference.getDummyTail(); node = node.next) {
+            referenceOrder.add(node.getKey());
+        }
+        assertIterableEquals(referenceOrder, cache.getKeysInLruOrder());
+        assertIterableEquals(reference.getInvalidatedItems(),
+                             cache.getInvalidatedItems());
+        for (String key : universe) {
+            assertEquals(reference.getItemVersion(key),
+                         cache.getItemVersion(key));
+        }
+    }
+}
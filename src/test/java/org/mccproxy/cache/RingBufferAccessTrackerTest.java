@@ -0,0 +1,109 @@
+package org.mccproxy.cache;
+
+import org.junit.jupiter.api.Test;
+import org.mccproxy.ml.RawFeature;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertIterableEquals;
+
+public class RingBufferAccessTrackerTest {
+
+    @Test
+    void testRecordAndAdvance() {
+        RingBufferAccessTracker tracker = new RingBufferAccessTracker(256);
+        tracker.recordRead(1);
+        tracker.recordWrite(1);
+        tracker.recordRead(3);
+        RawFeature feature = tracker.toRawFeature();
+        assertIterableEquals(List.of(5L, 0L, 0L, 0L),
+                             feature.getReadAccessesList());
+        assertIterableEquals(List.of(4L, 0L, 0L, 0L),
+                             feature.getWriteAccessesList());
+
+        tracker.syncTimeStep(3 + 64);
+        feature = tracker.toRawFeature();
+        assertIterableEquals(List.of(0L, 5L, 0L, 0L),
+                             feature.getReadAccessesList());
+
+        // the step two back leaves the window, the last one is kept
+        tracker.syncTimeStep(3 + 255);
+        feature = tracker.toRawFeature();
+        assertIterableEquals(List.of(0L, 0L, 0L, 1L << 63),
+                             feature.getReadAccessesList());
+
+        tracker.syncTimeStep(3 + 256);
+        feature = tracker.toRawFeature();
+        assertIterableEquals(List.of(0L, 0L, 0L, 0L),
+                             feature.getReadAccessesList());
+        assertIterableEquals(List.of(0L, 0L, 0L, 0L),
+                             feature.getWriteAccessesList());
+    }
+
+    @Test
+    void testMatchesVariableSizeAccessTracker() {
+        for (int windowSize : new int[]{64, 100, 256}) {
+            Random random = new Random(windowSize);
+            RingBufferAccessTracker ringBuffer =
+                    new RingBufferAccessTracker(windowSize);
+            VariableSizeAccessTracker reference =
+                    new VariableSizeAccessTracker(windowSize);
+            long timeStep = 0;
+            for (int i = 0; i < 20000; i++) {
+                int jump = random.nextInt(100);
+                if (jump == 0) {
+                    timeStep += 64 * (1 + random.nextInt(8));
+                } else if (jump == 1) {
+                    timeStep += 1 + random.nextInt(1000);
+                } else if (jump < 50) {
+                    timeStep += random.nextInt(3);
+                }
+                switch (random.nextInt(3)) {
+                    case 0 -> {
+                        ringBuffer.recordRead(timeStep);
+                        reference.recordRead(timeStep);
+                    }
+                    case 1 -> {
+                        ringBuffer.recordWrite(timeStep);
+                        reference.recordWrite(timeStep);
+                    }
+                    default -> {
+                        ringBuffer.syncTimeStep(timeStep);
+                        reference.syncTimeStep(timeStep);
+                    }
+                }
+                assertEquals(reference.toRawFeature(),
+                             ringBuffer.toRawFeature());
+            }
+        }
+    }
+
+    @Test
+    void testReadAsOfClock() {
+        LogicalClock clock = new LogicalClock();
+        RingBufferAccessTracker tracker =
+                new RingBufferAccessTracker(256, clock);
+        VariableSizeAccessTracker reference =
+                new VariableSizeAccessTracker(256);
+        Random random = new Random(42);
+        long timeStep = 0;
+        for (int i = 0; i < 5000; i++) {
+            timeStep += random.nextInt(random.nextInt(10) == 0 ? 300 : 4);
+            if (random.nextBoolean()) {
+                tracker.recordRead(timeStep);
+                reference.recordRead(timeStep);
+            } else {
+                tracker.recordWrite(timeStep);
+                reference.recordWrite(timeStep);
+            }
+            // the clock moves on without the tracker being synced
+            long now = timeStep + random.nextInt(300);
+            clock.advanceTo(now);
+            reference.syncTimeStep(now);
+            assertEquals(reference.toRawFeature(), tracker.toRawFeature());
+            timeStep = now;
+        }
+    }
+}
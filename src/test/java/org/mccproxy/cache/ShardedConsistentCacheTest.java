@@ -0,0 +1,151 @@
+package org.mccproxy.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mccproxy.proxy.ItemRecord;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardedConsistentCacheTest {
+    private ShardedConsistentCache cache;
+
+    @BeforeEach
+    public void setup() {
+        cache = new ShardedConsistentCache(100, 4);
+    }
+
+    @Test
+    public void testPutAndInvalidate() {
+        String[] keys = {"testKey1", "testKey2", "testKey3", "testKey4"};
+        for (int i = 0; i < keys.length; i++) {
+            cache.put(keys[i], i + 1, 10);
+        }
+
+        assertEquals(40, cache.getCacheSize());
+        assertEquals(4, cache.getItemCount());
+
+        cache.invalidate(List.of("testKey1", "testKey2"), 5L, 0);
+        assertEquals(5, cache.getMaxInvalidationTimestamp());
+        assertEquals(5, cache.getItemValidUntil("testKey1"));
+        assertEquals(5, cache.getItemValidUntil("testKey2"));
+        assertEquals(Long.MAX_VALUE, cache.getItemValidUntil("testKey3"));
+        assertEquals(-1, cache.getItemValidUntil("testKey5"));
+    }
+
+    @Test
+    public void testIsMCCHit() {
+        String[] keys = {"testKey1", "testKey2", "testKey3", "testKey4"};
+        for (int i = 0; i < keys.length; i++) {
+            cache.put(keys[i], i + 1, 10);
+        }
+
+        // versions newer than the watermark cannot be served yet
+        assertFalse(cache.isMCCHit(List.of("testKey1")));
+
+        cache.invalidate(List.of(keys), 5L, 0);
+        assertTrue(cache.isMCCHit(List.of(keys)));
+        assertFalse(cache.isMCCHit(List.of("testKey1", "testKey5")));
+
+        cache.put("testKey1", 5L, 10);
+        assertTrue(cache.isMCCHit(List.of("testKey1")));
+        assertFalse(cache.isMCCHit(List.of("testKey1", "testKey2")));
+    }
+
+    @Test
+    public void testMakeMCCHit() {
+        String[] keys = {"testKey1", "testKey2", "testKey3", "testKey4"};
+        for (int i = 0; i < keys.length; i++) {
+            cache.put(keys[i], i + 1, 10);
+        }
+        cache.invalidate(List.of(keys), 5L, 0);
+        cache.put("testKey1", 5L, 10);
+
+        var result = cache.makeMCCHit(
+                List.of("testKey1", "testKey2", "testKey3", "testKey4",
+                        "testKey5"));
+        assertIterableEquals(List.of("testKey5"), result.getMissingItems());
+        assertIterableEquals(List.of("testKey2", "testKey3", "testKey4"),
+                             result.getOutdatedItems());
+        assertIterableEquals(List.of("testKey1"), result.getHitItems());
+    }
+
+    @Test
+    public void testGetLruItems() {
+        for (int i = 0; i < 20; i++) {
+            cache.put("testKey" + i, 1, 5);
+        }
+
+        Set<String> itemsToKeep = Set.of("testKey0", "testKey1", "testKey2");
+        List<String> lruItems = cache.getLruItems(itemsToKeep, 42);
+        assertTrue(cache.getDataSize(lruItems) >= 42);
+        assertEquals(lruItems.size(), new HashSet<>(lruItems).size());
+        for (String key : lruItems) {
+            assertFalse(itemsToKeep.contains(key));
+        }
+
+        assertEquals(0, cache.getLruItems(Set.of(), 0).size());
+    }
+
+    @Test
+    public void testPhases() {
+        cache.put("testKey1", 1, 10);
+        cache.put("testKey2", 1, 10);
+        assertTrue(cache.isAllMarked());
+
+        cache.startNewPhase();
+        assertFalse(cache.isAllMarked());
+
+        cache.markItems(List.of("testKey1", "testKey2"));
+        assertTrue(cache.isAllMarked());
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+        cache = new ShardedConsistentCache(1_000_000, 8);
+        int numThreads = 8;
+        int keysPerThread = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < keysPerThread; i++) {
+                    String key = "key" + thread + "_" + i;
+                    cache.postCacheUpdate(List.of(), List.of(),
+                                          List.of(new ItemRecord(key, "v", 1)),
+                                          i);
+                    cache.isMCCHit(List.of(key));
+                    if (i % 2 == 0) {
+                        cache.postCacheUpdate(List.of(), List.of(key),
+                                              List.of(), i);
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        int expectedItems = numThreads * keysPerThread / 2;
+        assertEquals(expectedItems, cache.getItemCount());
+        // ItemRecord("key*_*", "v") has size key.length() + 1
+        int expectedSize = 0;
+        for (int t = 0; t < numThreads; t++) {
+            for (int i = 1; i < keysPerThread; i += 2) {
+                expectedSize += ("key" + t + "_" + i).length() + 1;
+            }
+        }
+        assertEquals(expectedSize, cache.getCacheSize());
+    }
+}
@@ -0,0 +1,88 @@
+package org.mccproxy.cache;
+
+import org.junit.jupiter.api.Test;
+import org.mccproxy.utils.IntHashSet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SizeClassLruIndexTest {
+
+    private static List<Integer> select(SizeClassLruIndex index,
+                                        IntHashSet itemsToKeep,
+                                        int neededSize) {
+        List<Integer> victims = new ArrayList<>();
+        index.selectVictims(itemsToKeep, neededSize, victims::add);
+        return victims;
+    }
+
+    @Test
+    public void testSizeClassOf() {
+        assertEquals(0, SizeClassLruIndex.sizeClassOf(0));
+        assertEquals(0, SizeClassLruIndex.sizeClassOf(1));
+        assertEquals(1, SizeClassLruIndex.sizeClassOf(2));
+        assertEquals(3, SizeClassLruIndex.sizeClassOf(15));
+        assertEquals(4, SizeClassLruIndex.sizeClassOf(16));
+        assertEquals(30, SizeClassLruIndex.sizeClassOf(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testPrefersSingleLargeVictim() {
+        SizeClassLruIndex index = new SizeClassLruIndex(16);
+        for (int i = 0; i < 10; i++) {
+            index.onPut(i, 4);
+        }
+        index.onPut(10, 100);
+        index.onPut(11, 40);
+
+        // one item of the 64..127 class covers 50 bytes
+        assertIterableEquals(List.of(10), select(index, IntHashSet.of(), 50));
+        // the 32..63 class covers 30 bytes with less waste
+        assertIterableEquals(List.of(11), select(index, IntHashSet.of(), 30));
+        assertIterableEquals(List.of(0), select(index, IntHashSet.of(), 4));
+        index.onAccess(0);
+        assertIterableEquals(List.of(1), select(index, IntHashSet.of(), 4));
+
+        // with the large items pinned, small ones are taken in LRU order
+        assertIterableEquals(List.of(1, 2),
+                             select(index, IntHashSet.of(10, 11), 8));
+        // once the large items are taken, the small ones pay the rest
+        assertIterableEquals(List.of(10, 11, 1, 2),
+                             select(index, IntHashSet.of(), 145));
+    }
+
+    @Test
+    public void testKeepSetAndUpdates() {
+        SizeClassLruIndex index = new SizeClassLruIndex(16);
+        for (int i = 0; i < 100; i++) {
+            index.onPut(i, 10);
+        }
+        index.onPut(100, 1000);
+
+        IntHashSet itemsToKeep = new IntHashSet(128);
+        for (int i = 0; i < 99; i++) {
+            itemsToKeep.add(i);
+        }
+        itemsToKeep.add(100);
+        // the only victim sits behind more kept items than a bounded probe
+        assertIterableEquals(List.of(99), select(index, itemsToKeep, 1));
+        assertIterableEquals(List.of(99), select(index, itemsToKeep, 50));
+
+        index.onRemove(99);
+        assertEquals(100, index.size());
+        assertFalse(index.contains(99));
+        assertIterableEquals(List.of(), select(index, itemsToKeep, 1));
+
+        // a resized item moves to its new class
+        index.onPut(100, 10);
+        assertIterableEquals(List.of(0, 1), select(index, IntHashSet.of(), 20));
+        assertEquals(100, index.size());
+
+        // ids beyond the initial capacity
+        index.onPut(5000, 3);
+        assertTrue(index.contains(5000));
+        assertIterableEquals(List.of(5000), select(index, itemsToKeep, 2));
+    }
+}
@@ -0,0 +1,75 @@
+package org.mccproxy.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TrackerArenaTest {
+
+    @Test
+    void testMatchesRingBufferAccessTracker() {
+        LogicalClock clock = new LogicalClock();
+        TrackerArena arena = new TrackerArena(256, clock);
+        assertEquals(64, arena.slotSize());
+        List<TrackerArena.Slot> slots = new ArrayList<>();
+        List<RingBufferAccessTracker> references = new ArrayList<>();
+        Random random = new Random(7);
+        long timeStep = 0;
+        for (int i = 0; i < 20000; i++) {
+            timeStep += random.nextInt(random.nextInt(20) == 0 ? 400 : 3);
+            int action = random.nextInt(10);
+            if (slots.isEmpty() || action == 0) {
+                slots.add(arena.allocate(timeStep));
+                RingBufferAccessTracker reference =
+                        new RingBufferAccessTracker(256, clock);
+                reference.syncTimeStep(timeStep);
+                references.add(reference);
+                continue;
+            }
+            int index = random.nextInt(slots.size());
+            if (action == 1 && slots.size() > 1) {
+                arena.free(slots.remove(index));
+                references.remove(index);
+            } else if (action < 5) {
+                slots.get(index).recordRead(timeStep);
+                references.get(index).recordRead(timeStep);
+            } else if (action < 8) {
+                slots.get(index).recordWrite(timeStep);
+                references.get(index).recordWrite(timeStep);
+            } else {
+                clock.advanceTo(timeStep);
+            }
+            for (int j = 0; j < slots.size(); j++) {
+                assertEquals(references.get(j).toRawFeature(),
+                             slots.get(j).toRawFeature());
+            }
+        }
+        assertEquals(slots.size(), arena.size());
+    }
+
+    @Test
+    void testGrowAndReuseSlots() {
+        TrackerArena arena = new TrackerArena(100, new LogicalClock());
+        int initialCapacity = arena.capacity();
+        List<TrackerArena.Slot> slots = new ArrayList<>();
+        for (int i = 0; i <= initialCapacity; i++) {
+            TrackerArena.Slot slot = arena.allocate(i);
+            slot.recordRead(i);
+            slots.add(slot);
+        }
+        assertEquals(2 * initialCapacity, arena.capacity());
+        // the slots survive the move to the larger segment
+        assertEquals(List.of(1L, 0L), slots.get(0).toRawFeature()
+                .getReadAccessesList());
+
+        arena.free(slots.get(0));
+        TrackerArena.Slot reused = arena.allocate(5);
+        assertEquals(List.of(0L, 0L), reused.toRawFeature()
+                .getReadAccessesList());
+        assertEquals(initialCapacity + 1, arena.size());
+    }
+}
@@ -0,0 +1,92 @@
+package org.mccproxy.ml;
+
+import org.junit.jupiter.api.Test;
+import org.mccproxy.cache.AccessTracker;
+import org.mccproxy.cache.RingBufferAccessTracker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchFeatureExtractorTest {
+
+    // bitmaps from empty to dense, most with a handful of accesses
+    private static long[] randomWords(Random random, int count) {
+        long[] words = new long[count];
+        for (int j = 0; j < count; j++) {
+            switch (random.nextInt(4)) {
+                case 0 -> words[j] = 0;
+                case 1 -> words[j] = random.nextLong();
+                default -> words[j] = 1L << random.nextInt(64) |
+                        1L << random.nextInt(64);
+            }
+        }
+        return words;
+    }
+
+    @Test
+    public void testKernelsMatchFeatureExtractor() {
+        Random random = new Random(22);
+        // not a multiple of any vector length, so the last items are left to
+        // the scalar kernel
+        int items = 1003;
+        int wordCount = 4;
+        long[] readWords = new long[wordCount * items];
+        long[] writeWords = new long[wordCount * items];
+        float[] expected = new float[items * FeatureExtractor.NUM_FEATURES];
+        for (int i = 0; i < items; i++) {
+            long[] reads = randomWords(random, wordCount);
+            long[] writes = randomWords(random, wordCount);
+            RawFeature.Builder rawFeature = RawFeature.newBuilder();
+            for (int j = 0; j < wordCount; j++) {
+                readWords[j * items + i] = reads[j];
+                writeWords[j * items + i] = writes[j];
+                rawFeature.addReadAccesses(reads[j])
+                        .addWriteAccesses(writes[j]);
+            }
+            FeatureExtractor.extract(rawFeature.build(), expected,
+                                     i * FeatureExtractor.NUM_FEATURES);
+        }
+
+        for (BatchFeatureExtractor.Kernel kernel : List.of(
+                BatchFeatureExtractor.KERNEL,
+                BatchFeatureExtractor.SCALAR_KERNEL)) {
+            float[] values = new float[expected.length];
+            BatchFeatureExtractor.extract(kernel, readWords, writeWords,
+                                          wordCount, items, values);
+            assertArrayEquals(expected, values);
+        }
+    }
+
+    @Test
+    public void testTrackers() {
+        // a short tracker is padded with steps without accesses
+        RingBufferAccessTracker longTracker = new RingBufferAccessTracker(256);
+        longTracker.recordRead(800);
+        longTracker.recordWrite(990);
+        longTracker.recordRead(999);
+        longTracker.syncTimeStep(1000);
+        RingBufferAccessTracker shortTracker = new RingBufferAccessTracker(64);
+        shortTracker.recordRead(995);
+        shortTracker.syncTimeStep(1000);
+
+        List<AccessTracker> trackers = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            trackers.add(i % 3 == 0 ? shortTracker : longTracker);
+        }
+        float[] values = new float[trackers.size() *
+                FeatureExtractor.NUM_FEATURES];
+        BatchFeatureExtractor.extract(trackers, values);
+        for (int i = 0; i < trackers.size(); i++) {
+            float[] expected = new float[FeatureExtractor.NUM_FEATURES];
+            FeatureExtractor.extract(trackers.get(i).toRawFeature(), expected,
+                                     0);
+            for (int f = 0; f < FeatureExtractor.NUM_FEATURES; f++) {
+                assertEquals(expected[f],
+                             values[i * FeatureExtractor.NUM_FEATURES + f]);
+            }
+        }
+    }
+}
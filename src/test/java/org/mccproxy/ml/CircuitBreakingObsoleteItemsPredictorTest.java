@@ -0,0 +1,140 @@
+package org.mccproxy.ml;
+
+import org.junit.jupiter.api.Test;
+import org.mccproxy.cache.AccessTracker;
+import org.mccproxy.cache.RingBufferAccessTracker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CircuitBreakingObsoleteItemsPredictorTest {
+
+    // deems every item obsolete, or fails while failing is set
+    private static class FlakyPredictor extends ObsoleteItemsPredictor {
+        boolean failing;
+        int calls;
+
+        @Override
+        public List<Boolean> predictObsoleteItems(
+                List<AccessTracker> accessTrackers) {
+            calls++;
+            if (failing) {
+                throw new IllegalStateException("unavailable");
+            }
+            return accessTrackers.stream().map(t -> true).toList();
+        }
+
+        @Override
+        public CompletableFuture<List<Boolean>> predictObsoleteItemsAsync(
+                List<AccessTracker> accessTrackers) {
+            calls++;
+            if (failing) {
+                return CompletableFuture.failedFuture(
+                        new TimeoutException("deadline"));
+            }
+            return CompletableFuture.completedFuture(
+                    accessTrackers.stream().map(t -> true).toList());
+        }
+    }
+
+    private static final ObsoleteItemsPredictor KEEP_ALL =
+            new ObsoleteItemsPredictor() {
+                @Override
+                public List<Boolean> predictObsoleteItems(
+                        List<AccessTracker> accessTrackers) {
+                    return accessTrackers.stream().map(t -> false).toList();
+                }
+            };
+
+    @Test
+    public void testCircuitBreaker() {
+        FlakyPredictor flaky = new FlakyPredictor();
+        long[] now = {0};
+        CircuitBreakingObsoleteItemsPredictor predictor =
+                new CircuitBreakingObsoleteItemsPredictor(flaky, KEEP_ALL, 2,
+                                                          1000,
+                                                          () -> now[0]);
+        List<AccessTracker> batch =
+                List.of(new RingBufferAccessTracker(256));
+
+        assertEquals(List.of(true), predictor.predictObsoleteItems(batch));
+
+        // failures are answered by the fallback, the breaker opens on the
+        // second one in a row
+        flaky.failing = true;
+        assertEquals(List.of(false), predictor.predictObsoleteItems(batch));
+        assertFalse(predictor.isOpen());
+        assertEquals(List.of(false), predictor.predictObsoleteItemsAsync(batch)
+                .join());
+        assertTrue(predictor.isOpen());
+        assertEquals(3, flaky.calls);
+
+        // while open, the failing predictor is not asked
+        now[0] += TimeUnit.MILLISECONDS.toNanos(999);
+        assertEquals(List.of(false), predictor.predictObsoleteItems(batch));
+        assertEquals(3, flaky.calls);
+
+        // a failed probe keeps it open for another period
+        now[0] += TimeUnit.MILLISECONDS.toNanos(1);
+        assertEquals(List.of(false), predictor.predictObsoleteItems(batch));
+        assertEquals(4, flaky.calls);
+        assertTrue(predictor.isOpen());
+        assertEquals(List.of(false), predictor.predictObsoleteItems(batch));
+        assertEquals(4, flaky.calls);
+
+        // a successful probe closes it
+        flaky.failing = false;
+        now[0] += TimeUnit.MILLISECONDS.toNanos(1000);
+        assertEquals(List.of(true), predictor.predictObsoleteItemsAsync(batch)
+                .join());
+        assertFalse(predictor.isOpen());
+        assertEquals(List.of(true), predictor.predictObsoleteItems(batch));
+        assertEquals(6, flaky.calls);
+    }
+
+    @Test
+    public void testSingleProbe() {
+        // a probe in flight keeps the other batches on the fallback
+        List<CompletableFuture<List<Boolean>>> probes = new ArrayList<>();
+        ObsoleteItemsPredictor pending = new ObsoleteItemsPredictor() {
+            @Override
+            public List<Boolean> predictObsoleteItems(
+                    List<AccessTracker> accessTrackers) {
+                throw new IllegalStateException("unavailable");
+            }
+
+            @Override
+            public CompletableFuture<List<Boolean>> predictObsoleteItemsAsync(
+                    List<AccessTracker> accessTrackers) {
+                CompletableFuture<List<Boolean>> probe =
+                        new CompletableFuture<>();
+                probes.add(probe);
+                return probe;
+            }
+        };
+        long[] now = {0};
+        CircuitBreakingObsoleteItemsPredictor predictor =
+                new CircuitBreakingObsoleteItemsPredictor(pending, KEEP_ALL, 1,
+                                                          1000,
+                                                          () -> now[0]);
+        List<AccessTracker> batch =
+                List.of(new RingBufferAccessTracker(256));
+        predictor.predictObsoleteItems(batch);
+        assertTrue(predictor.isOpen());
+
+        now[0] += TimeUnit.MILLISECONDS.toNanos(1000);
+        CompletableFuture<List<Boolean>> probe =
+                predictor.predictObsoleteItemsAsync(batch);
+        assertEquals(List.of(false), predictor.predictObsoleteItemsAsync(batch)
+                .join());
+        assertEquals(1, probes.size());
+        probes.get(0).complete(List.of(true));
+        assertEquals(List.of(true), probe.join());
+        assertFalse(predictor.isOpen());
+    }
+}
@@ -0,0 +1,60 @@
+package org.mccproxy.ml;
+
+import org.junit.jupiter.api.Test;
+import org.mccproxy.cache.RingBufferAccessTracker;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FeatureExtractorTest {
+
+    @Test
+    void testCountAccesses() {
+        long[] words = {1, 2, 4};
+        assertEquals(1, FeatureExtractor.countAccesses(words, 3, 1));
+        assertEquals(1, FeatureExtractor.countAccesses(words, 3, 64));
+        assertEquals(1, FeatureExtractor.countAccesses(words, 3, 65));
+        assertEquals(2, FeatureExtractor.countAccesses(words, 3, 66));
+        assertEquals(2, FeatureExtractor.countAccesses(words, 3, 67));
+        assertEquals(3, FeatureExtractor.countAccesses(words, 3, 192));
+        assertEquals(3, FeatureExtractor.countAccesses(words, 3, 193));
+        // the oldest step of a word counts as an access, not as a sign
+        assertEquals(1, FeatureExtractor.countAccesses(
+                new long[]{Long.MIN_VALUE}, 1, 64));
+    }
+
+    @Test
+    void testStepsBetweenAccesses() {
+        long[] words = {1, 2, 4};
+        float[] values = new float[6];
+        assertEquals(3, FeatureExtractor.stepsBetweenAccesses(words, 3,
+                                                              values, 0));
+        assertArrayEquals(new float[]{1, 65, 65, 0, 0, 0}, values);
+    }
+
+    @Test
+    void testExtract() {
+        RingBufferAccessTracker tracker = new RingBufferAccessTracker(256);
+        tracker.recordRead(100);
+        tracker.recordRead(140);
+        tracker.recordWrite(150);
+        tracker.recordRead(160);
+        tracker.syncTimeStep(170);
+
+        ExtractedFeature feature = FeatureExtractor.extract(tracker);
+        assertEquals(FeatureExtractor.NUM_FEATURES, feature.getValuesCount());
+        assertEquals(30, FeatureExtractor.FEATURE_NAMES.size());
+        // reads 10, 30 and 70 steps ago
+        assertEquals(List.of(1f, 2f, 3f, 3f, 11f, 20f, 40f, 0f, 0f, 0f, -9f,
+                             -20f, 40f, 0f, 0f),
+                     feature.getValuesList().subList(0, 15));
+        // a write 20 steps ago
+        assertEquals(List.of(1f, 1f, 1f, 1f, 21f, 0f, 0f, 0f, 0f, 0f, 21f,
+                             0f, 0f, 0f, 0f),
+                     feature.getValuesList().subList(15, 30));
+        assertEquals("write_p_delta4_delta5",
+                     FeatureExtractor.FEATURE_NAMES.get(29));
+    }
+}
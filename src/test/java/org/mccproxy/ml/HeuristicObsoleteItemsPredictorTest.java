@@ -0,0 +1,44 @@
+package org.mccproxy.ml;
+
+import org.junit.jupiter.api.Test;
+import org.mccproxy.cache.AccessTracker;
+import org.mccproxy.cache.RingBufferAccessTracker;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HeuristicObsoleteItemsPredictorTest {
+
+    private static AccessTracker tracker(int readAge, int writeAge) {
+        RingBufferAccessTracker tracker = new RingBufferAccessTracker(256);
+        if (readAge >= 0) {
+            tracker.recordRead(1000 - readAge);
+        }
+        if (writeAge >= 0) {
+            tracker.recordWrite(1000 - writeAge);
+        }
+        tracker.syncTimeStep(1000);
+        return tracker;
+    }
+
+    @Test
+    public void testPredictObsoleteItems() {
+        HeuristicObsoleteItemsPredictor predictor =
+                new HeuristicObsoleteItemsPredictor(100);
+        assertEquals(List.of(true, true, false, false, false, false),
+                     predictor.predictObsoleteItems(List.of(
+                             // written since a read long ago
+                             tracker(150, 20),
+                             // written, never read in the window
+                             tracker(-1, 200),
+                             // read recently
+                             tracker(99, 20),
+                             // not written since the read
+                             tracker(150, 160),
+                             // only read
+                             tracker(150, -1),
+                             // no accesses at all
+                             tracker(-1, -1))));
+    }
+}
@@ -0,0 +1,113 @@
+package org.mccproxy.ml;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.mccproxy.cache.AccessTracker;
+import org.mccproxy.cache.RingBufferAccessTracker;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LocalObsoleteItemsPredictorTest {
+
+    private static ObsoleteItemsModel parse(String json) throws IOException {
+        return ObsoleteItemsModel.fromJson(
+                new ObjectMapper().readTree(json.replace('\'', '"')));
+    }
+
+    private static AccessTracker readsAgo(int... ages) {
+        RingBufferAccessTracker tracker = new RingBufferAccessTracker(256);
+        for (int age : ages) {
+            tracker.recordRead(1000 - age);
+        }
+        tracker.syncTimeStep(1000);
+        return tracker;
+    }
+
+    @Test
+    void testLogisticRegression() throws IOException {
+        // obsolete unless there were reads in the last 100 steps
+        ObsoleteItemsModel model = parse(
+                "{'type': 'logistic_regression', 'threshold': 0.5," +
+                        " 'features': ['read_arrive_times_p100']," +
+                        " 'intercept': 1.0, 'coefficients': [-2.0]}");
+        float[] features = new float[FeatureExtractor.NUM_FEATURES];
+        assertEquals(1 / (1 + Math.exp(-1.0)), model.score(features, 0),
+                     1e-9);
+
+        LocalObsoleteItemsPredictor predictor =
+                new LocalObsoleteItemsPredictor(model);
+        assertEquals(List.of(true, false, true),
+                     predictor.predictObsoleteItems(
+                             List.of(readsAgo(), readsAgo(5), readsAgo(150))));
+    }
+
+    @Test
+    void testGradientBoostedTrees() throws IOException {
+        // tree 0 splits on the reads in the last 30 steps, tree 1 on the
+        // distance to the most recent write
+        ObsoleteItemsModel model = parse(
+                "{'type': 'gradient_boosted_trees', 'base_score': -0.5," +
+                        " 'features': ['write_p_delta0'," +
+                        " 'read_arrive_times_p30'], 'trees': [" +
+                        " {'feature': [1, -2, -2], 'threshold': [0.5, -2, -2]," +
+                        "  'left': [1, -1, -1], 'right': [2, -1, -1]," +
+                        "  'value': [0, 2.0, -2.0]}," +
+                        " {'feature': [0, -2, -2], 'threshold': [10, -2, -2]," +
+                        "  'left': [1, -1, -1], 'right': [2, -1, -1]," +
+                        "  'value': [0, -1.0, 0.25]}]}");
+        float[] features = new float[2 * FeatureExtractor.NUM_FEATURES];
+        int second = FeatureExtractor.NUM_FEATURES;
+        features[second +
+                FeatureExtractor.FEATURE_NAMES.indexOf(
+                        "read_arrive_times_p30")] = 3;
+        features[second +
+                FeatureExtractor.FEATURE_NAMES.indexOf("write_p_delta0")] = 50;
+        assertEquals(1 / (1 + Math.exp(-(-0.5 + 2.0 - 1.0))),
+                     model.score(features, 0), 1e-9);
+        assertEquals(1 / (1 + Math.exp(-(-0.5 - 2.0 + 0.25))),
+                     model.score(features, second), 1e-9);
+
+        LocalObsoleteItemsPredictor predictor =
+                new LocalObsoleteItemsPredictor(model);
+        assertEquals(List.of(true, false),
+                     predictor.predictObsoleteItems(
+                             List.of(readsAgo(200), readsAgo(1))));
+    }
+
+    @Test
+    void testLoad() throws IOException {
+        Path path = Files.createTempFile("model", ".json");
+        try {
+            Files.writeString(path,
+                              "{\"type\": \"logistic_regression\"," +
+                                      " \"features\": [], \"intercept\": 2}");
+            LocalObsoleteItemsPredictor predictor =
+                    new LocalObsoleteItemsPredictor(path);
+            assertEquals(List.of(true),
+                         predictor.predictObsoleteItems(
+                                 List.of(readsAgo(1))));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    void testInvalidModels() {
+        assertThrows(IllegalArgumentException.class, () -> parse(
+                "{'type': 'random_forest', 'features': []}"));
+        assertThrows(IllegalArgumentException.class, () -> parse(
+                "{'type': 'logistic_regression', 'features': ['unknown']," +
+                        " 'coefficients': [1.0]}"));
+        // a child that points back to its parent
+        assertThrows(IllegalArgumentException.class, () -> parse(
+                "{'type': 'gradient_boosted_trees'," +
+                        " 'features': ['read_p_delta0'], 'trees': [" +
+                        " {'feature': [0, 0], 'threshold': [1, 1]," +
+                        "  'left': [1, 0], 'right': [1, 0], 'value': [0, 0]}]}"));
+    }
+}
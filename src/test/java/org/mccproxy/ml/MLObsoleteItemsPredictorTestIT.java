@@ -0,0 +1,55 @@
+package org.mccproxy.ml;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.mccproxy.cache.AccessTracker;
+import org.mccproxy.cache.RingBufferAccessTracker;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MLObsoleteItemsPredictorTestIT {
+
+    private static AccessTracker readsAgo(int age) {
+        RingBufferAccessTracker tracker = new RingBufferAccessTracker(256);
+        tracker.recordRead(1000 - age);
+        tracker.syncTimeStep(1000);
+        return tracker;
+    }
+
+    @Test
+    public void testPredictStream() throws IOException {
+        // obsolete unless there were reads in the last 100 steps
+        ObsoleteItemsModel model = ObsoleteItemsModel.fromJson(
+                new ObjectMapper().readTree(
+                        "{\"type\": \"logistic_regression\"," +
+                                " \"features\": [\"read_arrive_times_p100\"]," +
+                                " \"intercept\": 1.0, \"coefficients\": [-2.0]}"));
+        StandInMLServer server = new StandInMLServer(model);
+        server.start(50061);
+        try {
+            MLObsoleteItemsPredictor predictor =
+                    new MLObsoleteItemsPredictor("localhost", 50061);
+            assertEquals(List.of(false, true), predictor.predictObsoleteItems(
+                    List.of(readsAgo(5), readsAgo(150))));
+
+            // many batches in flight on the one stream, each answered by its
+            // own response
+            List<CompletableFuture<List<Boolean>>> batches = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                batches.add(predictor.predictObsoleteItemsAsync(
+                        List.of(readsAgo(i % 200), readsAgo(199 - i % 200))));
+            }
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(List.of(i % 200 >= 100, 199 - i % 200 >= 100),
+                             batches.get(i).join());
+            }
+        } finally {
+            server.stop();
+        }
+    }
+}
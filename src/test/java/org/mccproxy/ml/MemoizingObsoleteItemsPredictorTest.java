@@ -0,0 +1,102 @@
+package org.mccproxy.ml;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.jupiter.api.Test;
+import org.mccproxy.cache.AccessTracker;
+import org.mccproxy.cache.RingBufferAccessTracker;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MemoizingObsoleteItemsPredictorTest {
+
+    private static AccessTracker readsAgo(int... ages) {
+        RingBufferAccessTracker tracker = new RingBufferAccessTracker(256);
+        for (int age : ages) {
+            tracker.recordRead(1000 - age);
+        }
+        tracker.syncTimeStep(1000);
+        return tracker;
+    }
+
+    @Test
+    public void testMemoization() {
+        // obsolete unless there were reads in the last 64 steps, answers for
+        // at most three items
+        List<Integer> batchSizes = new ArrayList<>();
+        ObsoleteItemsPredictor predictor = new ObsoleteItemsPredictor() {
+            @Override
+            public List<Boolean> predictObsoleteItems(
+                    List<AccessTracker> accessTrackers) {
+                batchSizes.add(accessTrackers.size());
+                return accessTrackers.stream().limit(3).map(
+                        t -> t.toRawFeature().getReadAccesses(0) == 0)
+                        .toList();
+            }
+        };
+        MetricRegistry metrics = new MetricRegistry();
+        MemoizingObsoleteItemsPredictor memoizing =
+                new MemoizingObsoleteItemsPredictor(predictor, 3, metrics);
+
+        // equal patterns in a batch are scored once
+        assertEquals(List.of(true, false, true, false),
+                     memoizing.predictObsoleteItems(
+                             List.of(readsAgo(200), readsAgo(5),
+                                     readsAgo(200), readsAgo(5))));
+        assertEquals(List.of(2), batchSizes);
+        assertEquals(2, memoizing.size());
+
+        // remembered patterns are not scored again, a write is a pattern of
+        // its own
+        RingBufferAccessTracker written = new RingBufferAccessTracker(256);
+        written.recordWrite(800);
+        written.syncTimeStep(1000);
+        assertEquals(List.of(false, true, true),
+                     memoizing.predictObsoleteItems(
+                             List.of(readsAgo(5), readsAgo(200), written)));
+        assertEquals(List.of(2, 1), batchSizes);
+
+        // the least recently used pattern is dropped, an unanswered item is
+        // kept and not remembered
+        assertEquals(List.of(false, false, true, false, false),
+                     memoizing.predictObsoleteItems(
+                             List.of(readsAgo(1), readsAgo(2), readsAgo(300),
+                                     readsAgo(5), readsAgo(3))));
+        assertEquals(List.of(2, 1, 4), batchSizes);
+        assertEquals(3, memoizing.size());
+        assertEquals(List.of(false),
+                     memoizing.predictObsoleteItems(List.of(readsAgo(3))));
+        assertEquals(List.of(2, 1, 4, 1), batchSizes);
+
+        assertEquals(3, metrics.counter(MetricRegistry.name(
+                MemoizingObsoleteItemsPredictor.class,
+                "verdictHit")).getCount());
+        assertEquals(10, metrics.counter(MetricRegistry.name(
+                MemoizingObsoleteItemsPredictor.class,
+                "verdictMiss")).getCount());
+    }
+
+    @Test
+    public void testAsync() {
+        List<Integer> batchSizes = new ArrayList<>();
+        MemoizingObsoleteItemsPredictor memoizing =
+                new MemoizingObsoleteItemsPredictor(
+                        new ObsoleteItemsPredictor() {
+                            @Override
+                            public List<Boolean> predictObsoleteItems(
+                                    List<AccessTracker> accessTrackers) {
+                                batchSizes.add(accessTrackers.size());
+                                return accessTrackers.stream()
+                                        .map(t -> true).toList();
+                            }
+                        }, 100, new MetricRegistry());
+        assertFalse(memoizing.isAsync());
+        assertEquals(List.of(true, true), memoizing.predictObsoleteItemsAsync(
+                List.of(readsAgo(10), readsAgo(20))).join());
+        assertEquals(List.of(true, true), memoizing.predictObsoleteItemsAsync(
+                List.of(readsAgo(20), readsAgo(10))).join());
+        assertEquals(List.of(2), batchSizes);
+    }
+}
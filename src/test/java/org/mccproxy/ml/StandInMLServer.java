@@ -0,0 +1,105 @@
+package org.mccproxy.ml;
+
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Serves MLService from the JVM, so the proxy's predictor can be tested and
+ * benchmarked without the Python service. It scores the extracted features
+ * with an exported model; without a model it keeps every item, like the
+ * Python service does.
+ * <p>
+ * Usage: StandInMLServer [port [model.json]]
+ */
+public class StandInMLServer extends MLServiceGrpc.MLServiceImplBase {
+    private static final Logger logger =
+            LoggerFactory.getLogger(StandInMLServer.class.getName());
+
+    private static final ObsoleteItemsModel KEEP_ALL =
+            new ObsoleteItemsModel() {
+                @Override
+                public double score(float[] features, int offset) {
+                    return 0;
+                }
+
+                @Override
+                public double getThreshold() {
+                    return 1;
+                }
+            };
+
+    private final ObsoleteItemsModel model;
+    private Server server;
+
+    public StandInMLServer(ObsoleteItemsModel model) {
+        this.model = model;
+    }
+
+    public void start(int port) throws IOException {
+        server = ServerBuilder.forPort(port).addService(this).build().start();
+        logger.info("StandInMLServer::start - Listening on port {}", port);
+    }
+
+    public void stop() {
+        server.shutdownNow();
+    }
+
+    @Override
+    public void predict(PredictRequest request,
+                        StreamObserver<PredictResponse> responseObserver) {
+        responseObserver.onNext(score(request));
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public StreamObserver<PredictRequest> predictStream(
+            StreamObserver<PredictResponse> responseObserver) {
+        return new StreamObserver<>() {
+            @Override
+            public void onNext(PredictRequest request) {
+                responseObserver.onNext(score(request));
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                logger.warn("StandInMLServer::predictStream - Client failed",
+                            t);
+            }
+
+            @Override
+            public void onCompleted() {
+                responseObserver.onCompleted();
+            }
+        };
+    }
+
+    PredictResponse score(PredictRequest request) {
+        PredictResponse.Builder response = PredictResponse.newBuilder()
+                .setRequestId(request.getRequestId());
+        float[] features = new float[FeatureExtractor.NUM_FEATURES];
+        for (ExtractedFeature feature : request.getExtractedFeaturesList()) {
+            for (int i = 0; i < features.length; i++) {
+                features[i] = feature.getValues(i);
+            }
+            response.addIsObsolete(
+                    model.score(features, 0) > model.getThreshold());
+        }
+        return response.build();
+    }
+
+    public static void main(String[] args)
+            throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 50051;
+        ObsoleteItemsModel model = args.length > 1 ?
+                ObsoleteItemsModel.load(Path.of(args[1])) : KEEP_ALL;
+        StandInMLServer standIn = new StandInMLServer(model);
+        standIn.start(port);
+        standIn.server.awaitTermination();
+    }
+}
@@ -0,0 +1,97 @@
+package org.mccproxy.proxy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InvalidationPipelineTest {
+
+    @Test
+    public void testAppliesEveryInvalidationInOrder() throws Exception {
+        int numProducers = 4;
+        int perProducer = 5000;
+        // only touched by the consumer thread
+        List<Long> applied = new ArrayList<>();
+        InvalidationPipeline pipeline =
+                new InvalidationPipeline(8, (keys, newVersion) -> {
+                    applied.add(newVersion);
+                    return true;
+                });
+        assertEquals(8, pipeline.capacity());
+        pipeline.start();
+
+        CountDownLatch done = new CountDownLatch(numProducers * perProducer);
+        AtomicInteger failures = new AtomicInteger();
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < numProducers; p++) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    // producer in the high digits, sequence in the low ones
+                    pipeline.publish(List.of("key" + i),
+                                     producer * 1_000_000L + i, success -> {
+                                         if (!success) {
+                                             failures.incrementAndGet();
+                                         }
+                                         done.countDown();
+                                     });
+                }
+            });
+            producers.add(thread);
+            thread.start();
+        }
+        for (Thread thread : producers) {
+            thread.join();
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        pipeline.stop();
+
+        assertEquals(0, failures.get());
+        assertEquals(numProducers * perProducer, applied.size());
+        long[] last = new long[numProducers];
+        Arrays.fill(last, -1);
+        for (long version : applied) {
+            int producer = (int) (version / 1_000_000L);
+            assertTrue(version % 1_000_000L > last[producer]);
+            last[producer] = version % 1_000_000L;
+        }
+        assertEquals((numProducers - 1) * 1_000_000L + perProducer - 1,
+                     pipeline.getAppliedVersion());
+    }
+
+    @Test
+    public void testFailedInvalidation() throws Exception {
+        InvalidationPipeline pipeline =
+                new InvalidationPipeline(4, (keys, newVersion) -> {
+                    if (keys.contains("bad")) {
+                        throw new IllegalStateException("bad key");
+                    }
+                    return true;
+                });
+        pipeline.start();
+
+        CountDownLatch done = new CountDownLatch(2);
+        boolean[] results = new boolean[2];
+        pipeline.publish(List.of("bad"), 1L, success -> {
+            results[0] = success;
+            done.countDown();
+        });
+        pipeline.publish(List.of("good"), 2L, success -> {
+            results[1] = success;
+            done.countDown();
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        pipeline.stop();
+
+        assertFalse(results[0]);
+        assertTrue(results[1]);
+        assertEquals(2L, pipeline.getAppliedVersion());
+    }
+}
@@ -0,0 +1,24 @@
+package org.mccproxy.proxy;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ItemRecordTest {
+
+    @Test
+    public void testSize() {
+        ItemRecord ascii = new ItemRecord("key1", "value", 7);
+        assertEquals(9, ascii.getSize());
+        // "key1@7" and "value" with 64 bytes of Redis overhead
+        assertEquals(6 + 5 + 64, ascii.getStoredSize(64));
+
+        // sizes are in UTF-8 bytes, not chars
+        ItemRecord encoded = new ItemRecord("clé", "värde€", 12);
+        assertEquals(4 + 9, encoded.getSize());
+        assertEquals(7 + 9, encoded.getStoredSize(0));
+
+        ItemRecord sized = new ItemRecord("key1", "value", 7, 100);
+        assertEquals(100, sized.getSize());
+    }
+}
@@ -0,0 +1,93 @@
+package org.mccproxy.proxy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KeyOrderedExecutorTest {
+
+    @Test
+    public void testDisjointKeysRunInParallel() throws Exception {
+        KeyOrderedExecutor executor = new KeyOrderedExecutor(2, "test");
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        CountDownLatch done = new CountDownLatch(2);
+        for (String key : List.of("key1", "key2")) {
+            executor.submit(List.of(key), () -> {
+                bothStarted.countDown();
+                try {
+                    // only returns if the other task runs at the same time
+                    assertTrue(bothStarted.await(10, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSharedKeysRunInSubmissionOrder() throws Exception {
+        int numTasks = 2000;
+        KeyOrderedExecutor executor = new KeyOrderedExecutor(8, "test");
+        // the tasks that ran, per key
+        ConcurrentHashMap<String, List<Integer>> applied =
+                new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, AtomicInteger> running =
+                new ConcurrentHashMap<>();
+        AtomicInteger overlaps = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(numTasks);
+        for (int i = 0; i < numTasks; i++) {
+            int task = i;
+            // one of five keys, listed twice, and one of seven others
+            List<String> keys = List.of("key" + i % 5, "key" + (5 + i % 7),
+                                        "key" + i % 5);
+            List<String> distinctKeys = keys.subList(0, 2);
+            executor.submit(keys, () -> {
+                for (String key : distinctKeys) {
+                    if (running.computeIfAbsent(key, k -> new AtomicInteger())
+                            .incrementAndGet() > 1) {
+                        overlaps.incrementAndGet();
+                    }
+                }
+                for (String key : distinctKeys) {
+                    applied.computeIfAbsent(key, k -> Collections
+                            .synchronizedList(new ArrayList<>())).add(task);
+                    running.get(key).decrementAndGet();
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        assertEquals(0, overlaps.get());
+        assertEquals(12, applied.size());
+        for (List<Integer> tasks : applied.values()) {
+            for (int i = 1; i < tasks.size(); i++) {
+                assertTrue(tasks.get(i - 1) < tasks.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testFailedTaskReleasesItsKeys() throws Exception {
+        KeyOrderedExecutor executor = new KeyOrderedExecutor(1, "test");
+        CountDownLatch done = new CountDownLatch(1);
+        executor.submit(List.of("key1"), () -> {
+            throw new IllegalStateException("bad key");
+        });
+        executor.submit(List.of("key1"), done::countDown);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+}
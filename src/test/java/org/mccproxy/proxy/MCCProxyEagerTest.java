@@ -0,0 +1,195 @@
+package org.mccproxy.proxy;
+
+import org.junit.jupiter.api.Test;
+import org.mccproxy.cache.SnapshottableCache;
+import org.mccproxy.connector.cache.CacheConnector;
+import org.mccproxy.connector.db.DBConnector;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MCCProxyEagerTest {
+
+    // the rows of the database, with the version of their last write
+    private static class InMemoryDB implements DBConnector {
+        final Map<String, ItemRecord> rows = new HashMap<>();
+        // run after every batch is fetched, before it is returned
+        Runnable afterSelect = () -> {
+        };
+
+        long write(String key, String value) {
+            long version = rows.values().stream()
+                    .mapToLong(ItemRecord::getVersion).max().orElse(0) + 1;
+            rows.put(key, new ItemRecord(key, value, version));
+            return version;
+        }
+
+        @Override
+        public void connect() {
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public List<ItemRecord> batchSelect(String table, List<String> keys) {
+            List<ItemRecord> items = new ArrayList<>();
+            for (String key : keys) {
+                items.add(rows.get(key));
+            }
+            Runnable hook = afterSelect;
+            afterSelect = () -> {
+            };
+            hook.run();
+            return items;
+        }
+    }
+
+    private static class InMemoryCache implements CacheConnector {
+        final Map<String, String> values = new HashMap<>();
+
+        @Override
+        public void connect() {
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public List<Object> batchExecute(List<String> selectKeys,
+                                         List<String> deleteKeys,
+                                         List<ItemRecord> putKeyValues) {
+            List<Object> results = new ArrayList<>();
+            for (String key : selectKeys) {
+                results.add(values.get(key));
+            }
+            for (String key : deleteKeys) {
+                values.remove(key);
+            }
+            for (ItemRecord item : putKeyValues) {
+                values.put(item.getKey(), item.getValue());
+            }
+            return results;
+        }
+
+        @Override
+        public void batchInsert(List<String> keys, List<String> values) {
+            for (int i = 0; i < keys.size(); i++) {
+                this.values.put(keys.get(i), values.get(i));
+            }
+        }
+
+        @Override
+        public List<String> batchSelect(List<String> keys) {
+            List<String> results = new ArrayList<>();
+            for (String key : keys) {
+                results.add(values.get(key));
+            }
+            return results;
+        }
+    }
+
+    private static MCCProxyEager createProxy(String backend, InMemoryDB db) {
+        MCCProxyConfig config = new MCCProxyConfig();
+        config.setCacheSize(1000);
+        config.setCacheBackend(backend);
+        config.setCacheShards(4);
+        return new MCCProxyEager(config, new InMemoryCache(), db);
+    }
+
+    private static Map<String, String> read(MCCProxy proxy,
+                                            List<String> keys) {
+        Map<String, String> values = new HashMap<>();
+        for (ItemRecord item : proxy.processRead(keys)) {
+            values.put(item.getKey(), item.getValue());
+        }
+        return values;
+    }
+
+    @Test
+    public void testInvalidationDuringFetch() {
+        for (String backend : List.of("DEFAULT", "PRIMITIVE", "SHARDED")) {
+            InMemoryDB db = new InMemoryDB();
+            MCCProxyEager proxy = createProxy(backend, db);
+            proxy.processInvalidation(List.of("a"), db.write("a", "a1"));
+
+            // a is updated after the read fetched a1 and before it is cached
+            db.afterSelect = () -> proxy.processInvalidation(
+                    List.of("a"), db.write("a", "a2"));
+            assertEquals(Map.of("a", "a1"), read(proxy, List.of("a")));
+            assertEquals(2, proxy.cache.getItemValidUntil("a"), backend);
+
+            proxy.processInvalidation(List.of("b"), db.write("b", "b3"));
+            read(proxy, List.of("b"));
+            // a1 must not be served together with a version of b written
+            // after a2
+            assertEquals(Map.of("a", "a2", "b", "b3"),
+                         read(proxy, List.of("a", "b")), backend);
+        }
+    }
+
+    @Test
+    public void testInvalidationOfNewerFetchedVersion() {
+        for (String backend : List.of("DEFAULT", "PRIMITIVE", "SHARDED")) {
+            InMemoryDB db = new InMemoryDB();
+            MCCProxyEager proxy = createProxy(backend, db);
+            long version1 = db.write("a", "a1");
+            long version2 = db.write("a", "a2");
+            proxy.processInvalidation(List.of("a"), version1);
+
+            // the read fetches a2 before its invalidation arrives
+            db.afterSelect = () -> proxy.processInvalidation(List.of("a"),
+                                                             version2);
+            assertEquals(Map.of("a", "a2"), read(proxy, List.of("a")));
+            assertEquals(Long.MAX_VALUE, proxy.cache.getItemValidUntil("a"),
+                         backend);
+        }
+    }
+
+    @Test
+    public void testInvalidationTimeSteps() {
+        // SHARDED applies invalidations outside the cache lock
+        for (String backend : List.of("DEFAULT", "SHARDED")) {
+            InMemoryDB db = new InMemoryDB();
+            MCCProxyEager proxy = createProxy(backend, db);
+            assertEquals(backend.equals("SHARDED"),
+                         proxy.isConcurrentInvalidationSupported());
+
+            proxy.processInvalidation(List.of("a"), db.write("a", "a1"));
+            assertEquals(1, proxy.timeStep, backend);
+            read(proxy, List.of("a"));
+            assertEquals(2, proxy.timeStep, backend);
+            proxy.processInvalidation(List.of("a"), db.write("a", "a2"));
+            proxy.processInvalidation(List.of("b"), db.write("b", "b3"));
+            assertEquals(4, proxy.timeStep, backend);
+        }
+    }
+
+    @Test
+    public void testSnapshotBackends() {
+        for (String backend : List.of("DEFAULT", "PRIMITIVE", "SHARDED")) {
+            MCCProxyConfig config = new MCCProxyConfig();
+            config.setCacheSize(1000);
+            config.setCacheBackend(backend);
+            config.setSnapshotPath("snapshot.bin");
+            if (backend.equals("DEFAULT")) {
+                assertInstanceOf(SnapshottableCache.class,
+                                 new MCCProxyEager(config, new InMemoryCache(),
+                                                   new InMemoryDB()).cache);
+            } else {
+                assertThrows(IllegalArgumentException.class,
+                             () -> new MCCProxyEager(config,
+                                                     new InMemoryCache(),
+                                                     new InMemoryDB()));
+            }
+        }
+    }
+}
@@ -3,6 +3,8 @@ package org.mccproxy.proxy;
 import com.codahale.metrics.Counter;
 import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
 import org.junit.jupiter.api.Test;
+import org.mccproxy.connector.db.DBConnector;
+import org.mccproxy.connector.db.PostgresConnector;
 import org.mccproxy.connector.db.PostgresConnectorTestIT;
 import org.mccproxy.utils.TimeUtils;
 import redis.embedded.RedisServer;
@@ -13,9 +15,13 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class MCCProxyEagerTestIT {
 
@@ -470,6 +476,161 @@ public class MCCProxyEagerTestIT {
 
     }
 
+    @Test
+    public void testConcurrentReads() throws Exception {
+        RedisServer redisServer = new RedisServer(6379);
+        redisServer.start();
+
+        try (EmbeddedPostgres pg = EmbeddedPostgres.builder().setPort(63552)
+                .setServerConfig("track_commit_timestamp", "on").start();
+             Connection c = pg.getPostgresDatabase().getConnection()) {
+            MCCProxyConfig config =
+                    MCCProxyServer.loadConfig("proxy-config.yaml");
+            config.setReadThreads(4);
+            // small enough for the reads to evict each other's items
+            config.setCacheSize(100);
+            mccProxy = new MCCProxyEager(config);
+            mccProxy.start();
+
+            PostgresConnectorTestIT.createTable(c);
+            List<String> allKeys = new ArrayList<>();
+            List<Integer> values = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                allKeys.add("key" + i);
+                values.add(i);
+            }
+            mccProxy.processInvalidation(allKeys,
+                                         insertData(c, allKeys, values));
+
+            // every reader checks that it never sees a key go back to an
+            // older version, the proxy asserts the same across readers
+            List<Thread> readers = new ArrayList<>();
+            List<Throwable> failures = new CopyOnWriteArrayList<>();
+            for (int r = 0; r < 4; r++) {
+                int reader = r;
+                Thread thread = new Thread(() -> {
+                    Map<String, Long> lastVersions = new HashMap<>();
+                    try {
+                        for (int i = 0; i < 200; i++) {
+                            List<String> keys =
+                                    List.of(allKeys.get((reader + i) % 20),
+                                            allKeys.get((3 * i + 1) % 20),
+                                            allKeys.get((7 * i + 2) % 20));
+                            for (ItemRecord item : mccProxy.processRead(
+                                    keys)) {
+                                assertTrue(lastVersions.getOrDefault(
+                                        item.getKey(), Long.MIN_VALUE) <=
+                                                   item.getVersion());
+                                lastVersions.put(item.getKey(),
+                                                 item.getVersion());
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                });
+                readers.add(thread);
+                thread.start();
+            }
+            for (int i = 0; i < 20; i++) {
+                List<String> keys = List.of(allKeys.get(i));
+                mccProxy.processInvalidation(keys, updateData(c, keys,
+                                                              List.of(-i)));
+            }
+            for (Thread thread : readers) {
+                thread.join();
+            }
+            assertEquals(List.of(), failures);
+
+            // once the updates are invalidated, every key reads the new value
+            var result = mccProxy.processRead(allKeys);
+            assertEquals(20, result.size());
+            for (ItemRecord item : result) {
+                assertEquals(String.valueOf(-allKeys.indexOf(item.getKey())),
+                             item.getValue());
+            }
+        } finally {
+            mccProxy.stop();
+            redisServer.stop();
+        }
+    }
+
+    @Test
+    public void testInvalidationDuringFetch() throws Exception {
+        for (String backend : List.of("DEFAULT", "PRIMITIVE", "SHARDED")) {
+            testInvalidationDuringFetch(backend);
+        }
+    }
+
+    private void testInvalidationDuringFetch(String backend) throws Exception {
+        RedisServer redisServer = new RedisServer(6379);
+        redisServer.start();
+
+        try (EmbeddedPostgres pg = EmbeddedPostgres.builder().setPort(63552)
+                .setServerConfig("track_commit_timestamp", "on").start();
+             Connection c = pg.getPostgresDatabase().getConnection()) {
+            MCCProxyConfig config =
+                    MCCProxyServer.loadConfig("proxy-config.yaml");
+            config.setCacheBackend(backend);
+            var keys = List.of("key1");
+            List<Long> versions = new ArrayList<>();
+            // the key is updated and invalidated after the read fetched it
+            // and before the fetched version is cached
+            DBConnector dbConnector = new PostgresConnector(
+                    config.getPostgres().getUrl(),
+                    config.getPostgres().getUser(),
+                    config.getPostgres().getPassword()) {
+                @Override
+                public List<ItemRecord> batchSelect(String table,
+                                                    List<String> keys) {
+                    List<ItemRecord> items = super.batchSelect(table, keys);
+                    if (versions.size() == 1) {
+                        try {
+                            versions.add(updateData(c, keys, List.of(2)));
+                        } catch (SQLException e) {
+                            throw new RuntimeException(e);
+                        }
+                        mccProxy.processInvalidation(keys, versions.get(1));
+                    }
+                    return items;
+                }
+            };
+            mccProxy = new MCCProxyEager(config,
+                                         MCCProxy.createCacheConnector(config),
+                                         dbConnector);
+            mccProxy.start();
+
+            PostgresConnectorTestIT.createTable(c);
+            versions.add(insertData(c, keys, List.of(1)));
+            mccProxy.processInvalidation(keys, versions.get(0));
+
+            var result = mccProxy.processRead(keys);
+            PostgresConnectorTestIT.validateQueryResult(result, keys,
+                                                        List.of(1),
+                                                        List.of(versions.get(
+                                                                0)));
+
+            var version3 = insertData(c, List.of("key2"), List.of(3));
+            mccProxy.processInvalidation(List.of("key2"), version3);
+            mccProxy.processRead(List.of("key2"));
+
+            // the fetched version of key1 is only valid until the
+            // invalidation, so it cannot be served together with key2
+            resetCounters();
+            keys = List.of("key1", "key2");
+            result = mccProxy.processRead(keys);
+            PostgresConnectorTestIT.validateQueryResult(result, keys,
+                                                        List.of(2, 3),
+                                                        List.of(versions.get(
+                                                                1), version3));
+            assertEquals(1, mccProxy.dbReadCounter.getCount());
+            assertEquals(1, mccProxy.dbReadItemsCounter.getCount());
+        } finally {
+            mccProxy.stop();
+            redisServer.stop();
+        }
+    }
+
     private void resetCounters() {
         resetCounter(mccProxy.dbReadCounter);
         resetCounter(mccProxy.dbReadItemsCounter);
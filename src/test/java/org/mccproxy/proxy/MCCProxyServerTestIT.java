@@ -0,0 +1,128 @@
+package org.mccproxy.proxy;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import io.grpc.Grpc;
+import io.grpc.InsecureChannelCredentials;
+import io.grpc.ManagedChannel;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.Test;
+import org.mccproxy.connector.db.PostgresConnectorTestIT;
+import org.mccproxy.service.*;
+import org.mccproxy.utils.TimeUtils;
+import redis.embedded.RedisServer;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MCCProxyServerTestIT {
+
+    private static final int PORT = 8981;
+
+    // each key in its own transaction, so the versions increase with i
+    private static List<Long> writeKeys(Connection c, List<String> keys,
+                                        String statement) throws Exception {
+        List<Long> versions = new ArrayList<>();
+        try (Statement stmt = c.createStatement()) {
+            for (int i = 0; i < keys.size(); i++) {
+                stmt.execute(statement.formatted(keys.get(i), i));
+                try (ResultSet rs = stmt.executeQuery(
+                        "SELECT pg_xact_commit_timestamp(xmin) FROM test WHERE key = '%s'".formatted(
+                                keys.get(i)))) {
+                    assertTrue(rs.next());
+                    versions.add(TimeUtils.convertSqlTimestampToNanos(
+                            rs.getTimestamp(1)));
+                }
+            }
+        }
+        return versions;
+    }
+
+    private static InvalidateRequest invalidateRequest(String key,
+                                                       long version) {
+        return InvalidateRequest.newBuilder().addKeys(key).setTimestamp(
+                TimeUtils.convertNanosToProtoTimestamp(version)).build();
+    }
+
+    @Test
+    public void testInvalidationsWithParallelReads() throws Exception {
+        RedisServer redisServer = new RedisServer(6379);
+        redisServer.start();
+
+        MCCProxyServer server = null;
+        ManagedChannel channel = null;
+        try (EmbeddedPostgres pg = EmbeddedPostgres.builder().setPort(63552)
+                .setServerConfig("track_commit_timestamp", "on").start();
+             Connection c = pg.getPostgresDatabase().getConnection()) {
+            PostgresConnectorTestIT.createTable(c);
+            List<String> keys = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                keys.add("key" + i);
+            }
+            List<Long> insertVersions = writeKeys(c, keys,
+                                                  "INSERT INTO test VALUES ('%s', %d)");
+
+            server = new MCCProxyServer(PORT, "proxy-config-concurrent.yaml");
+            server.start();
+            channel = Grpc.newChannelBuilderForAddress("localhost", PORT,
+                                                       InsecureChannelCredentials.create())
+                    .build();
+            MCCProxyServiceGrpc.MCCProxyServiceFutureStub stub =
+                    MCCProxyServiceGrpc.newFutureStub(channel);
+
+            List<ListenableFuture<InvalidateResponse>> invalidations =
+                    new ArrayList<>();
+            for (int i = 0; i < keys.size(); i++) {
+                invalidations.add(stub.invalidate(
+                        invalidateRequest(keys.get(i), insertVersions.get(i))));
+            }
+            List<Long> updateVersions = writeKeys(c, keys,
+                                                  "UPDATE test SET value = -%2$d WHERE key = '%1$s'");
+
+            // the invalidations of the updates, in version order but on
+            // different keys, race with reads on the parallel read workers
+            List<ListenableFuture<ReadResponse>> reads = new ArrayList<>();
+            for (int i = 0; i < keys.size(); i++) {
+                invalidations.add(stub.invalidate(
+                        invalidateRequest(keys.get(i), updateVersions.get(i))));
+                reads.add(stub.read(ReadRequest.newBuilder()
+                                            .addKeys(keys.get(i))
+                                            .addKeys(keys.get((i + 7) % 20))
+                                            .build()));
+            }
+            for (ListenableFuture<InvalidateResponse> invalidation :
+                    invalidations) {
+                assertTrue(invalidation.get(10, TimeUnit.SECONDS)
+                                   .getSuccess());
+            }
+            for (ListenableFuture<ReadResponse> read : reads) {
+                assertEquals(2, read.get(10, TimeUnit.SECONDS)
+                        .getItemsCount());
+            }
+
+            // every update is invalidated, so every key reads its new value
+            ReadResponse response = stub.read(
+                            ReadRequest.newBuilder().addAllKeys(keys).build())
+                    .get(10, TimeUnit.SECONDS);
+            assertEquals(keys.size(), response.getItemsCount());
+            for (Item item : response.getItemsList()) {
+                assertEquals(String.valueOf(-keys.indexOf(item.getKey())),
+                             item.getValue());
+            }
+        } finally {
+            if (channel != null) {
+                channel.shutdownNow();
+            }
+            if (server != null) {
+                server.stop();
+            }
+            redisServer.stop();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.mccproxy.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CountingBloomFilterTest {
+
+    @Test
+    public void testAddRemove() {
+        CountingBloomFilter filter = new CountingBloomFilter(100);
+        assertFalse(filter.mightContain("key1"));
+
+        filter.add("key1");
+        filter.add("key1");
+        assertTrue(filter.mightContain("key1"));
+        filter.remove("key1");
+        assertTrue(filter.mightContain("key1"));
+        filter.remove("key1");
+        assertFalse(filter.mightContain("key1"));
+    }
+
+    @Test
+    public void testNoFalseNegatives() {
+        CountingBloomFilter filter = new CountingBloomFilter(1000);
+        Set<String> reference = new HashSet<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            String key = "key" + random.nextInt(2000);
+            if (reference.add(key)) {
+                filter.add(key);
+            } else if (random.nextBoolean()) {
+                reference.remove(key);
+                filter.remove(key);
+            }
+            if (reference.size() <= 1000) {
+                assertFalse(filter.needsRebuild(reference.size()));
+            }
+        }
+        for (String key : reference) {
+            assertTrue(filter.mightContain(key));
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.mightContain("other" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 1000, "falsePositives=" + falsePositives);
+    }
+
+    @Test
+    public void testNeedsRebuild() {
+        CountingBloomFilter filter = new CountingBloomFilter(100);
+        assertFalse(filter.needsRebuild(100));
+        assertTrue(filter.needsRebuild(101));
+
+        // the counters of one key saturate, which is tolerated
+        for (int i = 0; i < 15; i++) {
+            filter.add("key1");
+        }
+        assertFalse(filter.needsRebuild(1));
+        assertTrue(filter.mightContain("key1"));
+        for (int i = 0; i < 15; i++) {
+            filter.add("key2");
+        }
+        assertTrue(filter.needsRebuild(2));
+    }
+}
@@ -0,0 +1,41 @@
+package org.mccproxy.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IntHashSetTest {
+
+    @Test
+    public void testAddContains() {
+        IntHashSet set = IntHashSet.of(0, 3, 3, 17);
+        assertEquals(3, set.size());
+        assertTrue(set.contains(0));
+        assertTrue(set.contains(17));
+        assertFalse(set.contains(4));
+        assertFalse(set.contains(-1));
+
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertFalse(set.contains(0));
+    }
+
+    @Test
+    public void testMatchesHashSet() {
+        IntHashSet set = new IntHashSet();
+        Set<Integer> reference = new HashSet<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 10000; i++) {
+            int value = random.nextInt(5000);
+            assertEquals(reference.add(value), set.add(value));
+        }
+        assertEquals(reference.size(), set.size());
+        for (int value = 0; value < 5000; value++) {
+            assertEquals(reference.contains(value), set.contains(value));
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.mccproxy.ml;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Computes the features of one vector of items per step, a lane per item.
+ * Accesses are counted with a lane-wise popcount; the distances between the
+ * most recent accesses are found by clearing the lowest set bit of every
+ * lane until each lane has NUM_DELTAS of them or runs out of bits. The items
+ * that do not fill a vector are left to the scalar kernel.
+ */
+final class VectorFeatureKernel implements BatchFeatureExtractor.Kernel {
+    private static final VectorSpecies<Long> SPECIES =
+            LongVector.SPECIES_PREFERRED;
+    private static final int NUM_DELTAS = FeatureExtractor.NUM_DELTAS;
+
+    @Override
+    public void extract(long[] words, int wordCount, int items, int from,
+                        int to, float[] values, int offset) {
+        long[] lanes = new long[SPECIES.length()];
+        LongVector[] deltas = new LongVector[NUM_DELTAS];
+        int i = from;
+        for (; i + SPECIES.length() <= to; i += SPECIES.length()) {
+            int feature = offset;
+            for (int window : FeatureExtractor.WINDOWS) {
+                store(countAccesses(words, wordCount, items, i, window),
+                      lanes, values, i, feature++);
+            }
+
+            stepsBetweenAccesses(words, wordCount, items, i, deltas);
+            for (int d = 0; d < NUM_DELTAS; d++) {
+                store(deltas[d], lanes, values, i, feature++);
+            }
+            for (int d = 0; d < NUM_DELTAS - 1; d++) {
+                store(deltas[d].sub(deltas[d + 1]), lanes, values, i,
+                      feature++);
+            }
+        }
+        BatchFeatureExtractor.SCALAR_KERNEL.extract(words, wordCount, items,
+                                                    i, to, values, offset);
+    }
+
+    // the accesses in the last k steps
+    private static LongVector countAccesses(long[] words, int wordCount,
+                                            int items, int i, int k) {
+        LongVector count = LongVector.zero(SPECIES);
+        int fullWords = Math.min(wordCount, k / 64);
+        for (int j = 0; j < fullWords; j++) {
+            count = count.add(word(words, items, i, j)
+                                      .lanewise(VectorOperators.BIT_COUNT));
+        }
+        if (k % 64 != 0 && wordCount > k / 64) {
+            count = count.add(word(words, items, i, k / 64)
+                                      .and((1L << k % 64) - 1)
+                                      .lanewise(VectorOperators.BIT_COUNT));
+        }
+        return count;
+    }
+
+    // the distances between the most recent accesses, zero where a lane has
+    // fewer accesses
+    private static void stepsBetweenAccesses(long[] words, int wordCount,
+                                             int items, int i,
+                                             LongVector[] deltas) {
+        for (int d = 0; d < NUM_DELTAS; d++) {
+            deltas[d] = LongVector.zero(SPECIES);
+        }
+        LongVector count = LongVector.zero(SPECIES);
+        LongVector lastPosition = LongVector.broadcast(SPECIES, -1);
+        for (int j = 0; j < wordCount; j++) {
+            LongVector mask = word(words, items, i, j);
+            // a lane takes at most NUM_DELTAS accesses from a word
+            for (int step = 0; step < NUM_DELTAS; step++) {
+                VectorMask<Long> found =
+                        mask.compare(VectorOperators.NE, 0).and(
+                                count.compare(VectorOperators.LT,
+                                              NUM_DELTAS));
+                if (!found.anyTrue()) {
+                    break;
+                }
+                LongVector position =
+                        mask.lanewise(VectorOperators.TRAILING_ZEROS_COUNT)
+                                .add(j * 64L);
+                LongVector delta = position.sub(lastPosition);
+                for (int d = 0; d < NUM_DELTAS; d++) {
+                    deltas[d] = deltas[d].blend(delta, found.and(
+                            count.compare(VectorOperators.EQ, d)));
+                }
+                lastPosition = lastPosition.blend(position, found);
+                count = count.add(1, found);
+                mask = mask.blend(mask.and(mask.sub(1)), found);
+            }
+        }
+    }
+
+    private static LongVector word(long[] words, int items, int i, int j) {
+        return LongVector.fromArray(SPECIES, words, j * items + i);
+    }
+
+    private static void store(LongVector vector, long[] lanes, float[] values,
+                              int i, int feature) {
+        vector.intoArray(lanes, 0);
+        for (int lane = 0; lane < lanes.length; lane++) {
+            values[(i + lane) * FeatureExtractor.NUM_FEATURES + feature] =
+                    lanes[lane];
+        }
+    }
+}